@@ -0,0 +1,214 @@
+package nl.jumpypanter.client;
+
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.client.gui.screen.Screen;
+import net.minecraft.client.gui.widget.ButtonWidget;
+import net.minecraft.client.gui.widget.TextFieldWidget;
+import net.minecraft.text.OrderedText;
+import net.minecraft.text.Text;
+import nl.jumpypanter.network.OpenFormPayload;
+import nl.jumpypanter.network.SubmitFormPayload;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shows a whole form one question at a time, following the form's branches the same way the server does.
+ * Answers are kept on the client until the player submits, and are then sent to the server in a single payload,
+ * in the order the questions were asked. Closing the screen lets the player continue in chat.
+ */
+public class FormScreen extends Screen {
+    private static final int MAX_ANSWER_LENGTH = 256;
+    private static final int FIELD_WIDTH = 240;
+
+    private final OpenFormPayload form;
+    private final String[] answers;
+    private final List<Integer> path = new ArrayList<>();
+    private int currentIndex = 0;
+    private boolean submitted = false;
+    private TextFieldWidget answerField;
+    private ButtonWidget nextButton;
+    private int remainingQuestions;
+
+    /**
+     * Constructs a new FormScreen.
+     *
+     * @param form The form sent by the server.
+     */
+    public FormScreen(OpenFormPayload form) {
+        super(Text.literal(form.formName()));
+        this.form = form;
+        this.answers = new String[form.questions().size()];
+        Arrays.fill(answers, "");
+    }
+
+    /**
+     * Creates the answer field and navigation buttons for the current question.
+     */
+    @Override
+    protected void init() {
+        int centerX = width / 2;
+        int fieldY = height / 2;
+
+        answerField = new TextFieldWidget(textRenderer, centerX - FIELD_WIDTH / 2, fieldY, FIELD_WIDTH, 20, Text.literal("Answer"));
+        answerField.setMaxLength(MAX_ANSWER_LENGTH);
+        answerField.setText(answers[currentIndex]);
+        remainingQuestions = remainingQuestions();
+        addDrawableChild(answerField);
+        setInitialFocus(answerField);
+
+        ButtonWidget back = addDrawableChild(ButtonWidget.builder(Text.literal("Back"), button -> goBack())
+                .dimensions(centerX - FIELD_WIDTH / 2, fieldY + 30, 115, 20)
+                .build());
+        back.active = !path.isEmpty();
+
+        nextButton = addDrawableChild(ButtonWidget.builder(Text.literal("Next"), button -> goForward())
+                .dimensions(centerX + 5, fieldY + 30, 115, 20)
+                .build());
+
+        // Whether this is the last question can depend on the answer, so the label follows the text
+        answerField.setChangedListener(this::updateNextLabel);
+        updateNextLabel(answerField.getText());
+    }
+
+    /**
+     * Shows "Submit" on the next button if the current answer ends the form.
+     *
+     * @param answer The answer in the field.
+     */
+    private void updateNextLabel(String answer) {
+        nextButton.setMessage(Text.literal(form.next(currentIndex, answer) >= answers.length ? "Submit" : "Next"));
+    }
+
+    /**
+     * Draws the form name, progress and current question above the answer field.
+     *
+     * @param context The draw context.
+     * @param mouseX  The x position of the mouse.
+     * @param mouseY  The y position of the mouse.
+     * @param delta   The partial tick time.
+     */
+    @Override
+    public void render(DrawContext context, int mouseX, int mouseY, float delta) {
+        super.render(context, mouseX, mouseY, delta);
+
+        int centerX = width / 2;
+        context.drawCenteredTextWithShadow(textRenderer, getTitle(), centerX, 20, 0xFFFFFF);
+        context.drawCenteredTextWithShadow(textRenderer,
+                Text.literal("Question " + (path.size() + 1) + " of up to " + (path.size() + remainingQuestions)), centerX, 34, 0xAAAAAA);
+
+        List<OrderedText> lines = textRenderer.wrapLines(Text.literal(form.questions().get(currentIndex)), FIELD_WIDTH);
+        int y = height / 2 - 8 - lines.size() * textRenderer.fontHeight;
+        for (OrderedText line : lines) {
+            context.drawTextWithShadow(textRenderer, line, centerX - FIELD_WIDTH / 2, y, 0xFFFF55);
+            y += textRenderer.fontHeight;
+        }
+    }
+
+    /**
+     * Tells the server to continue in chat if the screen is closed without submitting.
+     */
+    @Override
+    public void removed() {
+        if (!submitted) {
+            submitted = true;
+            ClientPlayNetworking.send(new SubmitFormPayload(form.formName(), List.of(), List.of()));
+        }
+    }
+
+    /**
+     * Keeps the game running while the form is open, since the server does not wait for the player.
+     *
+     * @return false, so singleplayer worlds are not paused.
+     */
+    @Override
+    public boolean shouldPause() {
+        return false;
+    }
+
+    /**
+     * Counts the questions that can still follow the current one on the longest path through the form,
+     * including the current question.
+     *
+     * @return The number of questions left at most.
+     */
+    private int remainingQuestions() {
+        return longestPath(currentIndex, new int[answers.length]);
+    }
+
+    /**
+     * Finds the length of the longest path from a question to the end of the form. The server rejects forms whose
+     * branches contain cycles, so the search always ends.
+     *
+     * @param position The position of the question.
+     * @param memo     The lengths found so far, or 0 where not yet known.
+     * @return The number of questions on the longest path, including the given one.
+     */
+    private int longestPath(int position, int[] memo) {
+        if (position >= answers.length) {
+            return 0;
+        }
+        if (memo[position] == 0) {
+            int longest = longestPath(form.defaultNext().get(position), memo);
+            for (OpenFormPayload.Branch branch : form.branches()) {
+                if (branch.question() == position) {
+                    longest = Math.max(longest, longestPath(branch.next(), memo));
+                }
+            }
+            memo[position] = longest + 1;
+        }
+        return memo[position];
+    }
+
+    /**
+     * Stores the current answer and shows the question the player came from.
+     */
+    private void goBack() {
+        if (path.isEmpty()) {
+            return;
+        }
+        answers[currentIndex] = answerField.getText();
+        currentIndex = path.remove(path.size() - 1);
+        clearAndInit();
+    }
+
+    /**
+     * Stores the current answer and shows the question it leads to, or submits the form if it was the last one.
+     */
+    private void goForward() {
+        String answer = answerField.getText();
+        answers[currentIndex] = answer;
+        if (answer.isBlank()) {
+            return;
+        }
+
+        int next = form.next(currentIndex, answer);
+        if (next >= answers.length) {
+            submit();
+            return;
+        }
+        path.add(currentIndex);
+        currentIndex = next;
+        clearAndInit();
+    }
+
+    /**
+     * Sends the answers to the questions on the current path to the server and closes the screen.
+     */
+    private void submit() {
+        List<String> questionIds = new ArrayList<>();
+        List<String> answered = new ArrayList<>();
+        for (int position : path) {
+            questionIds.add(form.questionIds().get(position));
+            answered.add(answers[position]);
+        }
+        questionIds.add(form.questionIds().get(currentIndex));
+        answered.add(answers[currentIndex]);
+
+        submitted = true;
+        ClientPlayNetworking.send(new SubmitFormPayload(form.formName(), questionIds, answered));
+        close();
+    }
+}
@@ -0,0 +1,20 @@
+package nl.jumpypanter.client;
+
+import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+import nl.jumpypanter.network.OpenFormPayload;
+
+/**
+ * Client entrypoint for the optional companion. Opens a form screen whenever the server sends a whole form.
+ */
+public class ServerFormsClient implements ClientModInitializer {
+
+    /**
+     * Registers the receiver that opens the form screen.
+     */
+    @Override
+    public void onInitializeClient() {
+        ClientPlayNetworking.registerGlobalReceiver(OpenFormPayload.ID, (payload, context) ->
+                context.client().setScreen(new FormScreen(payload)));
+    }
+}
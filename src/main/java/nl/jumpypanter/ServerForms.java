@@ -3,8 +3,21 @@ package nl.jumpypanter;
 import nl.jumpypanter.commands.CommandRegistry;
 import nl.jumpypanter.commands.FormCommandHandler;
 import nl.jumpypanter.config.ConfigLoader;
+import nl.jumpypanter.config.ConfigPersistence;
+import nl.jumpypanter.delivery.CompletionBus;
 import nl.jumpypanter.events.FormValidator;
 import nl.jumpypanter.events.ShutdownListener;
+import nl.jumpypanter.network.FormNetworking;
+import nl.jumpypanter.permissions.PermissionResolver;
+import nl.jumpypanter.storage.AdmissionController;
+import nl.jumpypanter.storage.AnswerPurger;
+import nl.jumpypanter.storage.AnswerScanner;
+import nl.jumpypanter.storage.AnswerStore;
+import nl.jumpypanter.storage.PlayerIndex;
+import nl.jumpypanter.storage.RespondentIndex;
+import nl.jumpypanter.utils.FlightEvents;
+import nl.jumpypanter.utils.IoExecutor;
+import nl.jumpypanter.web.AnswerApiServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,8 +40,21 @@ public class ServerForms implements net.fabricmc.api.ModInitializer {
     public void onInitialize() {
         LOGGER.info("FormMod is initializing...");
 
+        if (!initializeComponent("I/O Executor", IoExecutor::register)) return;
         if (!initializeComponent("Configuration", ConfigLoader::loadConfig)) return;
+        if (!initializeComponent("Flight Recorder Events", FlightEvents::register)) return;
+        if (!initializeComponent("Config Persistence", ConfigPersistence::register)) return;
         if (!initializeComponent("Forms Validation", () -> FormValidator.validateForms(ConfigLoader.getForms()))) return;
+        if (!initializeComponent("Answer Store", AnswerStore::register)) return;
+        if (!initializeComponent("Player Index", PlayerIndex::register)) return;
+        if (!initializeComponent("Respondent Index", RespondentIndex::register)) return;
+        if (!initializeComponent("Answer Scanner", AnswerScanner::register)) return;
+        if (!initializeComponent("Retention Purger", AnswerPurger::register)) return;
+        if (!initializeComponent("Admission Control", AdmissionController::register)) return;
+        if (!initializeComponent("Completion Delivery", CompletionBus::register)) return;
+        if (!initializeComponent("Permissions", PermissionResolver::register)) return;
+        if (!initializeComponent("Networking", FormNetworking::register)) return;
+        if (!initializeComponent("Answer API", AnswerApiServer::register)) return;
         if (!initializeComponent("Commands", () -> {
             CommandRegistry.register();
             FormCommandHandler.registerCommands();
@@ -3,20 +3,43 @@ package nl.jumpypanter.commands;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.suggestion.SuggestionProvider;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
 import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.Text;
 import nl.jumpypanter.ServerForms;
 import nl.jumpypanter.config.ConfigLoader;
 import nl.jumpypanter.events.FormHandler;
 import nl.jumpypanter.events.FormValidator;
+import nl.jumpypanter.permissions.PermissionResolver;
+import nl.jumpypanter.storage.AnswerCrypto;
+import nl.jumpypanter.storage.AnswerIntegrityChecker;
+import nl.jumpypanter.storage.AnswerPurger;
+import nl.jumpypanter.storage.AnswerReencryptor;
+import nl.jumpypanter.storage.AnswerStore;
+import nl.jumpypanter.storage.AnswerView;
+import nl.jumpypanter.storage.PlayerIndex;
+import nl.jumpypanter.storage.RespondentIndex;
+import nl.jumpypanter.utils.ChatRenderer;
+import nl.jumpypanter.utils.FlightEvents;
+import nl.jumpypanter.utils.FormMetrics;
+import nl.jumpypanter.utils.IoExecutor;
 import nl.jumpypanter.utils.TextFormatter;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static com.mojang.brigadier.arguments.StringArgumentType.*;
 import static net.minecraft.server.command.CommandManager.argument;
@@ -27,7 +50,15 @@ import static net.minecraft.server.command.CommandManager.literal;
  * Includes commands for starting forms, answering forms, viewing form responses, and reloading forms.
  */
 public class CommandRegistry {
-    private static final File FORM_ANSWERS_DIR = new File("mods", "FormAnswers");
+    private static final String DISPATCH_MODE_LITERAL = "literal";
+    private static final String DISPATCH_MODE_DISPATCHER = "dispatcher";
+    private static final int MAX_FORM_SUGGESTIONS = 100;
+    private static final Pattern RELATIVE_TIME = Pattern.compile("(\\d{1,6})([mhdwMHDW])");
+    private static final DateTimeFormatter RESPONSE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
+    private static FormTrie formTrie;
+    private static JsonObject formTrieSource;
+    private static int formTrieSourceSize;
 
     /**
      * Registers all commands for the form mod.
@@ -36,11 +67,18 @@ public class CommandRegistry {
     public static void register() {
         CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> {
             // Load forms from the configuration
+            boolean dispatcherMode = DISPATCH_MODE_DISPATCHER.equalsIgnoreCase(
+                    ConfigLoader.getStringSetting("commands.dispatchMode", DISPATCH_MODE_LITERAL));
             JsonObject forms = ConfigLoader.getForms();
             for (Map.Entry<String, JsonElement> entry : forms.entrySet()) {
                 String formId = entry.getKey();
                 JsonObject form = entry.getValue().getAsJsonObject();
 
+                // In dispatcher mode, only forms that ask for it keep their own top-level command
+                if (dispatcherMode && !(form.has("alias") && form.get("alias").getAsBoolean())) {
+                    continue;
+                }
+
                 // Ensure the "command" key exists and is valid
                 if (!form.has("command") || form.get("command").isJsonNull()) {
                     ServerForms.LOGGER.error("Form '{}' is missing the 'command' field or it is null. JSON: {}", formId, form);
@@ -49,13 +87,37 @@ public class CommandRegistry {
 
                 String commandName = form.get("command").getAsString();
 
-                // Register the command to start the form
+                // Register the command to start the form, looking up the current version of the form on each use
                 dispatcher.register(literal(commandName)
-                        .executes(context -> FormHandler.startForm(context.getSource(), form)));
+                        .requires(source -> PermissionResolver.canStartForm(source, formId))
+                        .executes(context -> startForm(context.getSource(), formId)));
 
                 ServerForms.LOGGER.info("Registered form command: /" + commandName);
             }
 
+            // Register a single /form command that starts any form by its ID
+            if (dispatcherMode) {
+                dispatcher.register(literal("form")
+                        .then(argument("id", string())
+                                .suggests(recorded("form", (context, builder) -> {
+                                    getFormTrie().forEachWithPrefix(builder.getRemaining(), MAX_FORM_SUGGESTIONS,
+                                            formId -> PermissionResolver.canStartForm(context.getSource(), formId),
+                                            builder::suggest);
+                                    return builder.buildFuture();
+                                }))
+                                .executes(context -> {
+                                    String formId = getString(context, "id");
+                                    if (!PermissionResolver.canStartForm(context.getSource(), formId)) {
+                                        context.getSource().sendError(TextFormatter.formatColor(ConfigLoader.getMessage("noStartPermission",
+                                                "&cYou do not have permission to start form '{form}'.").replace("{form}", formId)));
+                                        return 0;
+                                    }
+                                    return startForm(context.getSource(), formId);
+                                })));
+
+                ServerForms.LOGGER.info("Registered form dispatcher command /form for {} forms.", forms.size());
+            }
+
             // Register the command to handle answers
             dispatcher.register(literal("answer")
                     .then(argument("response", greedyString())
@@ -68,53 +130,39 @@ public class CommandRegistry {
 
             // Register the /viewform command
             dispatcher.register(literal("viewform")
+                    .requires(source -> PermissionResolver.hasPermission(source, "serverforms.command.viewform",
+                            (int) ConfigLoader.getLongSetting("permissions.viewLevel", 4)))
                     .then(argument("playername", word())
-                            .suggests((context, builder) -> {
-                                File[] files = FORM_ANSWERS_DIR.listFiles();
-                                if (files != null) {
-                                    for (File file : files) {
-                                        if (file.isFile() && file.getName().endsWith(".json")) {
-                                            try (FileReader reader = new FileReader(file)) {
-                                                JsonObject data = ConfigLoader.GSON.fromJson(reader, JsonObject.class);
-                                                if (data.has("playerName")) {
-                                                    builder.suggest(data.get("playerName").getAsString());
-                                                }
-                                            } catch (IOException e) {
-                                                ServerForms.LOGGER.error("Failed to read player name from file: " + file.getName(), e);
-                                            }
-                                        }
+                            .suggests(recorded("viewform playername", (context, builder) -> {
+                                String prefix = builder.getRemainingLowerCase();
+                                for (String name : PlayerIndex.getCurrentNames()) {
+                                    if (name.toLowerCase(Locale.ROOT).startsWith(prefix)) {
+                                        builder.suggest(name);
                                     }
                                 }
                                 return builder.buildFuture();
-                            })
+                            }))
                             .executes(context -> {
                                 String playerName = getString(context, "playername");
                                 return viewForm(context.getSource(), playerName, null);
                             })
                             .then(argument("formname", greedyString())
-                                    .suggests((context, builder) -> {
-                                        String playerName = getString(context, "playername").toLowerCase();
-                                        File[] files = FORM_ANSWERS_DIR.listFiles();
-                                        if (files != null) {
-                                            for (File file : files) {
-                                                if (file.isFile() && file.getName().endsWith(".json")) {
-                                                    try (FileReader reader = new FileReader(file)) {
-                                                        JsonObject data = ConfigLoader.GSON.fromJson(reader, JsonObject.class);
-                                                        if (data.has("playerName") && data.get("playerName").getAsString().equalsIgnoreCase(playerName)) {
-                                                            for (String formName : data.keySet()) {
-                                                                if (!formName.equals("playerName")) {
-                                                                    builder.suggest(formName);
-                                                                }
-                                                            }
-                                                        }
-                                                    } catch (IOException e) {
-                                                        ServerForms.LOGGER.error("Failed to read form names for player: " + playerName, e);
+                                    .suggests(recorded("viewform formname", (context, builder) -> {
+                                        UUID playerUUID = PlayerIndex.findUUID(getString(context, "playername"));
+                                        if (playerUUID == null) {
+                                            return builder.buildFuture();
+                                        }
+                                        return IoExecutor.onMainThread(AnswerStore.readAnswers(playerUUID)).thenApply(answers -> {
+                                            if (answers != null) {
+                                                for (String formName : answers.getFormNames()) {
+                                                    if (PermissionResolver.canViewForm(context.getSource(), formName)) {
+                                                        builder.suggest(formName);
                                                     }
                                                 }
                                             }
-                                        }
-                                        return builder.buildFuture();
-                                    })
+                                            return builder.build();
+                                        });
+                                    }))
                                     .executes(context -> {
                                         String playerName = getString(context, "playername");
                                         String formName = getString(context, "formname");
@@ -123,14 +171,84 @@ public class CommandRegistry {
 
             // Register the /reloadforms command
             dispatcher.register(literal("reloadforms")
-                    .requires(source -> source.hasPermissionLevel(4)) // Only allow OPs
+                    .requires(source -> PermissionResolver.hasPermission(source, "serverforms.command.reloadforms", 4))
                     .executes(context -> {
                         ServerCommandSource source = context.getSource();
                         return reloadForms(source);
                     }));
+
+            // Register the /formresponses command
+            dispatcher.register(literal("formresponses")
+                    .requires(source -> PermissionResolver.hasPermission(source, "serverforms.command.formresponses",
+                            (int) ConfigLoader.getLongSetting("permissions.viewLevel", 4)))
+                    .then(argument("formname", string())
+                            .suggests(recorded("formresponses", (context, builder) -> {
+                                for (String formName : RespondentIndex.getFormNames()) {
+                                    if (PermissionResolver.canViewForm(context.getSource(), formName)) {
+                                        builder.suggest(formName);
+                                    }
+                                }
+                                return builder.buildFuture();
+                            }))
+                            .executes(context -> listResponses(context.getSource(), getString(context, "formname"), 1, null))
+                            .then(argument("page", IntegerArgumentType.integer(1))
+                                    .executes(context -> listResponses(context.getSource(), getString(context, "formname"),
+                                            IntegerArgumentType.getInteger(context, "page"), null))
+                                    .then(argument("since", word())
+                                            .executes(context -> listResponses(context.getSource(), getString(context, "formname"),
+                                                    IntegerArgumentType.getInteger(context, "page"), getString(context, "since")))))));
+
+            // Register the /formcheck command
+            dispatcher.register(literal("formcheck")
+                    .requires(source -> PermissionResolver.hasPermission(source, "serverforms.command.formcheck", 4))
+                    .executes(context -> checkAnswers(context.getSource(), false))
+                    .then(literal("repair")
+                            .executes(context -> checkAnswers(context.getSource(), true))));
+
+            // Register the /formpurge command
+            dispatcher.register(literal("formpurge")
+                    .requires(source -> PermissionResolver.hasPermission(source, "serverforms.command.formpurge", 4))
+                    .executes(context -> purgeAnswers(context.getSource())));
+
+            // Register the /formkeys command
+            dispatcher.register(literal("formkeys")
+                    .requires(source -> PermissionResolver.hasPermission(source, "serverforms.command.formkeys", 4))
+                    .then(literal("rotate")
+                            .executes(context -> reencryptAnswers(context.getSource(), true)))
+                    .then(literal("migrate")
+                            .executes(context -> reencryptAnswers(context.getSource(), false))));
+
+            // Register the /formmetrics command
+            dispatcher.register(literal("formmetrics")
+                    .requires(source -> PermissionResolver.hasPermission(source, "serverforms.command.formmetrics", 4))
+                    .executes(context -> showMetrics(context.getSource())));
         });
     }
 
+    /**
+     * Wraps a suggestion provider so every computation is recorded as a flight recorder event, including
+     * suggestions that complete asynchronously.
+     *
+     * @param command  The command and argument the suggestions are for.
+     * @param provider The suggestion provider to record.
+     * @return A suggestion provider that records its computations.
+     */
+    static SuggestionProvider<ServerCommandSource> recorded(String command, SuggestionProvider<ServerCommandSource> provider) {
+        return (context, builder) -> {
+            FlightEvents.SuggestionComputation event = new FlightEvents.SuggestionComputation();
+            event.begin();
+            return provider.getSuggestions(context, builder).whenComplete((suggestions, error) -> {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.command = command;
+                    event.prefixLength = builder.getRemaining().length();
+                    event.suggestionCount = suggestions != null ? suggestions.getList().size() : 0;
+                    event.commit();
+                }
+            });
+        };
+    }
+
     /**
      * Utility method to register a command with the dispatcher.
      *
@@ -144,52 +262,89 @@ public class CommandRegistry {
         });
     }
 
+    /**
+     * Retrieves the trie of form IDs, rebuilding it if forms were reloaded or created since it was built.
+     * Must be called on the server thread.
+     *
+     * @return The trie containing the ID of every current form.
+     */
+    private static FormTrie getFormTrie() {
+        JsonObject forms = ConfigLoader.getForms();
+        if (formTrie == null || formTrieSource != forms || formTrieSourceSize != forms.size()) {
+            FormTrie trie = new FormTrie();
+            forms.keySet().forEach(trie::insert);
+            formTrie = trie;
+            formTrieSource = forms;
+            formTrieSourceSize = forms.size();
+        }
+        return formTrie;
+    }
+
+    /**
+     * Starts the current version of a form, which may have been replaced by a reload or an edit since the command was registered.
+     *
+     * @param source The command source (e.g., the player executing the command).
+     * @param formId The ID of the form to start.
+     * @return 1 if the form starts successfully, 0 otherwise.
+     */
+    private static int startForm(ServerCommandSource source, String formId) {
+        JsonElement form = ConfigLoader.getForms().get(formId);
+        if (form == null || !form.isJsonObject()) {
+            source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("formNotFound", "&cForm '{form}' does not exist.")
+                    .replace("{form}", formId)));
+            return 0;
+        }
+        return FormHandler.startForm(source, formId, form.getAsJsonObject());
+    }
+
     /**
      * Handles the /viewform command to view a player's form responses.
      *
      * @param source     The command source (e.g., the player or console executing the command).
      * @param playerName The name of the player whose form responses are being viewed.
      * @param formName   The name of the specific form to view (optional).
-     * @return 1 if the command executed successfully, 0 otherwise.
+     * @return 1 if the player was found and their answers are being read, 0 otherwise.
      */
     private static int viewForm(ServerCommandSource source, String playerName, String formName) {
         UUID playerUUID = resolvePlayerUUID(source, playerName);
         if (playerUUID == null) return 0;
 
-        File playerFile = new File(FORM_ANSWERS_DIR, playerUUID + ".json");
-        if (!playerFile.exists()) {
-            source.sendError(TextFormatter.formatColor("&cNo forms found for player: " + playerName));
-            return 0;
-        }
-
-        try (FileReader reader = new FileReader(playerFile)) {
-            JsonObject allForms = ConfigLoader.GSON.fromJson(reader, JsonObject.class);
-            formName = resolveFormName(source, allForms, formName, playerName);
-            if (formName == null) return 0;
+        IoExecutor.onMainThread(AnswerStore.readAnswers(playerUUID)).whenComplete((allForms, error) -> {
+            if (error != null) {
+                ServerForms.LOGGER.error("Failed to read form file for player: " + playerName, error);
+                source.sendError(TextFormatter.formatColor("&cAn error occurred while reading the form file."));
+                return;
+            }
+            if (allForms == null) {
+                source.sendError(TextFormatter.formatColor("&cNo forms found for player: " + playerName));
+                return;
+            }
 
-            displayFormAnswers(source, allForms.getAsJsonObject(formName), formName, playerName);
-            return 1;
-        } catch (IOException e) {
-            ServerForms.LOGGER.error("Failed to read form file for player: " + playerName, e);
-            source.sendError(TextFormatter.formatColor("&cAn error occurred while reading the form file."));
-            return 0;
-        }
+            String resolvedFormName = resolveFormName(source, allForms, formName, playerName);
+            if (resolvedFormName != null && !PermissionResolver.canViewForm(source, resolvedFormName)) {
+                source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("noPermission", "&cYou do not have permission to view form '{form}'.")
+                        .replace("{form}", resolvedFormName)));
+            } else if (resolvedFormName != null) {
+                displayFormAnswers(source, allForms.getAnswers(resolvedFormName), resolvedFormName, playerName);
+            }
+        });
+        return 1;
     }
 
     /**
-     * Resolves the form name from the provided JSON object.
+     * Resolves the form name from the player's answers.
      *
      * @param source     The command source for sending feedback.
-     * @param allForms   The JSON object containing all forms.
+     * @param allForms   The player's answers to all forms.
      * @param formName   The name of the form to resolve (can be null).
      * @param playerName The name of the player whose forms are being resolved.
      * @return The resolved form name, or null if not found.
      */
-    private static String resolveFormName(ServerCommandSource source, JsonObject allForms, String formName, String playerName) {
+    private static String resolveFormName(ServerCommandSource source, AnswerView allForms, String formName, String playerName) {
         if (formName == null) {
-            formName = allForms.keySet().stream().reduce((first, second) -> second).orElse(null);
+            formName = allForms.getLastFormName();
         }
-        if (formName == null || !allForms.has(formName)) {
+        if (formName == null || !allForms.hasForm(formName)) {
             source.sendError(TextFormatter.formatColor("&cForm '" + formName + "' not found for player: " + playerName));
             return null;
         }
@@ -197,28 +352,35 @@ public class CommandRegistry {
     }
 
     /**
-     * Displays the answers of a specific form to the command source.
+     * Displays the answers of a specific form to the command source as one message.
      *
      * @param source      The command source (e.g., the player or console executing the command).
-     * @param formAnswers The JSON object containing the form answers.
+     * @param formAnswers The form answers by question ID.
      * @param formName    The name of the form being displayed.
      * @param playerName  The name of the player whose answers are being displayed.
      */
-    private static void displayFormAnswers(ServerCommandSource source, JsonObject formAnswers, String formName, String playerName) {
-        source.sendFeedback(() -> TextFormatter.formatColor("&aViewing form: " + formName + " for player: " + playerName), false);
-        formAnswers.entrySet().forEach(entry -> {
-            source.sendFeedback(() -> TextFormatter.formatColor("&b" + entry.getKey() + ": &f" + entry.getValue().getAsString()), false);
-        });
+    private static void displayFormAnswers(ServerCommandSource source, Map<String, String> formAnswers, String formName, String playerName) {
+        Text message = ChatRenderer.renderSummary(TextFormatter.formatColor("&aViewing form: " + formName + " for player: " + playerName), formAnswers);
+        source.sendFeedback(() -> message, false);
     }
 
     /**
-     * Resolves the UUID of a player by their name.
+     * Resolves the UUID of a player by their current or a former name, using the player index and then the server's user cache.
      *
      * @param source     The command source for sending feedback.
      * @param playerName The name of the player.
      * @return The UUID of the player, or null if not found.
      */
     private static UUID resolvePlayerUUID(ServerCommandSource source, String playerName) {
+        UUID indexed = PlayerIndex.findUUID(playerName);
+        if (indexed != null) {
+            String currentName = PlayerIndex.getCurrentName(indexed);
+            if (currentName != null && !currentName.equalsIgnoreCase(playerName)) {
+                source.sendFeedback(() -> TextFormatter.formatColor("&7" + playerName + " is now known as " + currentName + "."), false);
+            }
+            return indexed;
+        }
+
         return source.getServer().getUserCache().findByName(playerName)
                 .map(profile -> profile.getId())
                 .orElseGet(() -> {
@@ -228,21 +390,220 @@ public class CommandRegistry {
     }
 
     /**
-     * Handles the /reloadforms command to reload the configuration.
+     * Handles the /formresponses command to list the players who completed a form, one page at a time.
      *
-     * @param source The command source (e.g., the player or console executing the command).
-     * @return 1 if the configuration reloads successfully, 0 otherwise.
+     * @param source   The command source (e.g., the player or console executing the command).
+     * @param formName The name of the form.
+     * @param page     The one-based page to display.
+     * @param since    Only list completions after this time, as a date, an ISO-8601 instant or a duration such as "7d" (optional).
+     * @return 1 if the page was displayed, 0 otherwise.
      */
-    private static int reloadForms(ServerCommandSource source) {
+    private static int listResponses(ServerCommandSource source, String formName, int page, String since) {
+        if (!PermissionResolver.canViewForm(source, formName)) {
+            source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("noPermission", "&cYou do not have permission to view form '{form}'.")
+                    .replace("{form}", formName)));
+            return 0;
+        }
+
+        long sinceMillis = 0;
+        if (since != null) {
+            Long parsed = parseSince(since);
+            if (parsed == null) {
+                source.sendError(TextFormatter.formatColor("&cInvalid time '" + since + "'. Use a date such as 2025-06-01 or a duration such as 7d."));
+                return 0;
+            }
+            sinceMillis = parsed;
+        }
+
+        int pageSize = (int) Math.max(1, ConfigLoader.getLongSetting("responses.pageSize", 10));
+        RespondentIndex.Page result = RespondentIndex.getRespondents(formName, sinceMillis, RespondentIndex.pageOffset(page, pageSize), pageSize);
+        if (result.total() == 0) {
+            source.sendError(TextFormatter.formatColor("&cNo responses found for form: " + formName));
+            return 0;
+        }
+
+        int pages = (result.total() + pageSize - 1) / pageSize;
+        if (page > pages) {
+            source.sendError(TextFormatter.formatColor("&cPage " + page + " does not exist; form " + formName + " has " + pages + " pages of responses."));
+            return 0;
+        }
+        source.sendFeedback(() -> TextFormatter.formatColor("&aResponses to form " + formName + " (page " + page + "/" + pages
+                + ", " + result.total() + " players):"), false);
+        for (RespondentIndex.Respondent respondent : result.respondents()) {
+            String name = PlayerIndex.getCurrentName(respondent.playerUUID());
+            String completedAt = RESPONSE_TIME_FORMAT.format(Instant.ofEpochMilli(respondent.completedAt()));
+            source.sendFeedback(() -> TextFormatter.formatColor("&b" + (name != null ? name : respondent.playerUUID()) + " &7" + completedAt), false);
+        }
+        return 1;
+    }
+
+    /**
+     * Parses the start of a time range for /formresponses.
+     *
+     * @param since A date such as "2025-06-01", an ISO-8601 instant, or a duration before now such as "30m", "12h", "7d" or "2w".
+     * @return The time in milliseconds since the epoch, or null if the value cannot be parsed.
+     */
+    private static Long parseSince(String since) {
+        Matcher relative = RELATIVE_TIME.matcher(since);
+        if (relative.matches()) {
+            long amount = Long.parseLong(relative.group(1));
+            Duration unit = switch (relative.group(2).toLowerCase(Locale.ROOT)) {
+                case "m" -> Duration.ofMinutes(1);
+                case "h" -> Duration.ofHours(1);
+                case "d" -> Duration.ofDays(1);
+                default -> Duration.ofDays(7);
+            };
+            return System.currentTimeMillis() - unit.toMillis() * amount;
+        }
         try {
-            ConfigLoader.loadConfig();
-            FormValidator.validateForms(ConfigLoader.getForms());
-            source.sendFeedback(() -> TextFormatter.formatColor("&aForms configuration reloaded successfully!"), false);
-            return 1;
-        } catch (Exception e) {
-            ServerForms.LOGGER.error("Failed to reload forms configuration.", e);
-            source.sendError(TextFormatter.formatColor("&cFailed to reload forms configuration. Check the logs for details."));
+            return LocalDate.parse(since).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // Not a date; try a full timestamp
+        }
+        try {
+            return Instant.parse(since).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Handles the /formcheck command to verify, and optionally repair, every answers file in the background.
+     *
+     * @param source The command source (e.g., the player or console executing the command).
+     * @param repair Whether to quarantine corrupt files and repair what can be repaired.
+     * @return 1 if the check was started, 0 if a check is already running.
+     */
+    private static int checkAnswers(ServerCommandSource source, boolean repair) {
+        CompletableFuture<AnswerIntegrityChecker.Report> check = AnswerIntegrityChecker.checkOnline(repair);
+        if (check.isDone() && check.join() == null) {
+            source.sendError(TextFormatter.formatColor("&cAn integrity check is already running."));
+            return 0;
+        }
+
+        source.sendFeedback(() -> TextFormatter.formatColor("&aChecking answers files" + (repair ? " and repairing problems" : "") + "..."), false);
+        IoExecutor.onMainThread(check).whenComplete((report, error) -> {
+            if (error != null) {
+                ServerForms.LOGGER.error("Failed to check the answers files.", error);
+                source.sendError(TextFormatter.formatColor("&cFailed to check the answers files. Check the logs for details."));
+                return;
+            }
+            source.sendFeedback(() -> TextFormatter.formatColor("&aChecked " + report.filesChecked() + " answers files and found "
+                    + report.problemCount() + " problems."), false);
+            report.problems().forEach((kind, count) ->
+                    source.sendFeedback(() -> TextFormatter.formatColor("&b" + kind + ": &f" + count), false));
+            if (repair) {
+                source.sendFeedback(() -> TextFormatter.formatColor("&aQuarantined " + report.quarantined() + " files and salvaged answers from "
+                        + report.salvaged() + "."), false);
+            }
+            source.sendFeedback(() -> TextFormatter.formatColor("&7Report: " + report.reportFile()), false);
+        });
+        return 1;
+    }
+
+    /**
+     * Handles the /formpurge command to remove answers past their retention in the background right away.
+     *
+     * @param source The command source (e.g., the player or console executing the command).
+     * @return 1 if the purge was started, 0 if a purge is already running.
+     */
+    private static int purgeAnswers(ServerCommandSource source) {
+        CompletableFuture<AnswerPurger.Report> purge = AnswerPurger.purgeNow();
+        if (purge.isDone() && purge.join() == null) {
+            source.sendError(TextFormatter.formatColor("&cA retention purge is already running."));
+            return 0;
+        }
+
+        source.sendFeedback(() -> TextFormatter.formatColor("&aRemoving expired answers..."), false);
+        IoExecutor.onMainThread(purge).whenComplete((report, error) -> {
+            if (error != null) {
+                ServerForms.LOGGER.error("Failed to purge expired answers.", error);
+                source.sendError(TextFormatter.formatColor("&cFailed to purge expired answers. Check the logs for details."));
+                return;
+            }
+            source.sendFeedback(() -> TextFormatter.formatColor("&aRemoved " + report.removed() + " expired responses and deleted "
+                    + report.filesDeleted() + " empty answers files."), false);
+            report.removedByForm().forEach((formName, count) ->
+                    source.sendFeedback(() -> TextFormatter.formatColor("&b" + formName + ": &f" + count), false));
+            if (report.failed() > 0) {
+                source.sendError(TextFormatter.formatColor("&c" + report.failed() + " expired responses could not be removed."));
+            }
+            if (report.reportFile() != null) {
+                source.sendFeedback(() -> TextFormatter.formatColor("&7Report: " + report.reportFile()), false);
+            }
+        });
+        return 1;
+    }
+
+    /**
+     * Handles the /formkeys command to bring every answers file in line with the encryption settings in the
+     * background, optionally under a newly created master key.
+     *
+     * @param source The command source (e.g., the player or console executing the command).
+     * @param rotate Whether to create a new master key first.
+     * @return 1 if the conversion was started, 0 if it cannot be started.
+     */
+    private static int reencryptAnswers(ServerCommandSource source, boolean rotate) {
+        if (rotate && !AnswerCrypto.isEnabled()) {
+            source.sendError(TextFormatter.formatColor("&cAnswer encryption is not enabled."));
+            return 0;
+        }
+        CompletableFuture<AnswerReencryptor.Report> conversion = AnswerReencryptor.start(rotate);
+        if (conversion.isDone() && conversion.join() == null) {
+            source.sendError(TextFormatter.formatColor("&cAnswers files are already being re-encrypted."));
             return 0;
         }
+
+        source.sendFeedback(() -> TextFormatter.formatColor(rotate ? "&aRotating the encryption key and re-encrypting answers files..."
+                : "&aConverting answers files to the current encryption settings..."), false);
+        IoExecutor.onMainThread(conversion).whenComplete((report, error) -> {
+            if (error != null) {
+                ServerForms.LOGGER.error("Failed to re-encrypt the answers files.", error);
+                source.sendError(TextFormatter.formatColor("&cFailed to re-encrypt the answers files. Check the logs for details."));
+                return;
+            }
+            if (report.rotatedTo() != null) {
+                source.sendFeedback(() -> TextFormatter.formatColor("&aThe active encryption key is now " + report.rotatedTo() + "."), false);
+            }
+            source.sendFeedback(() -> TextFormatter.formatColor("&aProcessed " + report.filesProcessed() + " answers files."), false);
+            report.outcomes().forEach((outcome, count) ->
+                    source.sendFeedback(() -> TextFormatter.formatColor("&b" + outcome + ": &f" + count), false));
+            source.sendFeedback(() -> TextFormatter.formatColor("&7Report: " + report.reportFile()), false);
+        });
+        return 1;
+    }
+
+    /**
+     * Handles the /formmetrics command to display the mod's runtime metrics.
+     *
+     * @param source The command source (e.g., the player or console executing the command).
+     * @return 1 after the metrics have been displayed.
+     */
+    private static int showMetrics(ServerCommandSource source) {
+        source.sendFeedback(() -> TextFormatter.formatColor("&aServer Forms metrics:"), false);
+        FormMetrics.snapshot().forEach((name, value) -> {
+            source.sendFeedback(() -> TextFormatter.formatColor("&b" + name + ": &f" + value), false);
+        });
+        return 1;
+    }
+
+    /**
+     * Handles the /reloadforms command to reload the configuration.
+     *
+     * @param source The command source (e.g., the player or console executing the command).
+     * @return 1 once the reload has been started; the outcome is reported when it finishes.
+     */
+    private static int reloadForms(ServerCommandSource source) {
+        ConfigLoader.reloadConfig()
+                .thenRun(() -> FormValidator.validateForms(ConfigLoader.getForms()))
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        ServerForms.LOGGER.error("Failed to reload forms configuration.", error);
+                        source.sendError(TextFormatter.formatColor("&cFailed to reload forms configuration. Check the logs for details."));
+                    } else {
+                        source.sendFeedback(() -> TextFormatter.formatColor("&aForms configuration reloaded successfully!"), false);
+                    }
+                });
+        return 1;
     }
 }
@@ -2,34 +2,44 @@ package nl.jumpypanter.commands;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.suggestion.SuggestionProvider;
 import net.minecraft.server.command.ServerCommandSource;
 import nl.jumpypanter.config.ConfigLoader;
 import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.events.FormValidator;
+import nl.jumpypanter.permissions.PermissionResolver;
 import nl.jumpypanter.utils.TextFormatter;
 
-import java.io.FileWriter;
-import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static net.minecraft.server.command.CommandManager.argument;
 import static net.minecraft.server.command.CommandManager.literal;
 
 /**
- * Handles all commands related to forms, including creating forms, adding questions, and removing questions.
+ * Handles all commands related to forms, including creating forms, adding questions, removing questions,
+ * and staged edit transactions.
  */
 public class FormCommandHandler {
 
     /**
      * Provides suggestions for form names based on existing forms in the configuration.
      */
-    private static final SuggestionProvider<ServerCommandSource> FORM_SUGGESTIONS = (context, builder) -> {
+    private static final SuggestionProvider<ServerCommandSource> FORM_SUGGESTIONS = CommandRegistry.recorded("form key", (context, builder) -> {
         JsonObject forms = ConfigLoader.getForms();
         if (forms != null) {
             forms.keySet().forEach(builder::suggest);
         }
         return builder.buildFuture();
-    };
+    });
+
+    /**
+     * Active edit transactions, keyed by the name of the command source that started them.
+     */
+    private static final Map<String, FormEditTransaction> activeEdits = new HashMap<>();
 
     /**
      * Registers all form-related commands.
@@ -38,7 +48,7 @@ public class FormCommandHandler {
         CommandRegistry.registerCommand("createform", dispatcher -> {
             dispatcher.register(
                     literal("createform")
-                            .requires(source -> source.hasPermissionLevel(4)) // Only allow OPs
+                            .requires(source -> PermissionResolver.hasPermission(source, "serverforms.command.createform", 4))
                             .then(argument("formName", StringArgumentType.string())
                                     .then(argument("allowMultipleResponses", com.mojang.brigadier.arguments.BoolArgumentType.bool())
                                             .executes(context -> {
@@ -52,7 +62,7 @@ public class FormCommandHandler {
         CommandRegistry.registerCommand("addquestion", dispatcher -> {
             dispatcher.register(
                     literal("addquestion")
-                            .requires(source -> source.hasPermissionLevel(4)) // Only allow OPs
+                            .requires(source -> PermissionResolver.hasPermission(source, "serverforms.command.addquestion", 4))
                             .then(argument("formName", StringArgumentType.string())
                                     .suggests(FORM_SUGGESTIONS)
                                     .then(argument("questionId", StringArgumentType.string())
@@ -69,7 +79,7 @@ public class FormCommandHandler {
         CommandRegistry.registerCommand("removequestion", dispatcher -> {
             dispatcher.register(
                     literal("removequestion")
-                            .requires(source -> source.hasPermissionLevel(4)) // Only allow OPs
+                            .requires(source -> PermissionResolver.hasPermission(source, "serverforms.command.removequestion", 4))
                             .then(argument("formName", StringArgumentType.string())
                                     .suggests(FORM_SUGGESTIONS)
                                     .then(argument("questionId", StringArgumentType.string())
@@ -80,10 +90,44 @@ public class FormCommandHandler {
                                             })))
             );
         });
+
+        CommandRegistry.registerCommand("formedit", dispatcher -> {
+            dispatcher.register(
+                    literal("formedit")
+                            .requires(source -> PermissionResolver.hasPermission(source, "serverforms.command.formedit", 4))
+                            .then(literal("begin")
+                                    .then(argument("formName", StringArgumentType.string())
+                                            .suggests(FORM_SUGGESTIONS)
+                                            .executes(context -> beginEdit(context.getSource(), StringArgumentType.getString(context, "formName")))))
+                            .then(literal("add")
+                                    .then(argument("questionId", StringArgumentType.string())
+                                            .then(argument("questionText", StringArgumentType.greedyString())
+                                                    .executes(context -> editAddQuestion(context.getSource(),
+                                                            StringArgumentType.getString(context, "questionId"),
+                                                            StringArgumentType.getString(context, "questionText"))))))
+                            .then(literal("remove")
+                                    .then(argument("questionId", StringArgumentType.string())
+                                            .executes(context -> editRemoveQuestion(context.getSource(),
+                                                    StringArgumentType.getString(context, "questionId")))))
+                            .then(literal("move")
+                                    .then(argument("questionId", StringArgumentType.string())
+                                            .then(argument("position", IntegerArgumentType.integer(1))
+                                                    .executes(context -> editMoveQuestion(context.getSource(),
+                                                            StringArgumentType.getString(context, "questionId"),
+                                                            IntegerArgumentType.getInteger(context, "position"))))))
+                            .then(literal("show")
+                                    .executes(context -> showEdit(context.getSource())))
+                            .then(literal("commit")
+                                    .executes(context -> commitEdit(context.getSource())))
+                            .then(literal("abort")
+                                    .executes(context -> abortEdit(context.getSource())))
+            );
+        });
     }
 
     /**
-     * Adds a question to the specified form.
+     * Adds a question to the specified form. Like a committed edit, the live form is replaced by an edited copy
+     * rather than changed in place, so sessions in progress keep the version they started with.
      *
      * @param source       The command source.
      * @param formName     The name of the form.
@@ -94,36 +138,26 @@ public class FormCommandHandler {
     private static int addQuestion(ServerCommandSource source, String formName, String questionId, String questionText) {
         JsonObject forms = ConfigLoader.getForms();
 
-        if (forms == null || !forms.has(formName)) {
+        if (forms == null || !forms.has(formName) || !forms.get(formName).isJsonObject()) {
             source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("formNotFound", "&cForm '{form}' does not exist.")
                     .replace("{form}", formName)));
             return 0;
         }
 
-        JsonObject form = forms.getAsJsonObject(formName);
-        JsonArray questions = form.getAsJsonArray("questions");
-
-        for (int i = 0; i < questions.size(); i++) {
-            JsonObject question = questions.get(i).getAsJsonObject();
-            if (question.get("id").getAsString().equals(questionId)) {
-                source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("questionExists", "&cA question with ID '{id}' already exists.")
-                        .replace("{id}", questionId)));
-                return 0;
-            }
+        FormEditTransaction edit = new FormEditTransaction(formName, forms.getAsJsonObject(formName));
+        if (!edit.addQuestion(questionId, questionText)) {
+            source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("questionExists", "&cA question with ID '{id}' already exists.")
+                    .replace("{id}", questionId)));
+            return 0;
         }
 
-        JsonObject newQuestion = new JsonObject();
-        newQuestion.addProperty("id", questionId);
-        newQuestion.addProperty("question", questionText);
-        questions.add(newQuestion);
-
-        saveConfig(source, ConfigLoader.getMessage("questionAdded", "&aQuestion added successfully to form '{form}'.")
+        return applyEdit(source, edit, ConfigLoader.getMessage("questionAdded", "&aQuestion added successfully to form '{form}'.")
                 .replace("{form}", formName));
-        return 1;
     }
 
     /**
-     * Removes a question from the specified form.
+     * Removes a question from the specified form. Like a committed edit, the live form is replaced by an edited copy
+     * rather than changed in place, so sessions in progress keep the version they started with.
      *
      * @param source     The command source.
      * @param formName   The name of the form.
@@ -133,45 +167,247 @@ public class FormCommandHandler {
     private static int removeQuestion(ServerCommandSource source, String formName, String questionId) {
         JsonObject forms = ConfigLoader.getForms();
 
-        if (forms == null || !forms.has(formName)) {
+        if (forms == null || !forms.has(formName) || !forms.get(formName).isJsonObject()) {
             source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("formNotFound", "&cForm '{form}' does not exist.")
                     .replace("{form}", formName)));
             return 0;
         }
 
-        JsonObject form = forms.getAsJsonObject(formName);
-        JsonArray questions = form.getAsJsonArray("questions");
+        FormEditTransaction edit = new FormEditTransaction(formName, forms.getAsJsonObject(formName));
+        if (!edit.removeQuestion(questionId)) {
+            source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("questionNotFound", "&cNo question with ID '{id}' found in form '{form}'.")
+                    .replace("{id}", questionId)
+                    .replace("{form}", formName)));
+            return 0;
+        }
+
+        return applyEdit(source, edit, ConfigLoader.getMessage("questionRemoved", "&aQuestion removed successfully from form '{form}'.")
+                .replace("{form}", formName));
+    }
+
+    /**
+     * Starts an edit transaction on the specified form for the command source.
+     *
+     * @param source   The command source.
+     * @param formName The name of the form to edit.
+     * @return 1 if the transaction was started, 0 otherwise.
+     */
+    private static int beginEdit(ServerCommandSource source, String formName) {
+        if (activeEdits.containsKey(source.getName())) {
+            source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("editAlreadyStarted", "&cYou are already editing form '{form}'. Commit or abort it first.")
+                    .replace("{form}", activeEdits.get(source.getName()).getFormKey())));
+            return 0;
+        }
+
+        JsonObject forms = ConfigLoader.getForms();
+        if (!forms.has(formName) || !forms.get(formName).isJsonObject()) {
+            source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("formNotFound", "&cForm '{form}' does not exist.")
+                    .replace("{form}", formName)));
+            return 0;
+        }
+
+        activeEdits.put(source.getName(), new FormEditTransaction(formName, forms.getAsJsonObject(formName)));
+        source.sendFeedback(() -> TextFormatter.formatColor(ConfigLoader.getMessage("editStarted", "&aEditing form '{form}'. Use /formedit commit to apply your changes.")
+                .replace("{form}", formName)), false);
+        return 1;
+    }
+
+    /**
+     * Adds a question to the draft of the command source's edit transaction.
+     *
+     * @param source       The command source.
+     * @param questionId   The ID of the question.
+     * @param questionText The text of the question.
+     * @return 1 if the question was added, 0 otherwise.
+     */
+    private static int editAddQuestion(ServerCommandSource source, String questionId, String questionText) {
+        FormEditTransaction edit = getActiveEdit(source);
+        if (edit == null) return 0;
+
+        if (!edit.addQuestion(questionId, questionText)) {
+            source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("questionExists", "&cA question with ID '{id}' already exists.")
+                    .replace("{id}", questionId)));
+            return 0;
+        }
+
+        source.sendFeedback(() -> TextFormatter.formatColor("&aDraft: added question '" + questionId + "'."), false);
+        return 1;
+    }
+
+    /**
+     * Removes a question from the draft of the command source's edit transaction.
+     *
+     * @param source     The command source.
+     * @param questionId The ID of the question to remove.
+     * @return 1 if the question was removed, 0 otherwise.
+     */
+    private static int editRemoveQuestion(ServerCommandSource source, String questionId) {
+        FormEditTransaction edit = getActiveEdit(source);
+        if (edit == null) return 0;
+
+        if (!edit.removeQuestion(questionId)) {
+            source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("questionNotFound", "&cNo question with ID '{id}' found in form '{form}'.")
+                    .replace("{id}", questionId)
+                    .replace("{form}", edit.getFormKey())));
+            return 0;
+        }
+
+        source.sendFeedback(() -> TextFormatter.formatColor("&aDraft: removed question '" + questionId + "'."), false);
+        return 1;
+    }
 
+    /**
+     * Moves a question within the draft of the command source's edit transaction.
+     *
+     * @param source     The command source.
+     * @param questionId The ID of the question to move.
+     * @param position   The new one-based position of the question.
+     * @return 1 if the question was moved, 0 otherwise.
+     */
+    private static int editMoveQuestion(ServerCommandSource source, String questionId, int position) {
+        FormEditTransaction edit = getActiveEdit(source);
+        if (edit == null) return 0;
+
+        if (!edit.moveQuestion(questionId, position - 1)) {
+            source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("questionNotFound", "&cNo question with ID '{id}' found in form '{form}'.")
+                    .replace("{id}", questionId)
+                    .replace("{form}", edit.getFormKey())));
+            return 0;
+        }
+
+        source.sendFeedback(() -> TextFormatter.formatColor("&aDraft: moved question '" + questionId + "' to position " + position + "."), false);
+        return 1;
+    }
+
+    /**
+     * Displays the draft questions of the command source's edit transaction.
+     *
+     * @param source The command source.
+     * @return 1 if a transaction is active, 0 otherwise.
+     */
+    private static int showEdit(ServerCommandSource source) {
+        FormEditTransaction edit = getActiveEdit(source);
+        if (edit == null) return 0;
+
+        source.sendFeedback(() -> TextFormatter.formatColor("&aDraft of form '" + edit.getFormKey() + "':"), false);
+        List<JsonObject> questions = edit.getQuestions();
         for (int i = 0; i < questions.size(); i++) {
-            JsonObject question = questions.get(i).getAsJsonObject();
-            if (question.get("id").getAsString().equals(questionId)) {
-                questions.remove(i);
-                saveConfig(source, ConfigLoader.getMessage("questionRemoved", "&aQuestion removed successfully from form '{form}'.")
-                        .replace("{form}", formName));
-                return 1;
-            }
+            JsonObject question = questions.get(i);
+            String line = "&7" + (i + 1) + ". &b" + question.get("id").getAsString() + ": &f" + question.get("question").getAsString();
+            source.sendFeedback(() -> TextFormatter.formatColor(line), false);
+        }
+        return 1;
+    }
+
+    /**
+     * Validates the draft of the command source's edit transaction once and, if it is valid,
+     * replaces the live form with it and saves it.
+     * Sessions already in progress keep the version of the form they started with.
+     *
+     * @param source The command source.
+     * @return 1 if the transaction was committed, 0 otherwise.
+     */
+    private static int commitEdit(ServerCommandSource source) {
+        FormEditTransaction edit = getActiveEdit(source);
+        if (edit == null) return 0;
+
+        String formName = edit.getFormKey();
+        JsonObject forms = ConfigLoader.getForms();
+        if (!forms.has(formName) || !forms.get(formName).isJsonObject()) {
+            activeEdits.remove(source.getName());
+            source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("formNotFound", "&cForm '{form}' does not exist.")
+                    .replace("{form}", formName)));
+            return 0;
+        }
+        if (edit.isStale(forms.getAsJsonObject(formName))) {
+            source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("editConflict", "&cForm '{form}' was changed by someone else. Abort and start a new edit.")
+                    .replace("{form}", formName)));
+            return 0;
         }
 
-        source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("questionNotFound", "&cNo question with ID '{id}' found in form '{form}'.")
-                .replace("{id}", questionId)
-                .replace("{form}", formName)));
-        return 0;
+        if (applyEdit(source, edit, ConfigLoader.getMessage("editCommitted", "&aCommitted changes to form '{form}'.")
+                .replace("{form}", formName)) == 0) {
+            return 0;
+        }
+        activeEdits.remove(source.getName());
+        return 1;
     }
 
     /**
-     * Saves the configuration to the file system.
+     * Validates the form an edit would produce and, if it is valid, replaces the live form with it and saves it.
+     * The live form object is never changed in place, because sessions in progress still read it.
      *
-     * @param source        The command source.
-     * @param successMessage The success message to display.
+     * @param source         The command source.
+     * @param edit           The edit to apply.
+     * @param successMessage The message to display once the form has been saved.
+     * @return 1 if the form was replaced, 0 if the edited form is invalid.
+     */
+    private static int applyEdit(ServerCommandSource source, FormEditTransaction edit, String successMessage) {
+        String formName = edit.getFormKey();
+        JsonObject newForm = edit.build();
+        try {
+            FormValidator.validateForm(formName, newForm);
+        } catch (IllegalArgumentException e) {
+            source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("editInvalid", "&cThe draft of form '{form}' is invalid:")
+                    .replace("{form}", formName)));
+            e.getMessage().lines().skip(1).forEach(line -> source.sendError(TextFormatter.formatColor("&c" + line.strip())));
+            return 0;
+        }
+
+        // Swap in the new form in one step, so new sessions never see a partially edited form
+        ConfigLoader.getForms().add(formName, newForm);
+        saveForm(source, formName, successMessage);
+        return 1;
+    }
+
+    /**
+     * Discards the command source's edit transaction.
+     *
+     * @param source The command source.
+     * @return 1 if a transaction was discarded, 0 otherwise.
      */
-    private static void saveConfig(ServerCommandSource source, String successMessage) {
-        try (FileWriter writer = new FileWriter(ConfigLoader.CONFIG_FILE)) {
-            ConfigLoader.GSON.toJson(ConfigLoader.getConfig(), writer);
-            source.sendFeedback(() -> TextFormatter.formatColor(successMessage), false);
-        } catch (IOException e) {
-            ServerForms.LOGGER.error("Failed to save the updated configuration file.", e);
-            source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("saveError", "&cAn error occurred while saving the configuration.")));
+    private static int abortEdit(ServerCommandSource source) {
+        FormEditTransaction edit = activeEdits.remove(source.getName());
+        if (edit == null) {
+            source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("editNotStarted", "&cYou are not editing a form. Use /formedit begin <form> first.")));
+            return 0;
         }
+
+        source.sendFeedback(() -> TextFormatter.formatColor(ConfigLoader.getMessage("editAborted", "&eDiscarded changes to form '{form}'.")
+                .replace("{form}", edit.getFormKey())), false);
+        return 1;
+    }
+
+    /**
+     * Retrieves the command source's edit transaction, reporting an error if there is none.
+     *
+     * @param source The command source.
+     * @return The active transaction, or null if the source is not editing a form.
+     */
+    private static FormEditTransaction getActiveEdit(ServerCommandSource source) {
+        FormEditTransaction edit = activeEdits.get(source.getName());
+        if (edit == null) {
+            source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("editNotStarted", "&cYou are not editing a form. Use /formedit begin <form> first.")));
+        }
+        return edit;
+    }
+
+    /**
+     * Saves a single form to the file system and reports the outcome once the write has finished.
+     *
+     * @param source         The command source.
+     * @param formName       The name of the form that was changed.
+     * @param successMessage The success message to display.
+     */
+    private static void saveForm(ServerCommandSource source, String formName, String successMessage) {
+        ConfigLoader.saveForm(formName).whenComplete((ignored, error) -> {
+            if (error != null) {
+                ServerForms.LOGGER.error("Failed to save form '" + formName + "'.", error);
+                source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("saveError", "&cAn error occurred while saving the configuration.")));
+            } else {
+                source.sendFeedback(() -> TextFormatter.formatColor(successMessage), false);
+            }
+        });
     }
 
     /**
@@ -199,7 +435,7 @@ public class FormCommandHandler {
 
         forms.add(formName, newForm);
 
-        saveConfig(source, ConfigLoader.getMessage("formCreated", "&aForm '{form}' created successfully!")
+        saveForm(source, formName, ConfigLoader.getMessage("formCreated", "&aForm '{form}' created successfully!")
                 .replace("{form}", formName));
         return 1;
     }
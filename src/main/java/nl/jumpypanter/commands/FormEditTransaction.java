@@ -0,0 +1,146 @@
+package nl.jumpypanter.commands;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A staged set of edits to a single form. Edits are applied to an in-memory draft,
+ * and the live form is only replaced once the transaction is committed.
+ */
+public class FormEditTransaction {
+    private final String formKey;
+    private final JsonObject base;
+    private final List<JsonObject> questions = new ArrayList<>();
+    private final Set<String> questionIds = new HashSet<>();
+
+    /**
+     * Starts a transaction from the current state of a form.
+     *
+     * @param formKey The key of the form being edited.
+     * @param form    The live form, which is copied and left untouched.
+     */
+    public FormEditTransaction(String formKey, JsonObject form) {
+        this.formKey = formKey;
+        this.base = form.deepCopy();
+
+        JsonArray existing = base.has("questions") && base.get("questions").isJsonArray()
+                ? base.getAsJsonArray("questions")
+                : new JsonArray();
+        for (JsonElement question : existing) {
+            JsonObject questionObject = question.getAsJsonObject().deepCopy();
+            questions.add(questionObject);
+            if (questionObject.has("id") && !questionObject.get("id").isJsonNull()) {
+                questionIds.add(questionObject.get("id").getAsString());
+            }
+        }
+    }
+
+    /**
+     * Adds a question to the end of the draft.
+     *
+     * @param questionId   The ID of the question.
+     * @param questionText The text of the question.
+     * @return true if the question was added, false if a question with the same ID already exists.
+     */
+    public boolean addQuestion(String questionId, String questionText) {
+        if (!questionIds.add(questionId)) {
+            return false;
+        }
+
+        JsonObject question = new JsonObject();
+        question.addProperty("id", questionId);
+        question.addProperty("question", questionText);
+        questions.add(question);
+        return true;
+    }
+
+    /**
+     * Removes a question from the draft.
+     *
+     * @param questionId The ID of the question to remove.
+     * @return true if the question was removed, false if no question has this ID.
+     */
+    public boolean removeQuestion(String questionId) {
+        if (!questionIds.remove(questionId)) {
+            return false;
+        }
+
+        questions.remove(indexOf(questionId));
+        return true;
+    }
+
+    /**
+     * Moves a question to another position in the draft.
+     *
+     * @param questionId The ID of the question to move.
+     * @param position   The new zero-based position, clamped to the valid range.
+     * @return true if the question was moved, false if no question has this ID.
+     */
+    public boolean moveQuestion(String questionId, int position) {
+        if (!questionIds.contains(questionId)) {
+            return false;
+        }
+
+        JsonObject question = questions.remove(indexOf(questionId));
+        questions.add(Math.max(0, Math.min(position, questions.size())), question);
+        return true;
+    }
+
+    /**
+     * Checks whether the live form was changed by someone else since this transaction started.
+     *
+     * @param current The live form.
+     * @return true if the live form no longer matches the state this transaction started from.
+     */
+    public boolean isStale(JsonObject current) {
+        return !base.equals(current);
+    }
+
+    /**
+     * Builds the form as it will look once this transaction is committed.
+     *
+     * @return A new form object containing the draft questions.
+     */
+    public JsonObject build() {
+        JsonObject form = base.deepCopy();
+        JsonArray questionArray = new JsonArray();
+        questions.forEach(question -> questionArray.add(question.deepCopy()));
+        form.add("questions", questionArray);
+        return form;
+    }
+
+    /**
+     * Retrieves the key of the form being edited.
+     *
+     * @return The form key.
+     */
+    public String getFormKey() {
+        return formKey;
+    }
+
+    /**
+     * Retrieves the draft questions in their current order.
+     *
+     * @return An unmodifiable view of the draft questions.
+     */
+    public List<JsonObject> getQuestions() {
+        return Collections.unmodifiableList(questions);
+    }
+
+    private int indexOf(String questionId) {
+        for (int i = 0; i < questions.size(); i++) {
+            JsonObject question = questions.get(i);
+            if (question.has("id") && !question.get("id").isJsonNull() && question.get("id").getAsString().equals(questionId)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Question '" + questionId + "' is tracked but missing from the draft.");
+    }
+}
@@ -0,0 +1,85 @@
+package nl.jumpypanter.commands;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * A case-insensitive prefix trie of form IDs, used to suggest form IDs for {@code /form} without scanning every form.
+ * Suggestions are produced in alphabetical order and only the subtree below the typed prefix is visited.
+ */
+public class FormTrie {
+    private final Node root = new Node();
+    private int size = 0;
+
+    /**
+     * Adds a form ID to the trie.
+     *
+     * @param formId The form ID to add.
+     */
+    public void insert(String formId) {
+        Node node = root;
+        String lowerCase = formId.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lowerCase.length(); i++) {
+            node = node.children.computeIfAbsent(lowerCase.charAt(i), c -> new Node());
+        }
+        if (node.formId == null) {
+            size++;
+        }
+        node.formId = formId;
+    }
+
+    /**
+     * Visits the form IDs starting with a prefix, in alphabetical order.
+     *
+     * @param prefix  The prefix to match, ignoring case.
+     * @param limit   The maximum number of form IDs to visit.
+     * @param filter  Decides which form IDs are visited and count towards the limit.
+     * @param visitor Receives every matching form ID.
+     */
+    public void forEachWithPrefix(String prefix, int limit, Predicate<String> filter, Consumer<String> visitor) {
+        Node node = root;
+        String lowerCase = prefix.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lowerCase.length() && node != null; i++) {
+            node = node.children.get(lowerCase.charAt(i));
+        }
+        if (node == null) {
+            return;
+        }
+
+        // Depth-first walk in key order, using an explicit stack so long IDs cannot overflow the call stack
+        int visited = 0;
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty() && visited < limit) {
+            Node current = stack.pop();
+            if (current.formId != null && filter.test(current.formId)) {
+                visitor.accept(current.formId);
+                visited++;
+            }
+            for (Node child : current.children.descendingMap().values()) {
+                stack.push(child);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of form IDs in the trie.
+     *
+     * @return The number of form IDs.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * A single character position in the trie.
+     */
+    private static class Node {
+        private final TreeMap<Character, Node> children = new TreeMap<>();
+        private String formId;
+    }
+}
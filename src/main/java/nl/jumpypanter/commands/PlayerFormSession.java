@@ -2,8 +2,12 @@ package nl.jumpypanter.commands;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import nl.jumpypanter.config.AnswerValidator;
+import nl.jumpypanter.config.CompiledForm;
+import nl.jumpypanter.config.ConfigLoader;
+import nl.jumpypanter.config.FormFlow;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -12,8 +16,11 @@ import java.util.Map;
  */
 public class PlayerFormSession {
     private final JsonObject form;
+    private final String formKey;
     private final String playerName;
-    private final Map<String, String> answers = new HashMap<>();
+    private final Map<String, String> answers = new LinkedHashMap<>();
+    private final CompiledForm compiled;
+    private final long startedAt = System.nanoTime();
     private int currentQuestionIndex = 0;
 
     private static final String DEFAULT_FORM_NAME = "unknown_form";
@@ -22,11 +29,15 @@ public class PlayerFormSession {
      * Constructs a new PlayerFormSession.
      *
      * @param playerName The name of the player.
+     * @param formKey    The key of the form in the configuration, which its compiled version is stored under.
      * @param form       The form being interacted with.
      */
-    public PlayerFormSession(String playerName, JsonObject form) {
+    public PlayerFormSession(String playerName, String formKey, JsonObject form) {
         this.playerName = playerName;
+        this.formKey = formKey;
         this.form = form;
+        CompiledForm current = ConfigLoader.getCompiledForm(formKey);
+        this.compiled = current != null ? current : new CompiledForm(Map.of(), FormFlow.linear(getQuestions().size()));
     }
 
     /**
@@ -54,20 +65,80 @@ public class PlayerFormSession {
     }
 
     /**
-     * Records the player's answer to the current question and moves to the next question.
+     * Records the player's answer to the current question and moves to the question the form's flow leads to.
      *
      * @param questionId The ID of the question being answered.
      * @param answer     The player's answer.
      */
     public void recordAnswer(String questionId, String answer) {
         answers.put(questionId, answer);
-        currentQuestionIndex++;
+        currentQuestionIndex = nextQuestionIndex(currentQuestionIndex, answer);
+    }
+
+    /**
+     * Chooses the question that follows an answer, without recording it.
+     *
+     * @param position The position of the answered question.
+     * @param answer   The answer.
+     * @return The position of the next question, or the number of questions if the form would be complete.
+     */
+    public int nextQuestionIndex(int position, String answer) {
+        int next = compiled.flow().next(position, answer);
+        return compiled.flow().isEnd(next) ? getQuestions().size() : next;
+    }
+
+    /**
+     * Retrieves the compiled flow of the form, as it was when the session started.
+     *
+     * @return The question flow.
+     */
+    public FormFlow getFlow() {
+        return compiled.flow();
+    }
+
+    /**
+     * Retrieves the compiled form, as it was when the session started.
+     *
+     * @return The compiled form.
+     */
+    public CompiledForm getCompiledForm() {
+        return compiled;
+    }
+
+    /**
+     * Checks an answer against the constraints of a question, as they were when the session started.
+     *
+     * @param questionId The ID of the question.
+     * @param answer     The answer to check.
+     * @return null if the answer is valid, or the reason it was rejected.
+     */
+    public String validateAnswer(String questionId, String answer) {
+        AnswerValidator validator = compiled.validators().get(questionId);
+        return validator == null ? null : validator.validate(answer);
+    }
+
+    /**
+     * Retrieves the position of the current question in the form.
+     *
+     * @return The zero-based index of the current question.
+     */
+    public int getCurrentQuestionIndex() {
+        return currentQuestionIndex;
+    }
+
+    /**
+     * Retrieves when the session started, for measuring how long a player takes to complete the form.
+     *
+     * @return The {@link System#nanoTime()} at which the session was created.
+     */
+    public long getStartedAt() {
+        return startedAt;
     }
 
     /**
      * Retrieves all answers recorded in the session.
      *
-     * @return A map of question IDs to answers.
+     * @return A map of question IDs to answers, in the order they were given.
      */
     public Map<String, String> getAnswers() {
         return answers;
@@ -82,6 +153,15 @@ public class PlayerFormSession {
         return playerName;
     }
 
+    /**
+     * Retrieves the key of the form in the configuration, which may differ from its name.
+     *
+     * @return The form key.
+     */
+    public String getFormKey() {
+        return formKey;
+    }
+
     /**
      * Retrieves the name of the form being interacted with.
      *
@@ -93,12 +173,21 @@ public class PlayerFormSession {
             : DEFAULT_FORM_NAME;
     }
 
+    /**
+     * Checks whether the form may be answered more than once.
+     *
+     * @return true if the form allows multiple responses, false otherwise.
+     */
+    public boolean allowsMultipleResponses() {
+        return form.has("allowMultipleResponses") && form.get("allowMultipleResponses").getAsBoolean();
+    }
+
     /**
      * Retrieves the list of questions in the form.
      *
      * @return A JsonArray of questions, or an empty JsonArray if none are defined.
      */
-    private JsonArray getQuestions() {
+    public JsonArray getQuestions() {
         return form.has("questions") && form.get("questions").isJsonArray() 
             ? form.getAsJsonArray("questions") 
             : new JsonArray();
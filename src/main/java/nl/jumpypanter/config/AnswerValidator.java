@@ -0,0 +1,282 @@
+package nl.jumpypanter.config;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A compiled check of the answers to a single question. Questions declare their constraints in the configuration:
+ * <ul>
+ *     <li>{@code "pattern"}: a regular expression the whole answer must match.</li>
+ *     <li>{@code "min"} and {@code "max"}: the answer must be a whole number within this range.</li>
+ *     <li>{@code "maxLength"}: the maximum number of characters.</li>
+ *     <li>{@code "choices"}: the answer must be exactly one of these strings.</li>
+ *     <li>{@code "invalidMessage"}: an optional message shown instead of the default one when an answer is rejected.</li>
+ * </ul>
+ * Constraints are compiled once by {@link ConfigLoader}, with patterns precompiled and choices hashed, and every
+ * rejection message is built up front, so checking a valid answer does not allocate.
+ */
+public abstract class AnswerValidator {
+    private static final String[] CONSTRAINT_KEYS = {"pattern", "min", "max", "maxLength", "choices"};
+
+    /**
+     * Checks an answer.
+     *
+     * @param answer The answer to check.
+     * @return null if the answer is valid, or the reason it was rejected.
+     */
+    public abstract String validate(String answer);
+
+    /**
+     * Compiles the constraints of a question.
+     *
+     * @param question The question from the configuration.
+     * @return The validator, or null if the question has no constraints.
+     * @throws IllegalArgumentException if a constraint is malformed, describing the problem.
+     */
+    public static AnswerValidator compile(JsonObject question) {
+        if (!hasConstraints(question)) {
+            return null;
+        }
+
+        String invalidMessage = null;
+        if (question.has("invalidMessage")) {
+            invalidMessage = requireString(question, "invalidMessage");
+        }
+
+        List<AnswerValidator> validators = new ArrayList<>();
+        if (question.has("maxLength")) {
+            long maxLength = requireInteger(question, "maxLength");
+            if (maxLength < 1) {
+                throw new IllegalArgumentException("The 'maxLength' field must be at least 1.");
+            }
+            validators.add(new MaxLength((int) Math.min(maxLength, Integer.MAX_VALUE),
+                    message(invalidMessage, "Your answer can be at most " + maxLength + " characters.")));
+        }
+        if (question.has("min") || question.has("max")) {
+            long min = question.has("min") ? requireInteger(question, "min") : Long.MIN_VALUE;
+            long max = question.has("max") ? requireInteger(question, "max") : Long.MAX_VALUE;
+            if (min > max) {
+                throw new IllegalArgumentException("The 'min' field must not be greater than the 'max' field.");
+            }
+            validators.add(new IntegerRange(min, max, message(invalidMessage, describeRange(question, min, max))));
+        }
+        if (question.has("choices")) {
+            Set<String> choices = requireChoices(question);
+            validators.add(new Choices(Set.copyOf(choices), message(invalidMessage, "Please answer with one of: " + String.join(", ", choices) + ".")));
+        }
+        if (question.has("pattern")) {
+            String regex = requireString(question, "pattern");
+            try {
+                validators.add(new Matches(Pattern.compile(regex), message(invalidMessage, "Your answer is not in the expected format.")));
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("The 'pattern' field is not a valid regular expression: " + e.getDescription() + ".");
+            }
+        }
+
+        return validators.size() == 1 ? validators.get(0) : new All(validators.toArray(new AnswerValidator[0]));
+    }
+
+    /**
+     * Checks whether a question declares any constraints.
+     *
+     * @param question The question from the configuration.
+     * @return true if the question has at least one constraint.
+     */
+    public static boolean hasConstraints(JsonObject question) {
+        for (String key : CONSTRAINT_KEYS) {
+            if (question.has(key) && !question.get(key).isJsonNull()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String message(String invalidMessage, String defaultMessage) {
+        return invalidMessage != null ? invalidMessage : defaultMessage;
+    }
+
+    private static String describeRange(JsonObject question, long min, long max) {
+        if (!question.has("max")) {
+            return "Please answer with a whole number of at least " + min + ".";
+        }
+        if (!question.has("min")) {
+            return "Please answer with a whole number of at most " + max + ".";
+        }
+        return "Please answer with a whole number from " + min + " to " + max + ".";
+    }
+
+    private static String requireString(JsonObject question, String field) {
+        JsonElement value = question.get(field);
+        if (!value.isJsonPrimitive() || !value.getAsJsonPrimitive().isString()) {
+            throw new IllegalArgumentException("The '" + field + "' field must be a string.");
+        }
+        return value.getAsString();
+    }
+
+    private static long requireInteger(JsonObject question, String field) {
+        JsonElement value = question.get(field);
+        if (!value.isJsonPrimitive() || !value.getAsJsonPrimitive().isNumber()) {
+            throw new IllegalArgumentException("The '" + field + "' field must be a whole number.");
+        }
+        try {
+            return value.getAsBigDecimal().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("The '" + field + "' field must be a whole number.");
+        }
+    }
+
+    private static Set<String> requireChoices(JsonObject question) {
+        JsonElement value = question.get("choices");
+        if (!value.isJsonArray() || value.getAsJsonArray().isEmpty()) {
+            throw new IllegalArgumentException("The 'choices' field must be a non-empty array of strings.");
+        }
+
+        JsonArray array = value.getAsJsonArray();
+        Set<String> choices = new LinkedHashSet<>();
+        for (JsonElement choice : array) {
+            if (!choice.isJsonPrimitive() || !choice.getAsJsonPrimitive().isString()) {
+                throw new IllegalArgumentException("The 'choices' field must be a non-empty array of strings.");
+            }
+            choices.add(choice.getAsString());
+        }
+        return choices;
+    }
+
+    /**
+     * Rejects answers longer than a maximum number of characters.
+     */
+    private static final class MaxLength extends AnswerValidator {
+        private final int maxLength;
+        private final String message;
+
+        private MaxLength(int maxLength, String message) {
+            this.maxLength = maxLength;
+            this.message = message;
+        }
+
+        @Override
+        public String validate(String answer) {
+            return answer.length() <= maxLength ? null : message;
+        }
+    }
+
+    /**
+     * Accepts whole numbers within a range, surrounded by optional whitespace. The number is parsed in place, so
+     * neither a trimmed copy of the answer nor an exception is created.
+     */
+    private static final class IntegerRange extends AnswerValidator {
+        private final long min;
+        private final long max;
+        private final String message;
+
+        private IntegerRange(long min, long max, String message) {
+            this.min = min;
+            this.max = max;
+            this.message = message;
+        }
+
+        @Override
+        public String validate(String answer) {
+            int start = 0;
+            int end = answer.length();
+            while (start < end && Character.isWhitespace(answer.charAt(start))) start++;
+            while (end > start && Character.isWhitespace(answer.charAt(end - 1))) end--;
+
+            boolean negative = false;
+            if (start < end && (answer.charAt(start) == '-' || answer.charAt(start) == '+')) {
+                negative = answer.charAt(start) == '-';
+                start++;
+            }
+            if (start == end) {
+                return message;
+            }
+
+            // Accumulate as a negative number, which has the larger range
+            long value = 0;
+            for (int i = start; i < end; i++) {
+                int digit = answer.charAt(i) - '0';
+                if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+                    return message;
+                }
+                value = value * 10 - digit;
+            }
+            if (!negative) {
+                if (value == Long.MIN_VALUE) {
+                    return message;
+                }
+                value = -value;
+            }
+            return value >= min && value <= max ? null : message;
+        }
+    }
+
+    /**
+     * Accepts only answers from a fixed set.
+     */
+    private static final class Choices extends AnswerValidator {
+        private final Set<String> choices;
+        private final String message;
+
+        private Choices(Set<String> choices, String message) {
+            this.choices = choices;
+            this.message = message;
+        }
+
+        @Override
+        public String validate(String answer) {
+            return choices.contains(answer) ? null : message;
+        }
+    }
+
+    /**
+     * Accepts answers that match a regular expression in full. Each thread reuses its own matcher.
+     */
+    private static final class Matches extends AnswerValidator {
+        private final ThreadLocal<Matcher> matcher;
+        private final String message;
+
+        private Matches(Pattern pattern, String message) {
+            this.matcher = ThreadLocal.withInitial(() -> pattern.matcher(""));
+            this.message = message;
+        }
+
+        @Override
+        public String validate(String answer) {
+            Matcher reused = matcher.get();
+            boolean matches = reused.reset(answer).matches();
+            reused.reset("");
+            return matches ? null : message;
+        }
+    }
+
+    /**
+     * Accepts answers that pass every one of several validators, cheapest first.
+     */
+    private static final class All extends AnswerValidator {
+        private final AnswerValidator[] validators;
+
+        private All(AnswerValidator[] validators) {
+            this.validators = validators;
+        }
+
+        @Override
+        public String validate(String answer) {
+            for (AnswerValidator validator : validators) {
+                String problem = validator.validate(answer);
+                if (problem != null) {
+                    return problem;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package nl.jumpypanter.config;
+
+import java.util.Map;
+
+/**
+ * The parts of a form that are compiled once when it is loaded, rather than read from its JSON for every answer.
+ *
+ * @param validators The answer validators by question ID, for the questions that have constraints.
+ * @param flow       The order in which the questions are asked.
+ */
+public record CompiledForm(Map<String, AnswerValidator> validators, FormFlow flow) {
+}
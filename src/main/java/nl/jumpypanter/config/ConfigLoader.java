@@ -2,65 +2,299 @@ package nl.jumpypanter.config;
 
 import com.google.gson.*;
 import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.storage.AnswerCrypto;
+import nl.jumpypanter.utils.FlightEvents;
+import nl.jumpypanter.utils.IoExecutor;
 
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Handles loading, saving, and managing the configuration for the form mod.
- * Provides access to forms and settings defined in the configuration file.
+ * Provides access to messages and settings defined in the configuration file,
+ * and to forms stored one file per form by {@link FormFileStore}.
  */
 public class ConfigLoader {
     public static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
     private static final File CONFIG_DIR = new File("config");
     public static final File CONFIG_FILE = new File(CONFIG_DIR, "ServerForms.json");
     private static JsonObject config;
+    private static volatile Map<String, CompiledForm> compiledForms = Map.of();
+    private static volatile Map<String, String> formKeysByName = Map.of();
 
     private static final String FORMS_KEY = "forms";
     private static final String MESSAGES_KEY = "messages";
+    private static final String SETTINGS_KEY = "settings";
+    private static final String RETENTION_KEY = "retention";
 
     /**
-     * Loads the configuration file. If the file does not exist or is invalid,
-     * a default configuration is generated.
+     * Loads the configuration file and all form files. If the configuration does not exist or is invalid,
+     * a default configuration is generated. Blocks until the files have been read on I/O threads.
      */
     public static void loadConfig() {
+        readConfig().thenAccept(ConfigLoader::applyConfig).join();
+    }
+
+    /**
+     * Reloads the configuration file and the form files that changed, without blocking the server thread. Pending
+     * form edits are written first, because the forms are rebuilt from their files.
+     *
+     * @return A future completed on the server thread once the new configuration is in use.
+     */
+    public static CompletableFuture<Void> reloadConfig() {
+        FlightEvents.ConfigReload event = new FlightEvents.ConfigReload();
+        event.begin();
+        return IoExecutor.onMainThread(ConfigPersistence.flushAndAwait().thenCompose(ignored -> readConfig()))
+                .thenAccept(ConfigLoader::applyConfig).whenComplete((ignored, error) -> {
+            event.end();
+            if (event.shouldCommit()) {
+                event.formCount = getForms().size();
+                event.succeeded = error == null;
+                event.commit();
+            }
+        });
+    }
+
+    /**
+     * Saves the messages and settings to the configuration file in the background.
+     * Forms are stored in their own files and saved with {@link #saveForm(String)}.
+     *
+     * @return A future completed on the server thread once the configuration has been written.
+     */
+    public static CompletableFuture<Void> saveConfig() {
+        return ConfigPersistence.markConfigDirty();
+    }
+
+    /**
+     * Saves a single form to its own file in the background. Edits made in quick succession are written together.
+     *
+     * @param formKey The key of the form to save.
+     * @return A future completed on the server thread once the form has been written.
+     */
+    public static CompletableFuture<Void> saveForm(String formKey) {
+        compileForm(formKey);
+        return ConfigPersistence.markFormDirty(formKey);
+    }
+
+    /**
+     * Writes pending configuration changes and waits for them to finish. Called when the server stops.
+     */
+    public static void flush() {
+        ConfigPersistence.flush();
+    }
+
+    /**
+     * Puts a freshly read configuration into use. Must be called on the server thread, or during startup.
+     *
+     * @param loaded The configuration and form changes read from disk.
+     */
+    private static void applyConfig(LoadedConfig loaded) {
+        JsonObject previousForms = getForms();
+        JsonObject mainConfig = loaded.mainConfig();
+        JsonObject forms = FormFileStore.apply(loaded.forms(), previousForms);
+        // Edits made while the files were being read are not on disk yet, so keep them
+        for (String formKey : ConfigPersistence.getDirtyForms()) {
+            JsonElement edited = previousForms.get(formKey);
+            if (edited != null) {
+                forms.add(formKey, edited);
+            } else {
+                forms.remove(formKey);
+            }
+        }
+        mainConfig.add(FORMS_KEY, forms);
+        config = mainConfig;
+        compileForms();
+        IoExecutor.configure();
+        AnswerCrypto.configure();
+        ServerForms.LOGGER.info("Config loaded successfully.");
+    }
+
+    /**
+     * Compiles the answer validators and question flow of every form.
+     */
+    private static void compileForms() {
+        Map<String, CompiledForm> compiled = new HashMap<>();
+        for (Map.Entry<String, JsonElement> entry : getForms().entrySet()) {
+            compiled.put(entry.getKey(), compileForm(entry.getKey(), entry.getValue()));
+        }
+        compiledForms = Map.copyOf(compiled);
+        indexFormNames();
+    }
+
+    /**
+     * Compiles a single form after it changed, leaving the other forms untouched.
+     *
+     * @param formKey The key of the form.
+     */
+    private static void compileForm(String formKey) {
+        Map<String, CompiledForm> compiled = new HashMap<>(compiledForms);
+        JsonElement form = getForms().get(formKey);
+        if (form == null) {
+            compiled.remove(formKey);
+        } else {
+            compiled.put(formKey, compileForm(formKey, form));
+        }
+        compiledForms = Map.copyOf(compiled);
+        indexFormNames();
+    }
+
+    /**
+     * Maps the name of every form to its key, for lookups that start from the form name stored with the answers.
+     */
+    private static void indexFormNames() {
+        Map<String, String> keys = new HashMap<>();
+        for (Map.Entry<String, JsonElement> entry : getForms().entrySet()) {
+            JsonElement form = entry.getValue();
+            if (form.isJsonObject() && form.getAsJsonObject().has("name") && form.getAsJsonObject().get("name").isJsonPrimitive()) {
+                keys.putIfAbsent(form.getAsJsonObject().get("name").getAsString(), entry.getKey());
+            }
+        }
+        formKeysByName = Map.copyOf(keys);
+    }
+
+    /**
+     * Compiles the answer validators and question flow of a form. Malformed constraints and rules are reported by
+     * the {@code FormValidator}; until they are fixed, such questions accept any answer and are asked in order.
+     *
+     * @param formKey The key of the form.
+     * @param form    The form.
+     * @return The compiled form.
+     */
+    private static CompiledForm compileForm(String formKey, JsonElement form) {
+        if (!form.isJsonObject() || !form.getAsJsonObject().has("questions") || !form.getAsJsonObject().get("questions").isJsonArray()) {
+            return new CompiledForm(Map.of(), FormFlow.linear(0));
+        }
+
+        JsonArray questions = form.getAsJsonObject().getAsJsonArray("questions");
+        Map<String, AnswerValidator> validators = new HashMap<>();
+        for (JsonElement question : questions) {
+            if (!question.isJsonObject() || !question.getAsJsonObject().has("id")) {
+                continue;
+            }
+            String questionId = question.getAsJsonObject().get("id").getAsString();
+            try {
+                AnswerValidator validator = AnswerValidator.compile(question.getAsJsonObject());
+                if (validator != null) {
+                    validators.put(questionId, validator);
+                }
+            } catch (IllegalArgumentException e) {
+                ServerForms.LOGGER.warn("Ignoring the constraints of question '{}' in form '{}': {}", questionId, formKey, e.getMessage());
+            }
+        }
+
+        FormFlow flow;
+        try {
+            flow = FormFlow.compile(questions);
+        } catch (IllegalArgumentException e) {
+            ServerForms.LOGGER.warn("Ignoring the question flow of form '{}' and asking its questions in order: {}", formKey, e.getMessage());
+            flow = FormFlow.linear(questions.size());
+        }
+        return new CompiledForm(Map.copyOf(validators), flow);
+    }
+
+    /**
+     * Reads the configuration file and then scans the forms directory.
+     *
+     * @return A future completed with the configuration and the form changes to apply.
+     */
+    private static CompletableFuture<LoadedConfig> readConfig() {
+        return IoExecutor.supply("read config", ConfigLoader::readMainConfig)
+                .thenCompose(mainConfig -> FormFileStore.scan().thenApply(forms -> new LoadedConfig(mainConfig, forms)));
+    }
+
+    /**
+     * Reads the configuration file, generating the default configuration if it is missing or invalid.
+     * A configuration that still contains its forms is migrated to one file per form. Runs on an I/O thread.
+     *
+     * @return The configuration to use, without its forms.
+     */
+    private static JsonObject readMainConfig() throws IOException {
         if (!CONFIG_FILE.exists()) {
             ServerForms.LOGGER.warn("Config file not found. Generating default config...");
-            generateDefaultConfig();
+            return generateDefaultConfig();
         }
 
+        JsonObject loaded;
         try (FileReader reader = new FileReader(CONFIG_FILE)) {
-            config = GSON.fromJson(reader, JsonObject.class);
-            validateConfig();
-            ServerForms.LOGGER.info("Config loaded successfully.");
+            loaded = GSON.fromJson(reader, JsonObject.class);
         } catch (IOException e) {
             ServerForms.LOGGER.error("Failed to load config file: ", e);
-            generateDefaultConfig();
+            return generateDefaultConfig();
+        }
+
+        if (loaded != null && loaded.has(FORMS_KEY) && loaded.get(FORMS_KEY).isJsonObject()) {
+            migrateForms(loaded);
+        } else if (loaded == null || !FormFileStore.exists()) {
+            ServerForms.LOGGER.error("Config file is missing the '{}' section. Regenerating default config...", FORMS_KEY);
+            return generateDefaultConfig();
         }
+        return loaded;
     }
 
     /**
-     * Validates the loaded configuration and regenerates it if invalid.
+     * Moves the forms of a single-file configuration into one file per form. The original file is kept
+     * as a backup, and forms that already have their own file are left untouched. Runs on an I/O thread.
+     *
+     * @param loaded The configuration containing a forms section, which is removed from it.
+     * @throws IOException if the forms or the configuration cannot be written.
      */
-    private static void validateConfig() {
-        if (config == null || !config.has(FORMS_KEY) || !config.get(FORMS_KEY).isJsonObject()) {
-            ServerForms.LOGGER.error("Config file is missing the '{}' section. Regenerating default config...", FORMS_KEY);
-            generateDefaultConfig();
+    private static void migrateForms(JsonObject loaded) throws IOException {
+        JsonObject forms = loaded.remove(FORMS_KEY).getAsJsonObject();
+        JsonObject newForms = new JsonObject();
+        forms.entrySet().stream()
+                .filter(entry -> !FormFileStore.getFormFile(entry.getKey()).exists())
+                .forEach(entry -> newForms.add(entry.getKey(), entry.getValue()));
+
+        File backup = new File(CONFIG_DIR, CONFIG_FILE.getName() + ".bak");
+        Files.copy(CONFIG_FILE.toPath(), backup.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        FormFileStore.writeAll(newForms);
+        writeMainConfig(loaded);
+        ServerForms.LOGGER.info("Migrated {} form(s) to {}. The previous config was saved as {}.",
+                newForms.size(), FormFileStore.FORMS_DIR.getPath(), backup.getName());
+    }
+
+    /**
+     * Writes the configuration file. Runs on an I/O thread.
+     *
+     * @param mainConfig The configuration to write, without its forms.
+     * @throws IOException if the file cannot be written.
+     */
+    static void writeMainConfig(JsonObject mainConfig) throws IOException {
+        try (FileWriter writer = new FileWriter(CONFIG_FILE)) {
+            GSON.toJson(mainConfig, writer);
         }
     }
 
     /**
-     * Generates a default configuration file with predefined forms and settings.
-     * This method is called if the configuration file is missing or invalid.
+     * Creates a shallow copy of a configuration without its forms section.
+     *
+     * @param fullConfig The configuration to copy.
+     * @return The configuration without forms.
      */
-    private static void generateDefaultConfig() {
-        if (!CONFIG_DIR.exists() && !CONFIG_DIR.mkdirs()) {
-            ServerForms.LOGGER.error("Failed to create configuration directory: {}", CONFIG_DIR.getAbsolutePath());
-            return;
+    static JsonObject withoutForms(JsonObject fullConfig) {
+        JsonObject mainConfig = new JsonObject();
+        if (fullConfig != null) {
+            fullConfig.entrySet().stream()
+                    .filter(entry -> !entry.getKey().equals(FORMS_KEY))
+                    .forEach(entry -> mainConfig.add(entry.getKey(), entry.getValue()));
         }
+        return mainConfig;
+    }
 
+    /**
+     * Generates a default configuration file and form files with predefined forms and settings.
+     * This method is called if the configuration file is missing or invalid.
+     *
+     * @return The default configuration, without its forms.
+     */
+    private static JsonObject generateDefaultConfig() {
         JsonObject defaultConfig = new JsonObject();
         JsonObject forms = new JsonObject();
 
@@ -82,19 +316,31 @@ public class ConfigLoader {
                 }
         ));
 
-        defaultConfig.add(FORMS_KEY, forms);
-
         // Add default messages
         defaultConfig.add(MESSAGES_KEY, createDefaultMessages());
 
-        try (FileWriter writer = new FileWriter(CONFIG_FILE)) {
-            GSON.toJson(defaultConfig, writer);
+        // Add default settings
+        defaultConfig.add(SETTINGS_KEY, createDefaultSettings());
+
+        // Keep answers forever until retention rules are added
+        defaultConfig.add(RETENTION_KEY, new JsonObject());
+
+        if (!CONFIG_DIR.exists() && !CONFIG_DIR.mkdirs()) {
+            ServerForms.LOGGER.error("Failed to create configuration directory: {}", CONFIG_DIR.getAbsolutePath());
+            return defaultConfig;
+        }
+
+        try {
+            writeMainConfig(defaultConfig);
+            if (!FormFileStore.exists()) {
+                FormFileStore.writeAll(forms);
+            }
             ServerForms.LOGGER.info("Default forms configuration generated at: {}", CONFIG_FILE.getAbsolutePath());
         } catch (IOException e) {
             ServerForms.LOGGER.error("Failed to generate default forms configuration: ", e);
         }
 
-        config = defaultConfig;
+        return defaultConfig;
     }
 
     /**
@@ -139,6 +385,8 @@ public class ConfigLoader {
         messages.addProperty("formNotFound", "&cForm '{form}' not found for player: {player}.");
         messages.addProperty("viewingForm", "&aViewing form: {form} for player: {player}.");
         messages.addProperty("answerRecorded", "&aYour answer has been recorded.");
+        messages.addProperty("nextQuestion", "&eNext question: &f{question}");
+        messages.addProperty("questionProgress", "&7[{current}/{total}] ");
         messages.addProperty("noFormsFound", "&cNo forms found for player: {player}.");
         messages.addProperty("readError", "&cAn error occurred while reading the form file.");
         messages.addProperty("formExists", "&cA form with this name already exists.");
@@ -148,9 +396,64 @@ public class ConfigLoader {
         messages.addProperty("questionExists", "&cA question with ID '{id}' already exists.");
         messages.addProperty("questionNotFound", "&cNo question with ID '{id}' found in form '{form}'.");
         messages.addProperty("saveError", "&cAn error occurred while saving the configuration.");
+        messages.addProperty("formBusy", "&eForms are busy right now. Please try again shortly.");
+        messages.addProperty("invalidAnswer", "&c{reason} Please try again.");
+        messages.addProperty("editStarted", "&aEditing form '{form}'. Use /formedit commit to apply your changes.");
+        messages.addProperty("editAlreadyStarted", "&cYou are already editing form '{form}'. Commit or abort it first.");
+        messages.addProperty("editNotStarted", "&cYou are not editing a form. Use /formedit begin <form> first.");
+        messages.addProperty("editConflict", "&cForm '{form}' was changed by someone else. Abort and start a new edit.");
+        messages.addProperty("editInvalid", "&cThe draft of form '{form}' is invalid:");
+        messages.addProperty("editCommitted", "&aCommitted changes to form '{form}'.");
+        messages.addProperty("editAborted", "&eDiscarded changes to form '{form}'.");
+        messages.addProperty("noPermission", "&cYou do not have permission to view form '{form}'.");
+        messages.addProperty("noStartPermission", "&cYou do not have permission to start form '{form}'.");
         return messages;
     }
 
+    /**
+     * Creates the default settings for the configuration.
+     *
+     * @return A JsonObject containing default settings.
+     */
+    private static JsonObject createDefaultSettings() {
+        JsonObject settings = new JsonObject();
+        settings.addProperty("api.bindAddress", "127.0.0.1");
+        settings.addProperty("api.enabled", false);
+        settings.addProperty("api.port", 8765);
+        settings.addProperty("api.token", "");
+        settings.addProperty("admission.backlogHighWatermark", 64);
+        settings.addProperty("admission.backlogLowWatermark", 16);
+        settings.addProperty("admission.latencyHighWatermarkMs", 500);
+        settings.addProperty("admission.latencyLowWatermarkMs", 100);
+        settings.addProperty("answers.cacheTtlMs", 30000);
+        settings.addProperty("answers.directory", "mods/FormAnswers");
+        settings.addProperty("answers.viewCacheMaxBytes", 8 * 1024 * 1024);
+        settings.addProperty("answers.watchChanges", true);
+        settings.addProperty("commands.dispatchMode", "literal");
+        settings.addProperty("completions.batchSize", 50);
+        settings.addProperty("completions.batchWindowMs", 250);
+        settings.addProperty("completions.jsonlFile", "");
+        settings.addProperty("completions.maxAttempts", 5);
+        settings.addProperty("completions.queueCapacity", 1024);
+        settings.addProperty("completions.retryBackoffMs", 500);
+        settings.addProperty("completions.webhookTimeoutMs", 5000);
+        settings.addProperty("completions.webhookUrl", "");
+        settings.addProperty("encryption.enabled", false);
+        settings.addProperty("encryption.keystore", "config/ServerForms/answers.p12");
+        settings.addProperty("encryption.keystorePassword", "");
+        settings.addProperty("encryption.maxFilesPerSecond", 100);
+        settings.addProperty("integrity.maxFilesPerSecond", 200);
+        settings.addProperty("io.maxConcurrency", 8);
+        settings.addProperty("permissions.startLevel", 0);
+        settings.addProperty("permissions.viewLevel", 4);
+        settings.addProperty("persistence.debounceMs", 1000);
+        settings.addProperty("persistence.maxDelayMs", 5000);
+        settings.addProperty("responses.pageSize", 10);
+        settings.addProperty("retention.intervalMinutes", 60);
+        settings.addProperty("retention.maxFilesPerSecond", 50);
+        return settings;
+    }
+
     /**
      * Retrieves the entire configuration as a JsonObject.
      *
@@ -171,6 +474,27 @@ public class ConfigLoader {
                 : new JsonObject();
     }
 
+    /**
+     * Retrieves the compiled answer validators and question flow of a form.
+     *
+     * @param formKey The key of the form.
+     * @return The compiled form, or null if there is no such form.
+     */
+    public static CompiledForm getCompiledForm(String formKey) {
+        return compiledForms.get(formKey);
+    }
+
+    /**
+     * Retrieves the key of the form with the given name. Answers are stored under the form name, while commands
+     * and permission nodes use the key.
+     *
+     * @param formName The name of the form.
+     * @return The key of the form, or the name itself if no current form has that name.
+     */
+    public static String getFormKey(String formName) {
+        return formKeysByName.getOrDefault(formName, formName);
+    }
+
     /**
      * Retrieves a message from the configuration by its key.
      *
@@ -184,4 +508,75 @@ public class ConfigLoader {
                 : new JsonObject();
         return messages.has(key) ? messages.get(key).getAsString() : defaultMessage;
     }
+
+    /**
+     * Retrieves the retention rules, which map form names, or "*" for every other form, to how long answers are kept.
+     *
+     * @return The retention section of the configuration, or an empty JsonObject if missing.
+     */
+    public static JsonObject getRetentionRules() {
+        return config != null && config.has(RETENTION_KEY) && config.get(RETENTION_KEY).isJsonObject()
+                ? config.getAsJsonObject(RETENTION_KEY)
+                : new JsonObject();
+    }
+
+    /**
+     * Retrieves a numeric setting from the configuration by its key.
+     *
+     * @param key          The key of the setting to retrieve.
+     * @param defaultValue The default value to return if the key is not found or not a number.
+     * @return The setting value, or the default value if not found.
+     */
+    public static long getLongSetting(String key, long defaultValue) {
+        JsonElement value = getSettings().get(key);
+        return value != null && value.isJsonPrimitive() && value.getAsJsonPrimitive().isNumber()
+                ? value.getAsLong()
+                : defaultValue;
+    }
+
+    /**
+     * Retrieves a boolean setting from the configuration by its key.
+     *
+     * @param key          The key of the setting to retrieve.
+     * @param defaultValue The default value to return if the key is not found or not a boolean.
+     * @return The setting value, or the default value if not found.
+     */
+    public static boolean getBooleanSetting(String key, boolean defaultValue) {
+        JsonElement value = getSettings().get(key);
+        return value != null && value.isJsonPrimitive() && value.getAsJsonPrimitive().isBoolean()
+                ? value.getAsBoolean()
+                : defaultValue;
+    }
+
+    /**
+     * Retrieves a string setting from the configuration by its key.
+     *
+     * @param key          The key of the setting to retrieve.
+     * @param defaultValue The default value to return if the key is not found.
+     * @return The setting value, or the default value if not found.
+     */
+    public static String getStringSetting(String key, String defaultValue) {
+        JsonElement value = getSettings().get(key);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : defaultValue;
+    }
+
+    /**
+     * Retrieves the settings section of the configuration.
+     *
+     * @return A JsonObject containing all settings, or an empty JsonObject if missing.
+     */
+    private static JsonObject getSettings() {
+        return config != null && config.has(SETTINGS_KEY) && config.get(SETTINGS_KEY).isJsonObject()
+                ? config.getAsJsonObject(SETTINGS_KEY)
+                : new JsonObject();
+    }
+
+    /**
+     * A configuration read from disk that has not been put into use yet.
+     *
+     * @param mainConfig The configuration file's content, without forms.
+     * @param forms      The changes found in the forms directory.
+     */
+    private record LoadedConfig(JsonObject mainConfig, FormFileStore.FormsUpdate forms) {
+    }
 }
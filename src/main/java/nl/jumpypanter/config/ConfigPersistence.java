@@ -0,0 +1,186 @@
+package nl.jumpypanter.config;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.utils.FormMetrics;
+import nl.jumpypanter.utils.IoExecutor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Persists configuration edits in the background. Edited forms are marked dirty, and once edits have been quiet
+ * for {@code persistence.debounceMs} (or at the latest after {@code persistence.maxDelayMs}) the dirty forms are
+ * copied on the server thread and serialized and written on an I/O thread. Only forms that changed are written.
+ * All methods except {@link #flush()} must be called on the server thread.
+ */
+public class ConfigPersistence {
+    // Concurrent only so the metrics gauge can read its size from other threads; it is changed on the server thread
+    private static final Set<String> dirtyForms = ConcurrentHashMap.newKeySet();
+    private static boolean configDirty = false;
+    private static long firstDirtyAt = -1;
+    private static long flushDeadline = -1;
+    private static CompletableFuture<Void> nextFlush = new CompletableFuture<>();
+    private static volatile CompletableFuture<Void> writeChain = CompletableFuture.completedFuture(null);
+
+    static {
+        FormMetrics.registerGauge("persistence.dirtyForms", dirtyForms::size);
+    }
+
+    /**
+     * Registers the tick listener that writes dirty forms once their debounce delay has passed.
+     */
+    public static void register() {
+        ServerTickEvents.END_SERVER_TICK.register(server -> {
+            if (flushDeadline >= 0 && System.nanoTime() - flushDeadline >= 0) {
+                flushNow();
+            }
+        });
+    }
+
+    /**
+     * Marks a form as changed, so it is written with the next flush. A form that no longer exists has its file removed.
+     *
+     * @param formKey The key of the changed form.
+     * @return A future completed on the server thread once the flush containing this change has been written.
+     */
+    public static CompletableFuture<Void> markFormDirty(String formKey) {
+        dirtyForms.add(formKey);
+        return schedule();
+    }
+
+    /**
+     * Marks the messages and settings as changed, so the configuration file is written with the next flush.
+     *
+     * @return A future completed on the server thread once the flush containing this change has been written.
+     */
+    public static CompletableFuture<Void> markConfigDirty() {
+        configDirty = true;
+        return schedule();
+    }
+
+    /**
+     * Writes all dirty forms right away instead of waiting for the debounce delay. If the write fails, the forms
+     * are marked dirty again, so the next flush retries them.
+     *
+     * @return A future completed on the server thread once the dirty forms have been written.
+     */
+    public static CompletableFuture<Void> flushNow() {
+        CompletableFuture<Void> batch = nextFlush;
+        if (dirtyForms.isEmpty() && !configDirty) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Copy the changed forms on the server thread, so they can be serialized safely on an I/O thread
+        Map<String, JsonObject> snapshots = new LinkedHashMap<>();
+        JsonObject forms = ConfigLoader.getForms();
+        for (String formKey : dirtyForms) {
+            JsonElement form = forms.get(formKey);
+            snapshots.put(formKey, form != null && form.isJsonObject() ? form.getAsJsonObject().deepCopy() : null);
+        }
+        JsonObject mainConfig = configDirty ? ConfigLoader.withoutForms(ConfigLoader.getConfig()).deepCopy() : null;
+
+        dirtyForms.clear();
+        configDirty = false;
+        firstDirtyAt = -1;
+        flushDeadline = -1;
+        nextFlush = new CompletableFuture<>();
+
+        FormMetrics.increment("persistence.flushes");
+        writeChain = writeChain
+                .handle((ignored, error) -> (Void) null)
+                .thenCompose(ignored -> IoExecutor.run("save config", () -> write(snapshots, mainConfig)));
+        IoExecutor.onMainThread(writeChain).whenComplete((ignored, error) -> {
+            if (error != null) {
+                // Still only in memory, so keep them for the next flush
+                dirtyForms.addAll(snapshots.keySet());
+                configDirty |= mainConfig != null;
+                ServerForms.LOGGER.warn("Failed to save the configuration changes; they are written again with the next flush.");
+                batch.completeExceptionally(error);
+            } else {
+                batch.complete(null);
+            }
+        });
+        return batch;
+    }
+
+    /**
+     * Writes all dirty forms right away and returns the pending writes, including earlier flushes still in progress.
+     *
+     * @return A future completed on an I/O thread once the last write has finished, or failed if it failed.
+     */
+    public static CompletableFuture<Void> flushAndAwait() {
+        flushNow();
+        return writeChain;
+    }
+
+    /**
+     * Retrieves the forms edited since the last flush.
+     *
+     * @return A copy of the keys of the dirty forms.
+     */
+    static Set<String> getDirtyForms() {
+        return Set.copyOf(dirtyForms);
+    }
+
+    /**
+     * Writes all dirty forms and waits for every pending write to finish. Called on the server thread when the server stops.
+     */
+    public static void flush() {
+        flushNow();
+        try {
+            writeChain.get(10, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            ServerForms.LOGGER.warn("Timed out waiting for the configuration to be saved.");
+        } catch (ExecutionException e) {
+            ServerForms.LOGGER.error("Failed to save the configuration during shutdown.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Moves the flush deadline forward after an edit, without postponing it past the maximum delay.
+     *
+     * @return A future completed once the scheduled flush has been written.
+     */
+    private static CompletableFuture<Void> schedule() {
+        long now = System.nanoTime();
+        if (firstDirtyAt < 0) {
+            firstDirtyAt = now;
+        }
+        long debounce = TimeUnit.MILLISECONDS.toNanos(ConfigLoader.getLongSetting("persistence.debounceMs", 1000));
+        long maxDelay = TimeUnit.MILLISECONDS.toNanos(ConfigLoader.getLongSetting("persistence.maxDelayMs", 5000));
+        flushDeadline = Math.min(now + debounce, firstDirtyAt + maxDelay);
+        return nextFlush;
+    }
+
+    /**
+     * Serializes and writes the copied forms and configuration. Runs on an I/O thread.
+     *
+     * @param snapshots  The copied forms by key, with null for forms that were removed.
+     * @param mainConfig The copied configuration without forms, or null if it did not change.
+     * @throws Exception if a file cannot be written.
+     */
+    private static void write(Map<String, JsonObject> snapshots, JsonObject mainConfig) throws Exception {
+        for (Map.Entry<String, JsonObject> snapshot : snapshots.entrySet()) {
+            if (snapshot.getValue() == null) {
+                FormFileStore.deleteFormFile(snapshot.getKey());
+            } else {
+                FormFileStore.writeFormFile(snapshot.getKey(), ConfigLoader.GSON.toJson(snapshot.getValue()));
+            }
+        }
+        if (mainConfig != null) {
+            ConfigLoader.writeMainConfig(mainConfig);
+        }
+        FormMetrics.add("persistence.formsWritten", snapshots.size());
+    }
+}
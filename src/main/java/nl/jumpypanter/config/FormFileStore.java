@@ -0,0 +1,257 @@
+package nl.jumpypanter.config;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.utils.IoExecutor;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Stores each form in its own file in the {@code config/ServerForms/forms} directory.
+ * Remembers the modification time, size and checksum of every file it has loaded, so a reload
+ * only parses files that actually changed, and saving a form rewrites only that form's file.
+ */
+public class FormFileStore {
+    public static final File FORMS_DIR = new File(new File("config", "ServerForms"), "forms");
+    private static final String EXTENSION = ".json";
+
+    private static final Map<String, FormFileState> loadedFiles = new ConcurrentHashMap<>();
+
+    /**
+     * Checks whether the forms directory exists.
+     *
+     * @return true if forms are stored one file per form, false otherwise.
+     */
+    public static boolean exists() {
+        return FORMS_DIR.isDirectory();
+    }
+
+    /**
+     * Scans the forms directory and reads the files that changed since they were last loaded, in parallel.
+     * Nothing is put into use until {@link #apply(FormsUpdate, JsonObject)} is called with the result.
+     *
+     * @return A future completed with the changes found in the forms directory.
+     */
+    public static CompletableFuture<FormsUpdate> scan() {
+        return IoExecutor.supply("scan forms", FormFileStore::findChangedFiles).thenCompose(scan -> {
+            IoExecutor.Scope<FormFileRead> scope = IoExecutor.openScope();
+            for (Map.Entry<String, File> changed : scan.changed().entrySet()) {
+                scope.fork("read form " + changed.getKey(), () -> readFormFile(changed.getKey(), changed.getValue()));
+            }
+            return scope.join()
+                    .whenComplete((ignored, error) -> scope.close())
+                    .thenApply(reads -> {
+                        Map<String, JsonObject> changedForms = new HashMap<>();
+                        Map<String, FormFileState> states = new HashMap<>();
+                        for (FormFileRead read : reads) {
+                            states.put(read.key(), read.state());
+                            if (read.form() != null) {
+                                changedForms.put(read.key(), read.form());
+                            }
+                        }
+                        return new FormsUpdate(changedForms, scan.removed(), states, scan.present());
+                    });
+        });
+    }
+
+    /**
+     * Puts the changes found by {@link #scan()} into use. Unchanged forms keep their existing JSON objects.
+     * Must be called on the server thread.
+     *
+     * @param update   The changes found in the forms directory.
+     * @param previous The forms currently in use.
+     * @return The forms to use from now on, sorted by key.
+     */
+    public static JsonObject apply(FormsUpdate update, JsonObject previous) {
+        update.removed().forEach(loadedFiles::remove);
+        loadedFiles.putAll(update.states());
+
+        JsonObject forms = new JsonObject();
+        for (String key : new TreeSet<>(update.present())) {
+            JsonObject form = update.changed().containsKey(key) ? update.changed().get(key) : previous.getAsJsonObject(key);
+            if (form != null) {
+                forms.add(key, form);
+            }
+        }
+
+        if (!update.changed().isEmpty() || !update.removed().isEmpty()) {
+            ServerForms.LOGGER.info("Loaded {} changed form file(s) and removed {} form(s).", update.changed().size(), update.removed().size());
+        }
+        return forms;
+    }
+
+    /**
+     * Writes every given form to its own file. Used to migrate the single-file configuration and to
+     * generate the default forms. Runs on an I/O thread.
+     *
+     * @param forms The forms to write.
+     * @throws IOException if a form file cannot be written.
+     */
+    public static void writeAll(JsonObject forms) throws IOException {
+        for (Map.Entry<String, JsonElement> entry : forms.entrySet()) {
+            writeFile(entry.getKey(), ConfigLoader.GSON.toJson(entry.getValue()).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Writes a single form to its file, replacing the previous version atomically. Runs on an I/O thread.
+     *
+     * @param key  The key of the form.
+     * @param json The serialized form.
+     * @throws IOException if the form file cannot be written.
+     */
+    public static void writeFormFile(String key, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        File file = writeFile(key, bytes);
+
+        // Remember our own write of a form that is already in use, so the next reload does not parse it again
+        loadedFiles.put(key, new FormFileState(file.lastModified(), file.length(), checksum(bytes)));
+    }
+
+    /**
+     * Deletes a form's file. Runs on an I/O thread.
+     *
+     * @param key The key of the form.
+     * @throws IOException if the form file cannot be deleted.
+     */
+    public static void deleteFormFile(String key) throws IOException {
+        Files.deleteIfExists(getFormFile(key).toPath());
+        loadedFiles.remove(key);
+    }
+
+    /**
+     * Retrieves the file a form is stored in. Keys are URL-encoded so any form key maps to a valid file name.
+     *
+     * @param key The key of the form.
+     * @return The form's file.
+     */
+    public static File getFormFile(String key) {
+        return new File(FORMS_DIR, URLEncoder.encode(key, StandardCharsets.UTF_8) + EXTENSION);
+    }
+
+    /**
+     * Writes a form file through a temporary file, so readers never see a partially written form. Runs on an I/O thread.
+     *
+     * @param key   The key of the form.
+     * @param bytes The serialized form.
+     * @return The written file.
+     * @throws IOException if the form file cannot be written.
+     */
+    private static File writeFile(String key, byte[] bytes) throws IOException {
+        if (!FORMS_DIR.exists() && !FORMS_DIR.mkdirs()) {
+            throw new IOException("Failed to create forms directory: " + FORMS_DIR.getAbsolutePath());
+        }
+
+        Path target = getFormFile(key).toPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(temp, bytes);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return target.toFile();
+    }
+
+    /**
+     * Lists the form files and compares them with the files loaded previously. Runs on an I/O thread.
+     *
+     * @return The files that changed, were removed, or are unchanged apart from their metadata.
+     */
+    private static DirectoryScan findChangedFiles() {
+        if (!FORMS_DIR.exists() && !FORMS_DIR.mkdirs()) {
+            ServerForms.LOGGER.error("Failed to create forms directory: {}", FORMS_DIR.getAbsolutePath());
+        }
+
+        File[] files = FORMS_DIR.listFiles(file -> file.isFile() && file.getName().endsWith(EXTENSION));
+        Map<String, File> changed = new HashMap<>();
+        Set<String> present = new HashSet<>();
+        if (files != null) {
+            for (File file : files) {
+                String fileName = file.getName();
+                String key = URLDecoder.decode(fileName.substring(0, fileName.length() - EXTENSION.length()), StandardCharsets.UTF_8);
+                present.add(key);
+
+                FormFileState state = loadedFiles.get(key);
+                if (state == null || state.lastModified() != file.lastModified() || state.size() != file.length()) {
+                    changed.put(key, file);
+                }
+            }
+        }
+
+        Set<String> removed = new HashSet<>(loadedFiles.keySet());
+        removed.removeAll(present);
+        return new DirectoryScan(changed, removed, present);
+    }
+
+    /**
+     * Reads a form file whose metadata changed. The form is only parsed if its checksum changed too. Runs on an I/O thread.
+     *
+     * @param key  The key of the form.
+     * @param file The form's file.
+     * @return The new state of the file, with the parsed form if its content changed.
+     * @throws IOException if the file cannot be read.
+     */
+    private static FormFileRead readFormFile(String key, File file) throws IOException {
+        long lastModified = file.lastModified();
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        FormFileState state = new FormFileState(lastModified, bytes.length, checksum(bytes));
+
+        FormFileState previous = loadedFiles.get(key);
+        if (previous != null && previous.checksum() == state.checksum()) {
+            return new FormFileRead(key, state, null);
+        }
+
+        JsonElement parsed = JsonParser.parseString(new String(bytes, StandardCharsets.UTF_8));
+        if (!parsed.isJsonObject()) {
+            throw new IOException("Form file " + file.getName() + " does not contain a JSON object.");
+        }
+        return new FormFileRead(key, state, parsed.getAsJsonObject());
+    }
+
+    private static long checksum(byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    /**
+     * The changes found in the forms directory by {@link #scan()}.
+     *
+     * @param changed The forms whose content changed, by key.
+     * @param removed The keys of forms whose files were deleted.
+     * @param states  The new file states to remember.
+     * @param present The keys of all forms currently in the directory.
+     */
+    public record FormsUpdate(Map<String, JsonObject> changed, Set<String> removed, Map<String, FormFileState> states, Set<String> present) {
+    }
+
+    /**
+     * What is known about a loaded form file.
+     *
+     * @param lastModified The modification time of the file.
+     * @param size         The size of the file in bytes.
+     * @param checksum     The CRC32C checksum of the file's content.
+     */
+    public record FormFileState(long lastModified, long size, long checksum) {
+    }
+
+    private record DirectoryScan(Map<String, File> changed, Set<String> removed, Set<String> present) {
+    }
+
+    private record FormFileRead(String key, FormFileState state, JsonObject form) {
+    }
+}
@@ -0,0 +1,363 @@
+package nl.jumpypanter.config;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The order in which the questions of a form are asked, compiled into a transition table. Without rules, questions
+ * are asked from first to last. A question can change what comes next with a {@code "next"} field:
+ * <ul>
+ *     <li>{@code "next": "7"} always continues with question 7.</li>
+ *     <li>{@code "next": {"no": "7", "maybe": "end", "*": "4"}} continues with question 7 after the answer "no",
+ *     ends the form after "maybe", and continues with question 4 after any other answer. Without {@code "*"},
+ *     other answers continue with the following question.</li>
+ * </ul>
+ * Every answer that has its own rule is an answer class of its question. The table holds the next position for each
+ * position and answer class, so choosing the next question is a single hash lookup and two array reads.
+ * Rules that lead back to an earlier question, or that leave questions unreachable, are rejected when the form is loaded.
+ */
+public final class FormFlow {
+    /**
+     * The target of a rule that ends the form.
+     */
+    public static final String END_TARGET = "end";
+
+    private static final String DEFAULT_KEY = "*";
+    private static final int DEFAULT_CLASS = 0;
+
+    private final int questionCount;
+    private final Map<String, Integer>[] answerClasses;
+    private final int[][] transitions;
+    private final int[] longestRemaining;
+
+    private FormFlow(int questionCount, Map<String, Integer>[] answerClasses, int[][] transitions) {
+        this.questionCount = questionCount;
+        this.answerClasses = answerClasses;
+        this.transitions = transitions;
+        this.longestRemaining = new int[questionCount];
+    }
+
+    /**
+     * Chooses the question that follows an answer.
+     *
+     * @param position The position of the answered question.
+     * @param answer   The answer.
+     * @return The position of the next question, or the number of questions if the form is complete.
+     */
+    public int next(int position, String answer) {
+        if (position < 0 || position >= questionCount) {
+            return questionCount;
+        }
+        Map<String, Integer> classes = answerClasses[position];
+        int answerClass = classes == null ? DEFAULT_CLASS : classes.getOrDefault(answer, DEFAULT_CLASS);
+        return transitions[position][answerClass];
+    }
+
+    /**
+     * Checks whether a position returned by {@link #next} means the form is complete.
+     *
+     * @param position The position.
+     * @return true if there are no more questions to ask.
+     */
+    public boolean isEnd(int position) {
+        return position >= questionCount;
+    }
+
+    /**
+     * Retrieves the number of questions on the longest path from a question to the end of the form,
+     * for showing the player's progress.
+     *
+     * @param position The position of the question.
+     * @return The most questions that can still be asked, including the given one, or 0 at the end of the form.
+     */
+    public int getLongestRemaining(int position) {
+        return position < 0 || position >= questionCount ? 0 : longestRemaining[position];
+    }
+
+    /**
+     * Retrieves the rules of a question for sending to the client companion.
+     *
+     * @param position The position of the question.
+     * @return The next position by answer, not including the default.
+     */
+    public Map<String, Integer> getBranches(int position) {
+        Map<String, Integer> classes = answerClasses[position];
+        if (classes == null) {
+            return Map.of();
+        }
+        Map<String, Integer> branches = new HashMap<>();
+        classes.forEach((answer, answerClass) -> branches.put(answer, transitions[position][answerClass]));
+        return branches;
+    }
+
+    /**
+     * Retrieves the position that follows a question after an answer without its own rule.
+     *
+     * @param position The position of the question.
+     * @return The next position, or the number of questions if the form ends.
+     */
+    public int getDefaultNext(int position) {
+        return transitions[position][DEFAULT_CLASS];
+    }
+
+    /**
+     * Compiles the flow of a form.
+     *
+     * @param questions The questions of the form.
+     * @return The compiled flow.
+     * @throws IllegalArgumentException if the rules are malformed, contain a cycle or leave questions unreachable.
+     */
+    public static FormFlow compile(JsonArray questions) {
+        List<Problem> problems = new ArrayList<>();
+        FormFlow flow = compile(questions, problems);
+        if (!problems.isEmpty()) {
+            throw new IllegalArgumentException(problems.get(0).message());
+        }
+        return flow;
+    }
+
+    /**
+     * Creates a flow that asks every question in order.
+     *
+     * @param questionCount The number of questions.
+     * @return The flow.
+     */
+    @SuppressWarnings("unchecked")
+    public static FormFlow linear(int questionCount) {
+        int[][] transitions = new int[questionCount][];
+        for (int i = 0; i < questionCount; i++) {
+            transitions[i] = new int[]{i + 1};
+        }
+        FormFlow flow = new FormFlow(questionCount, new Map[questionCount], transitions);
+        flow.computeLongestRemaining();
+        return flow;
+    }
+
+    /**
+     * Checks the flow of a form and reports every problem.
+     *
+     * @param questions The questions of the form.
+     * @return The problems found, or an empty list if the flow is valid.
+     */
+    public static List<Problem> check(JsonArray questions) {
+        List<Problem> problems = new ArrayList<>();
+        compile(questions, problems);
+        return problems;
+    }
+
+    /**
+     * Builds the transition table and checks it for cycles and unreachable questions.
+     *
+     * @param questions The questions of the form.
+     * @param problems  The list to add problems to.
+     * @return The compiled flow, which may be partial if problems were found.
+     */
+    @SuppressWarnings("unchecked")
+    private static FormFlow compile(JsonArray questions, List<Problem> problems) {
+        int count = questions.size();
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String id = getId(questions.get(i));
+            if (id != null) {
+                positions.putIfAbsent(id, i);
+            }
+        }
+
+        Map<String, Integer>[] answerClasses = new Map[count];
+        int[][] transitions = new int[count][];
+        for (int i = 0; i < count; i++) {
+            transitions[i] = new int[]{i + 1};
+            JsonElement question = questions.get(i);
+            if (!question.isJsonObject() || !question.getAsJsonObject().has("next")) {
+                continue;
+            }
+
+            JsonElement next = question.getAsJsonObject().get("next");
+            if (next.isJsonPrimitive() && next.getAsJsonPrimitive().isString()) {
+                transitions[i][DEFAULT_CLASS] = resolve(next.getAsString(), i, positions, count, problems);
+            } else if (next.isJsonObject()) {
+                Map<String, Integer> classes = new LinkedHashMap<>();
+                List<Integer> targets = new ArrayList<>();
+                targets.add(i + 1);
+                for (Map.Entry<String, JsonElement> rule : next.getAsJsonObject().entrySet()) {
+                    if (!rule.getValue().isJsonPrimitive() || !rule.getValue().getAsJsonPrimitive().isString()) {
+                        problems.add(new Problem(i, "The target of answer '" + rule.getKey() + "' must be a question ID or \"end\"."));
+                        continue;
+                    }
+                    int target = resolve(rule.getValue().getAsString(), i, positions, count, problems);
+                    if (rule.getKey().equals(DEFAULT_KEY)) {
+                        targets.set(DEFAULT_CLASS, target);
+                    } else {
+                        classes.put(rule.getKey(), targets.size());
+                        targets.add(target);
+                    }
+                }
+                answerClasses[i] = classes.isEmpty() ? null : Map.copyOf(classes);
+                transitions[i] = targets.stream().mapToInt(Integer::intValue).toArray();
+            } else {
+                problems.add(new Problem(i, "The 'next' field must be a question ID, \"end\", or an object mapping answers to them."));
+            }
+        }
+
+        findCycles(transitions, count, questions, problems);
+        findUnreachable(transitions, count, questions, problems);
+        FormFlow flow = new FormFlow(count, answerClasses, transitions);
+        if (problems.isEmpty()) {
+            flow.computeLongestRemaining();
+        }
+        return flow;
+    }
+
+    /**
+     * Fills in the longest path from every question to the end. Only called on flows without cycles.
+     */
+    private void computeLongestRemaining() {
+        for (int position = 0; position < questionCount; position++) {
+            longestFrom(position);
+        }
+    }
+
+    /**
+     * Finds the longest path from a question to the end, remembering the result.
+     *
+     * @param position The position of the question.
+     * @return The number of questions on the longest path, including the given one.
+     */
+    private int longestFrom(int position) {
+        if (position >= questionCount) {
+            return 0;
+        }
+        if (longestRemaining[position] == 0) {
+            int longest = 0;
+            for (int target : transitions[position]) {
+                longest = Math.max(longest, longestFrom(target));
+            }
+            longestRemaining[position] = longest + 1;
+        }
+        return longestRemaining[position];
+    }
+
+    /**
+     * Resolves the target of a rule to a position.
+     *
+     * @param target    The question ID or "end".
+     * @param position  The position of the question the rule belongs to.
+     * @param positions The position of every question by ID.
+     * @param count     The number of questions.
+     * @param problems  The list to add problems to.
+     * @return The target position, or the following position if the target does not exist.
+     */
+    private static int resolve(String target, int position, Map<String, Integer> positions, int count, List<Problem> problems) {
+        if (target.equals(END_TARGET)) {
+            return count;
+        }
+        Integer resolved = positions.get(target);
+        if (resolved == null) {
+            problems.add(new Problem(position, "Question '" + target + "' does not exist."));
+            return position + 1;
+        }
+        return resolved;
+    }
+
+    /**
+     * Reports every question that can be reached again after it was answered.
+     *
+     * @param transitions The transition table.
+     * @param count       The number of questions.
+     * @param questions   The questions of the form, for their IDs.
+     * @param problems    The list to add problems to.
+     */
+    private static void findCycles(int[][] transitions, int count, JsonArray questions, List<Problem> problems) {
+        // 0 = not visited, 1 = on the current path, 2 = finished
+        int[] state = new int[count];
+        for (int start = 0; start < count; start++) {
+            if (state[start] != 0) {
+                continue;
+            }
+
+            Deque<int[]> stack = new ArrayDeque<>();
+            stack.push(new int[]{start, 0});
+            state[start] = 1;
+            while (!stack.isEmpty()) {
+                int[] frame = stack.peek();
+                int position = frame[0];
+                if (frame[1] == transitions[position].length) {
+                    state[position] = 2;
+                    stack.pop();
+                    continue;
+                }
+
+                int target = transitions[position][frame[1]++];
+                if (target >= count) {
+                    continue;
+                }
+                if (state[target] == 1) {
+                    problems.add(new Problem(position, "Question '" + getId(questions.get(position)) + "' leads back to question '"
+                            + getId(questions.get(target)) + "', so the form could never end."));
+                } else if (state[target] == 0) {
+                    state[target] = 1;
+                    stack.push(new int[]{target, 0});
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports every question that no answer can lead to.
+     *
+     * @param transitions The transition table.
+     * @param count       The number of questions.
+     * @param questions   The questions of the form, for their IDs.
+     * @param problems    The list to add problems to.
+     */
+    private static void findUnreachable(int[][] transitions, int count, JsonArray questions, List<Problem> problems) {
+        if (count == 0) {
+            return;
+        }
+
+        boolean[] reached = new boolean[count];
+        Deque<Integer> queue = new ArrayDeque<>();
+        reached[0] = true;
+        queue.add(0);
+        while (!queue.isEmpty()) {
+            for (int target : transitions[queue.poll()]) {
+                if (target < count && !reached[target]) {
+                    reached[target] = true;
+                    queue.add(target);
+                }
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (!reached[i]) {
+                problems.add(new Problem(i, "Question '" + getId(questions.get(i)) + "' can never be reached."));
+            }
+        }
+    }
+
+    private static String getId(JsonElement question) {
+        if (!question.isJsonObject()) {
+            return null;
+        }
+        JsonObject object = question.getAsJsonObject();
+        return object.has("id") && object.get("id").isJsonPrimitive() ? object.get("id").getAsString() : null;
+    }
+
+    /**
+     * A problem in the flow of a form.
+     *
+     * @param position The position of the question the problem belongs to.
+     * @param message  A description of the problem.
+     */
+    public record Problem(int position, String message) {
+    }
+}
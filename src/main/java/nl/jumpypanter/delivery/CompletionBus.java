@@ -0,0 +1,285 @@
+package nl.jumpypanter.delivery;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.config.ConfigLoader;
+import nl.jumpypanter.events.FormCompletion;
+import nl.jumpypanter.utils.FormMetrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers completed forms to sinks away from the server thread.
+ * <p>
+ * Every sink has its own bounded queue and virtual thread, so a slow or failing sink only delays itself. Publishing
+ * never blocks: when a sink's queue is full, the completion is dropped for that sink and counted. The thread of a sink
+ * waits up to {@code completions.batchWindowMs} after the first completion to collect up to
+ * {@code completions.batchSize} of them, and retries a failed batch with exponential backoff and jitter up to
+ * {@code completions.maxAttempts} times before giving it up.
+ * <p>
+ * The webhook and JSON Lines sinks are built in and enabled through the settings; other mods subscribe their own
+ * sinks with {@link #subscribe(String, CompletionSink)}. Subscriptions outlive a server stop: their threads are stopped
+ * with the server and started again when a server starts in the same JVM, as the integrated server does.
+ */
+public class CompletionBus {
+    private static final long DEFAULT_QUEUE_CAPACITY = 1024;
+    private static final long DEFAULT_BATCH_SIZE = 50;
+    private static final long DEFAULT_BATCH_WINDOW_MS = 250;
+    private static final long DEFAULT_MAX_ATTEMPTS = 5;
+    private static final long DEFAULT_RETRY_BACKOFF_MS = 500;
+    private static final long MAX_RETRY_BACKOFF_MS = 30_000;
+    private static final long SHUTDOWN_TIMEOUT_MS = 5_000;
+
+    private static final Map<String, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private static volatile boolean closed = false;
+
+    static {
+        FormMetrics.registerGauge("completions.queued",
+                () -> subscribers.values().stream().mapToLong(subscriber -> subscriber.queue.size()).sum());
+    }
+
+    /**
+     * Subscribes the built-in webhook and JSON Lines sinks, and restarts delivery when a server starts after an
+     * earlier one stopped. The sinks stay idle until their setting is filled in.
+     */
+    public static void register() {
+        subscribe("webhook", new WebhookSink());
+        subscribe("jsonl", new JsonlSink());
+        ServerLifecycleEvents.SERVER_STARTING.register(server -> resume());
+    }
+
+    /**
+     * Subscribes a sink to all completions published from now on.
+     * If the server is stopped, the sink starts receiving completions when the next server starts.
+     *
+     * @param name The name of the sink, used in logs and to unsubscribe it.
+     * @param sink The sink.
+     * @throws IllegalArgumentException if a sink with the same name is already subscribed.
+     */
+    public static synchronized void subscribe(String name, CompletionSink sink) {
+        Subscriber subscriber = new Subscriber(name, sink, getQueueCapacity());
+        if (subscribers.putIfAbsent(name, subscriber) != null) {
+            throw new IllegalArgumentException("A completion sink named '" + name + "' is already subscribed.");
+        }
+        if (!closed) {
+            subscriber.start();
+        }
+    }
+
+    /**
+     * Unsubscribes a sink. Completions already queued for it are still delivered.
+     *
+     * @param name The name of the sink.
+     */
+    public static synchronized void unsubscribe(String name) {
+        Subscriber subscriber = subscribers.remove(name);
+        if (subscriber != null) {
+            subscriber.running = false;
+        }
+    }
+
+    /**
+     * Queues a completion for every enabled sink. Safe to call from the server thread: this never blocks.
+     *
+     * @param completion The completed form.
+     */
+    public static void publish(FormCompletion completion) {
+        if (closed) {
+            return;
+        }
+        FormMetrics.increment("completions.published");
+        for (Subscriber subscriber : subscribers.values()) {
+            if (subscriber.sink.isEnabled()) {
+                subscriber.offer(completion);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting completions and gives every sink a few seconds to deliver what is queued. Sinks that are still
+     * busy after that, for example while backing off, are interrupted and their remaining completions are dropped.
+     * The sinks stay subscribed, so delivery resumes when a server starts again.
+     */
+    public static synchronized void shutdown() {
+        closed = true;
+        List<Subscriber> stopping = List.copyOf(subscribers.values());
+        stopping.forEach(subscriber -> subscriber.running = false);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SHUTDOWN_TIMEOUT_MS);
+        for (Subscriber subscriber : stopping) {
+            try {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !subscriber.worker.join(Duration.ofNanos(remaining))) {
+                    subscriber.worker.interrupt();
+                    ServerForms.LOGGER.warn("Completion sink '{}' did not finish in time; {} completions were not delivered.",
+                            subscriber.name, subscriber.queue.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Starts delivery again after a shutdown, with a fresh queue and thread for every subscribed sink. Does nothing
+     * if the bus is already running.
+     */
+    private static synchronized void resume() {
+        if (!closed) {
+            return;
+        }
+        int capacity = getQueueCapacity();
+        subscribers.replaceAll((name, stopped) -> new Subscriber(name, stopped.sink, capacity));
+        subscribers.values().forEach(Subscriber::start);
+        closed = false;
+    }
+
+    /**
+     * Reads the capacity of a sink's queue from the settings.
+     *
+     * @return The number of completions a sink can have queued.
+     */
+    private static int getQueueCapacity() {
+        return (int) Math.max(1, ConfigLoader.getLongSetting("completions.queueCapacity", DEFAULT_QUEUE_CAPACITY));
+    }
+
+    /**
+     * Computes how long to wait before retrying a batch: the configured backoff, doubled for every earlier attempt,
+     * capped, with up to half of it randomised so sinks that failed together do not retry together.
+     *
+     * @param attempt The number of attempts made so far, starting at 1.
+     * @return The delay in milliseconds.
+     */
+    private static long backoffMillis(int attempt) {
+        long base = Math.max(1, ConfigLoader.getLongSetting("completions.retryBackoffMs", DEFAULT_RETRY_BACKOFF_MS));
+        long delay = Math.min(MAX_RETRY_BACKOFF_MS, base << Math.min(attempt - 1, 16));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * A subscribed sink with its queue and delivery thread.
+     */
+    private static final class Subscriber {
+        private final String name;
+        private final CompletionSink sink;
+        private final BlockingQueue<FormCompletion> queue;
+        private final Thread worker;
+        private volatile boolean running = true;
+        private volatile boolean warnedFull = false;
+
+        private Subscriber(String name, CompletionSink sink, int capacity) {
+            this.name = name;
+            this.sink = sink;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.worker = Thread.ofVirtual().name("ServerForms-Completions-" + name).unstarted(this::run);
+        }
+
+        private void start() {
+            worker.start();
+        }
+
+        /**
+         * Queues a completion without blocking, dropping it if the queue is full.
+         *
+         * @param completion The completed form.
+         */
+        private void offer(FormCompletion completion) {
+            if (queue.offer(completion)) {
+                return;
+            }
+            FormMetrics.increment("completions.dropped");
+            if (!warnedFull) {
+                warnedFull = true;
+                ServerForms.LOGGER.warn("The queue of completion sink '{}' is full; completions are dropped until it catches up.", name);
+            }
+        }
+
+        /**
+         * Collects and delivers batches until the sink is unsubscribed and its queue is empty, or the thread is
+         * interrupted.
+         */
+        private void run() {
+            List<FormCompletion> batch = new ArrayList<>();
+            try {
+                while (running || !queue.isEmpty()) {
+                    FormCompletion first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    collect(batch);
+                    deliver(batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                FormMetrics.add("completions.failed", batch.size() + queue.size());
+            }
+        }
+
+        /**
+         * Adds completions to a batch until it is full or the batch window has passed. While stopping, only what is
+         * already queued is taken.
+         *
+         * @param batch The batch, holding its first completion.
+         * @throws InterruptedException if the thread is interrupted while waiting.
+         */
+        private void collect(List<FormCompletion> batch) throws InterruptedException {
+            int batchSize = (int) Math.max(1, ConfigLoader.getLongSetting("completions.batchSize", DEFAULT_BATCH_SIZE));
+            long window = TimeUnit.MILLISECONDS.toNanos(Math.max(0, ConfigLoader.getLongSetting("completions.batchWindowMs", DEFAULT_BATCH_WINDOW_MS)));
+            long deadline = System.nanoTime() + window;
+            while (batch.size() < batchSize) {
+                queue.drainTo(batch, batchSize - batch.size());
+                long remaining = deadline - System.nanoTime();
+                if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                    return;
+                }
+                FormCompletion next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    return;
+                }
+                batch.add(next);
+            }
+        }
+
+        /**
+         * Delivers a batch, retrying with backoff until it succeeds or the attempts run out.
+         *
+         * @param batch The batch to deliver.
+         * @throws InterruptedException if the thread is interrupted while delivering or backing off.
+         */
+        private void deliver(List<FormCompletion> batch) throws InterruptedException {
+            long maxAttempts = Math.max(1, ConfigLoader.getLongSetting("completions.maxAttempts", DEFAULT_MAX_ATTEMPTS));
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    sink.deliver(batch);
+                    FormMetrics.add("completions.delivered", batch.size());
+                    warnedFull = false;
+                    return;
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    if (attempt >= maxAttempts) {
+                        FormMetrics.add("completions.failed", batch.size());
+                        ServerForms.LOGGER.error("Completion sink '{}' failed to deliver {} completions after {} attempts.",
+                                name, batch.size(), attempt, e);
+                        return;
+                    }
+                    FormMetrics.increment("completions.retries");
+                    long delay = backoffMillis(attempt);
+                    ServerForms.LOGGER.warn("Completion sink '{}' failed to deliver {} completions, retrying in {} ms: {}",
+                            name, batch.size(), delay, e.toString());
+                    Thread.sleep(delay);
+                }
+            }
+        }
+    }
+}
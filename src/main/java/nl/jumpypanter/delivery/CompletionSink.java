@@ -0,0 +1,32 @@
+package nl.jumpypanter.delivery;
+
+import nl.jumpypanter.events.FormCompletion;
+
+import java.util.List;
+
+/**
+ * A destination for completed forms, subscribed to the {@link CompletionBus}. Sinks receive completions in
+ * micro-batches on their own virtual thread, so they may block.
+ */
+@FunctionalInterface
+public interface CompletionSink {
+
+    /**
+     * Delivers a batch of completions. Throwing makes the bus retry the whole batch after a backoff, so delivery
+     * should be idempotent or tolerate duplicates.
+     *
+     * @param batch The completions, in the order they happened.
+     * @throws Exception if the batch could not be delivered.
+     */
+    void deliver(List<FormCompletion> batch) throws Exception;
+
+    /**
+     * Checks whether the sink currently wants completions. Completions published while a sink is disabled are not
+     * queued for it.
+     *
+     * @return true if completions should be queued for this sink.
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+}
@@ -0,0 +1,50 @@
+package nl.jumpypanter.delivery;
+
+import com.google.gson.Gson;
+import nl.jumpypanter.config.ConfigLoader;
+import nl.jumpypanter.events.FormCompletion;
+import nl.jumpypanter.utils.IoExecutor;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Appends completions, one JSON object per line, to the file in the {@code completions.jsonlFile} setting.
+ * Each batch is written with a single append through the {@link IoExecutor}.
+ */
+public class JsonlSink implements CompletionSink {
+    private static final Gson GSON = new Gson();
+
+    @Override
+    public boolean isEnabled() {
+        return !getFile().isBlank();
+    }
+
+    @Override
+    public void deliver(List<FormCompletion> batch) throws Exception {
+        StringBuilder lines = new StringBuilder();
+        batch.forEach(completion -> lines.append(GSON.toJson(completion.toJson())).append('\n'));
+        byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+        Path file = Path.of(getFile());
+
+        try {
+            IoExecutor.run("append completions to " + file, () -> {
+                Path parent = file.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                Files.write(file, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+            }).get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    private static String getFile() {
+        return ConfigLoader.getStringSetting("completions.jsonlFile", "");
+    }
+}
@@ -0,0 +1,53 @@
+package nl.jumpypanter.delivery;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import nl.jumpypanter.config.ConfigLoader;
+import nl.jumpypanter.events.FormCompletion;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Posts batches of completions as a JSON array to the URL in the {@code completions.webhookUrl} setting.
+ * Any response other than 2xx fails the batch, so it is retried.
+ */
+public class WebhookSink implements CompletionSink {
+    private static final Gson GSON = new Gson();
+    private static final long DEFAULT_TIMEOUT_MS = 5000;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofMillis(DEFAULT_TIMEOUT_MS))
+            .build();
+
+    @Override
+    public boolean isEnabled() {
+        return !getUrl().isBlank();
+    }
+
+    @Override
+    public void deliver(List<FormCompletion> batch) throws IOException, InterruptedException {
+        JsonArray body = new JsonArray();
+        batch.forEach(completion -> body.add(completion.toJson()));
+
+        long timeout = Math.max(1, ConfigLoader.getLongSetting("completions.webhookTimeoutMs", DEFAULT_TIMEOUT_MS));
+        HttpRequest request = HttpRequest.newBuilder(URI.create(getUrl()))
+                .timeout(Duration.ofMillis(timeout))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(body)))
+                .build();
+        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("The webhook responded with status " + response.statusCode() + ".");
+        }
+    }
+
+    private static String getUrl() {
+        return ConfigLoader.getStringSetting("completions.webhookUrl", "");
+    }
+}
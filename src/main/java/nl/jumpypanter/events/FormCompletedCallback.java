@@ -0,0 +1,30 @@
+package nl.jumpypanter.events;
+
+import net.fabricmc.fabric.api.event.Event;
+import net.fabricmc.fabric.api.event.EventFactory;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+/**
+ * Called on the server thread when a player completes a form, right after the answers are queued for saving.
+ * <p>
+ * Listeners run during the tick, so they must return quickly. Work that blocks, such as network calls or file writes,
+ * belongs in a sink subscribed to the {@link nl.jumpypanter.delivery.CompletionBus}, which receives the same
+ * completions in batches on its own thread.
+ */
+@FunctionalInterface
+public interface FormCompletedCallback {
+    Event<FormCompletedCallback> EVENT = EventFactory.createArrayBacked(FormCompletedCallback.class,
+            listeners -> (player, completion) -> {
+                for (FormCompletedCallback listener : listeners) {
+                    listener.onFormCompleted(player, completion);
+                }
+            });
+
+    /**
+     * Handles a completed form.
+     *
+     * @param player     The player who completed the form.
+     * @param completion The completed form and its answers.
+     */
+    void onFormCompleted(ServerPlayerEntity player, FormCompletion completion);
+}
@@ -0,0 +1,49 @@
+package nl.jumpypanter.events;
+
+import com.google.gson.JsonObject;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A completed form, as handed to {@link FormCompletedCallback} listeners and to the sinks of the
+ * {@link nl.jumpypanter.delivery.CompletionBus}. Instances are immutable, so they can be passed between threads.
+ *
+ * @param playerUUID  The UUID of the player who completed the form.
+ * @param playerName  The name of the player.
+ * @param formName    The name of the form.
+ * @param answers     The answers by question ID, in the order they were given.
+ * @param completedAt When the form was completed.
+ * @param fromScreen  Whether the answers were submitted from the client companion screen.
+ */
+public record FormCompletion(UUID playerUUID, String playerName, String formName, Map<String, String> answers,
+                             Instant completedAt, boolean fromScreen) {
+
+    /**
+     * Creates a completion, copying the answers so later changes to the session do not show through.
+     */
+    public FormCompletion {
+        answers = Collections.unmodifiableMap(new LinkedHashMap<>(answers));
+    }
+
+    /**
+     * Converts the completion to the JSON sent to webhooks and written to completion logs.
+     *
+     * @return The completion as a JsonObject.
+     */
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("playerUUID", playerUUID.toString());
+        json.addProperty("playerName", playerName);
+        json.addProperty("form", formName);
+        json.addProperty("completedAt", completedAt.toString());
+        json.addProperty("fromScreen", fromScreen);
+        JsonObject answersJson = new JsonObject();
+        answers.forEach(answersJson::addProperty);
+        json.add("answers", answersJson);
+        return json;
+    }
+}
@@ -1,20 +1,29 @@
 package nl.jumpypanter.events;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.Text;
 import nl.jumpypanter.ServerForms;
 import nl.jumpypanter.commands.PlayerFormSession;
 import nl.jumpypanter.config.ConfigLoader;
+import nl.jumpypanter.delivery.CompletionBus;
+import nl.jumpypanter.network.FormNetworking;
+import nl.jumpypanter.storage.AdmissionController;
+import nl.jumpypanter.storage.AnswerStore;
+import nl.jumpypanter.utils.ChatRenderer;
+import nl.jumpypanter.utils.FlightEvents;
+import nl.jumpypanter.utils.FormMetrics;
+import nl.jumpypanter.utils.IoExecutor;
 import nl.jumpypanter.utils.TextFormatter;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.time.Instant;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -23,24 +32,19 @@ import java.util.UUID;
  */
 public class FormHandler {
     private static final Map<String, PlayerFormSession> activeSessions = new HashMap<>();
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
-    private static final File FORM_ANSWERS_DIR = new File("mods", "FormAnswers");
+    private static final Set<String> pendingStarts = new HashSet<>();
 
-    static {
-        // Ensure the directory for form answers exists
-        if (!FORM_ANSWERS_DIR.exists()) {
-            FORM_ANSWERS_DIR.mkdirs();
-        }
-    }
+    private static final int MAX_ANSWER_LENGTH = 256;
 
     /**
      * Starts a new form session for the player.
      *
-     * @param source The command source (e.g., the player or console executing the command).
-     * @param form   The form to be started.
-     * @return 1 if the form starts successfully, 0 otherwise.
+     * @param source  The command source (e.g., the player or console executing the command).
+     * @param formKey The key of the form in the configuration.
+     * @param form    The form to be started.
+     * @return 1 if the form starts or its duplicate check is underway, 0 otherwise.
      */
-    public static int startForm(ServerCommandSource source, JsonObject form) {
+    public static int startForm(ServerCommandSource source, String formKey, JsonObject form) {
         String playerName = source.getName();
         UUID playerUUID = source.getPlayer().getUuid();
 
@@ -52,26 +56,171 @@ public class FormHandler {
         String formName = form.get("name").getAsString();
 
         boolean allowMultipleResponses = form.has("allowMultipleResponses") && form.get("allowMultipleResponses").getAsBoolean();
+        FlightEvents.FormStart event = new FlightEvents.FormStart();
+        event.begin();
 
-        // Check if the player has already completed this form
-        if (!allowMultipleResponses && hasExistingResponse(playerUUID, formName)) {
-            source.sendError(TextFormatter.formatColor("&cYou have already completed this form!"));
+        // Check if the player is already filling out a form
+        if (activeSessions.containsKey(playerName) || pendingStarts.contains(playerName)) {
+            source.sendError(TextFormatter.formatColor("&cYou are already filling out a form!"));
+            commitStart(event, formName, form, "alreadyActive", false);
             return 0;
         }
 
-        // Check if the player is already filling out a form
-        if (activeSessions.containsKey(playerName)) {
-            source.sendError(TextFormatter.formatColor("&cYou are already filling out a form!"));
+        // Hold off new sessions while the answer store is catching up
+        if (!AdmissionController.tryAdmit()) {
+            source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("formBusy", "&eForms are busy right now. Please try again shortly.")));
+            commitStart(event, formName, form, "busy", false);
             return 0;
         }
 
-        // Start a new session
-        PlayerFormSession session = new PlayerFormSession(playerName, form);
+        if (allowMultipleResponses) {
+            commitStart(event, formName, form, "started", beginSession(source, playerName, formKey, form));
+            return 1;
+        }
+
+        // Check if the player has already completed this form without blocking the server thread
+        pendingStarts.add(playerName);
+        IoExecutor.onMainThread(AnswerStore.hasResponse(playerUUID, formName)).whenComplete((completed, error) -> {
+            pendingStarts.remove(playerName);
+            if (error != null) {
+                ServerForms.LOGGER.error("Failed to check existing responses for player UUID " + playerUUID, error);
+                source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("formError", "An error occurred. Please try again.")));
+                commitStart(event, formName, form, "failed", false);
+            } else if (completed) {
+                source.sendError(TextFormatter.formatColor("&cYou have already completed this form!"));
+                commitStart(event, formName, form, "alreadyCompleted", false);
+            } else {
+                commitStart(event, formName, form, "started", beginSession(source, playerName, formKey, form));
+            }
+        });
+        return 1;
+    }
+
+    /**
+     * Records the outcome of a form start in the flight recorder, if the event is enabled.
+     *
+     * @param event    The event started when the player ran the form command.
+     * @param formName The name of the form.
+     * @param form     The form.
+     * @param outcome  What happened: started, alreadyActive, alreadyCompleted, busy or failed.
+     * @param inScreen Whether the form was opened in the client companion screen.
+     */
+    private static void commitStart(FlightEvents.FormStart event, String formName, JsonObject form, String outcome, boolean inScreen) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.formName = formName;
+            event.questionCount = form.has("questions") && form.get("questions").isJsonArray() ? form.getAsJsonArray("questions").size() : 0;
+            event.outcome = outcome;
+            event.inScreen = inScreen;
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts a new session and opens the form screen, or displays the first question in chat
+     * if the player does not have the client companion installed.
+     *
+     * @param source     The command source (e.g., the player or console executing the command).
+     * @param playerName The name of the player.
+     * @param formKey    The key of the form in the configuration.
+     * @param form       The form to be started.
+     * @return true if the form was opened in the client companion screen.
+     */
+    private static boolean beginSession(ServerCommandSource source, String playerName, String formKey, JsonObject form) {
+        PlayerFormSession session = new PlayerFormSession(playerName, formKey, form);
         activeSessions.put(playerName, session);
 
-        // Display the first question
+        if (!session.hasNextQuestion()) {
+            endForm(source, session, false);
+            return false;
+        }
+
+        // Send the whole form to the client companion if possible, otherwise display the first question
+        if (FormNetworking.openScreen(source.getPlayer(), session)) {
+            return true;
+        }
         askNextQuestion(source, session);
-        return 1;
+        return false;
+    }
+
+    /**
+     * Handles all answers to a form submitted at once from the client companion screen.
+     * The answers must follow the questions the form's flow leads through, in order; otherwise nothing is recorded
+     * and the player continues in chat.
+     *
+     * @param player      The player who submitted the form.
+     * @param formName    The name of the submitted form.
+     * @param questionIds The IDs of the answered questions, in order.
+     * @param answers     The answers, in the same order as their question IDs.
+     */
+    public static void handleSubmission(ServerPlayerEntity player, String formName, List<String> questionIds, List<String> answers) {
+        ServerCommandSource source = player.getCommandSource();
+        PlayerFormSession session = activeSessions.get(source.getName());
+        if (session == null || !session.getFormName().equals(formName)) {
+            return;
+        }
+
+        // An empty submission means the player closed the screen
+        if (questionIds.isEmpty()) {
+            askNextQuestion(source, session);
+            return;
+        }
+
+        String problem = checkSubmission(session, questionIds, answers);
+        if (problem != null) {
+            source.sendError(TextFormatter.formatColor("&c" + problem + " Please continue in chat."));
+            askNextQuestion(source, session);
+            return;
+        }
+
+        for (int i = 0; i < questionIds.size(); i++) {
+            session.recordAnswer(questionIds.get(i), answers.get(i));
+        }
+        endForm(source, session, true);
+    }
+
+    /**
+     * Checks that a submission answers exactly the questions the form's flow leads through, in order, starting
+     * at the session's current question and ending where the form is complete.
+     *
+     * @param session     The player's form session.
+     * @param questionIds The IDs of the answered questions.
+     * @param answers     The answers, in the same order as their question IDs.
+     * @return A description of the first problem found, or null if the submission is valid.
+     */
+    private static String checkSubmission(PlayerFormSession session, List<String> questionIds, List<String> answers) {
+        if (questionIds.size() != answers.size()) {
+            return "The submitted form was incomplete.";
+        }
+
+        JsonArray questions = session.getQuestions();
+        int position = session.getCurrentQuestionIndex();
+        for (int i = 0; i < questionIds.size(); i++) {
+            if (position >= questions.size()) {
+                return "The submitted form does not match the current questions.";
+            }
+            JsonObject question = questions.get(position).getAsJsonObject();
+            if (!question.has("id") || !question.get("id").getAsString().equals(questionIds.get(i))) {
+                return "The submitted form does not match the current questions.";
+            }
+            String answer = answers.get(i);
+            if (answer.isBlank()) {
+                return "Every question needs an answer.";
+            }
+            if (answer.length() > MAX_ANSWER_LENGTH) {
+                return "Answers can be at most " + MAX_ANSWER_LENGTH + " characters.";
+            }
+            String problem = session.validateAnswer(questionIds.get(i), answer);
+            if (problem != null) {
+                return "Question " + questionIds.get(i) + ": " + problem;
+            }
+            position = session.nextQuestionIndex(position, answer);
+        }
+
+        if (position < questions.size()) {
+            return "The submitted form was incomplete.";
+        }
+        return null;
     }
 
     /**
@@ -98,124 +247,103 @@ public class FormHandler {
             return;
         }
         String questionId = currentQuestion.get("id").getAsString();
+
+        // Reject answers that break the question's constraints before they are recorded
+        String problem = session.validateAnswer(questionId, answer);
+        if (problem != null) {
+            FormMetrics.increment("forms.answersRejected");
+            source.sendError(TextFormatter.formatColor(ConfigLoader.getMessage("invalidAnswer", "&c{reason} Please try again.")
+                    .replace("{reason}", problem)));
+            return;
+        }
+
+        FlightEvents.FormAnswer event = new FlightEvents.FormAnswer();
+        event.begin();
         session.recordAnswer(questionId, answer);
 
         // Display the next question or end the form
         if (session.hasNextQuestion()) {
             askNextQuestion(source, session);
         } else {
-            endForm(source, session);
+            endForm(source, session, false);
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.formName = session.getFormName();
+            event.questionId = questionId;
+            event.answerLength = answer.length();
+            event.commit();
         }
     }
 
     /**
-     * Displays the next question in the form to the player.
+     * Displays the next question in the form to the player, with the progress and suggested answers, as one message.
      *
      * @param source  The command source (e.g., the player or console executing the command).
      * @param session The player's form session.
      */
     private static void askNextQuestion(ServerCommandSource source, PlayerFormSession session) {
-        JsonObject question = session.getCurrentQuestion();
-        String questionText = question.get("question").getAsString();
-        source.sendFeedback(() -> TextFormatter.formatColor("&eNext question: &f" + questionText), false);
+        Text message = ChatRenderer.renderQuestion(session);
+        source.sendFeedback(() -> message, false);
     }
 
     /**
      * Ends the form session and saves the player's answers.
      *
-     * @param source  The command source (e.g., the player or console executing the command).
-     * @param session The player's form session.
+     * @param source     The command source (e.g., the player or console executing the command).
+     * @param session    The player's form session.
+     * @param fromScreen Whether the answers were submitted from the client companion screen.
      */
-    private static void endForm(ServerCommandSource source, PlayerFormSession session) {
+    private static void endForm(ServerCommandSource source, PlayerFormSession session, boolean fromScreen) {
         String playerName = session.getPlayerName();
         UUID playerUUID = source.getPlayer().getUuid();
         String formName = session.getFormName();
+        FlightEvents.FormCompletion event = new FlightEvents.FormCompletion();
+        event.begin();
 
         activeSessions.remove(playerName);
 
-        // Save the answers to a file
-        saveAnswersToFile(source, playerUUID, formName, session.getAnswers());
+        // Queue the answers to be saved; completions are always accepted, even when new forms are paused
+        AnswerStore.saveAnswers(playerUUID, source.getName(), formName, session.getAnswers(), session.allowsMultipleResponses());
+        publishCompletion(source.getPlayer(), new FormCompletion(playerUUID, playerName, formName, session.getAnswers(), Instant.now(), fromScreen));
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.formName = formName;
+            event.answerCount = session.getAnswers().size();
+            event.fromScreen = fromScreen;
+            event.sessionDuration = System.nanoTime() - session.getStartedAt();
+            event.commit();
+        }
 
         // Retrieve the formSuccess message from the config
         String formSuccessMessage = ConfigLoader.getMessage("formSuccess", "&aForm completed!");
 
-        // Send the formSuccess message
-        source.sendFeedback(() -> TextFormatter.formatColor(formSuccessMessage), false);
-
         // Check if returning answers is enabled for this form
-        JsonObject formConfig = ConfigLoader.getForms().getAsJsonObject(formName);
-        boolean returnAnswers = formConfig.has("returnAnswers") && formConfig.get("returnAnswers").getAsBoolean();
-
-        if (returnAnswers) {
-            // Display the answers to the player
-            session.getAnswers().forEach((questionId, answer) -> {
-                source.sendFeedback(() -> TextFormatter.formatColor("&b" + questionId + ": &f" + answer), false);
-            });
-        }
-    }
-
-    /**
-     * Saves the player's answers to a file.
-     *
-     * @param playerUUID The UUID of the player.
-     * @param formName   The name of the form.
-     * @param answers    The player's answers.
-     */
-    private static void saveAnswersToFile(ServerCommandSource source, UUID playerUUID, String formName, Map<String, String> answers) {
-        File answersFile = new File(FORM_ANSWERS_DIR, playerUUID.toString() + ".json");
-
-        JsonObject allForms;
-
-        // Read existing data from the file (if present)
-        if (answersFile.exists()) {
-            try (FileReader reader = new FileReader(answersFile)) {
-                allForms = GSON.fromJson(reader, JsonObject.class);
-            } catch (IOException e) {
-                ServerForms.LOGGER.error("Failed to read answers file for player UUID " + playerUUID, e);
-                allForms = new JsonObject();
-            }
-        } else {
-            allForms = new JsonObject();
-        }
-
-        // Add the player's name to the file
-        allForms.addProperty("playerName", source.getName());
-
-        // Add the current form's answers
-        JsonObject formAnswers = new JsonObject();
-        answers.forEach(formAnswers::addProperty);
-        allForms.add(formName, formAnswers);
-
-        // Write the updated data back to the file
-        try (FileWriter writer = new FileWriter(answersFile)) {
-            GSON.toJson(allForms, writer);
-            ServerForms.LOGGER.info("Saved answers for player UUID {} to {}", playerUUID, answersFile.getAbsolutePath());
-        } catch (IOException e) {
-            ServerForms.LOGGER.error("Failed to save answers for player UUID " + playerUUID, e);
-        }
+        JsonObject formConfig = ConfigLoader.getForms().getAsJsonObject(session.getFormKey());
+        boolean returnAnswers = formConfig != null && formConfig.has("returnAnswers") && formConfig.get("returnAnswers").getAsBoolean();
+
+        // Send the formSuccess message, followed by the answers in the same message if they are returned
+        Text message = returnAnswers
+                ? ChatRenderer.renderSummary(TextFormatter.formatColor(formSuccessMessage), session.getAnswers())
+                : TextFormatter.formatColor(formSuccessMessage);
+        source.sendFeedback(() -> message, false);
     }
 
     /**
-     * Checks if the player has already completed the specified form.
+     * Notifies {@link FormCompletedCallback} listeners of a completed form and queues it for the completion sinks.
+     * A failing listener is logged and does not stop the others from being notified through the sinks.
      *
-     * @param playerUUID The UUID of the player.
-     * @param formName   The name of the form.
-     * @return true if the player has already completed the form, false otherwise.
+     * @param player     The player who completed the form.
+     * @param completion The completed form.
      */
-    private static boolean hasExistingResponse(UUID playerUUID, String formName) {
-        File answersFile = new File(FORM_ANSWERS_DIR, playerUUID.toString() + ".json");
-
-        if (!answersFile.exists()) {
-            return false;
-        }
-
-        // Check if the form already exists in the file
-        try (FileReader reader = new FileReader(answersFile)) {
-            JsonObject allForms = GSON.fromJson(reader, JsonObject.class);
-            return allForms.has(formName);
-        } catch (IOException e) {
-            ServerForms.LOGGER.error("Failed to check existing responses for player UUID " + playerUUID, e);
-            return false;
+    private static void publishCompletion(ServerPlayerEntity player, FormCompletion completion) {
+        try {
+            FormCompletedCallback.EVENT.invoker().onFormCompleted(player, completion);
+        } catch (Exception e) {
+            ServerForms.LOGGER.error("A form completion listener failed for form '{}'.", completion.formName(), e);
         }
+        CompletionBus.publish(completion);
     }
 }
@@ -1,19 +1,35 @@
 package nl.jumpypanter.events;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.config.AnswerValidator;
+import nl.jumpypanter.config.FormFlow;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Pattern;
 
 /**
  * Validates the structure and content of forms in the configuration.
  * Ensures that all required fields are present and correctly formatted.
+ * Forms are validated in parallel, and all problems are collected and reported at once with their JSON paths.
  */
 public class FormValidator {
+    private static final int FORMS_PER_TASK = 64;
+    private static final Pattern SIMPLE_KEY = Pattern.compile("[A-Za-z0-9_]+");
 
     /**
      * Validates the provided forms configuration.
      *
      * @param forms The JSON object containing all forms to validate.
-     * @throws IllegalArgumentException if any form is invalid or missing required fields.
+     * @throws IllegalArgumentException if any form is invalid or missing required fields, listing every problem found.
      */
     public static void validateForms(JsonObject forms) {
         if (forms == null) {
@@ -21,71 +37,213 @@ public class FormValidator {
             throw new IllegalArgumentException("The 'forms' configuration is null. Ensure forms_config.json is properly configured.");
         }
 
-        for (String key : forms.keySet()) {
-            if (!forms.has(key) || forms.get(key).isJsonNull()) {
-                ServerForms.LOGGER.error("Form '{}' is null or missing. JSON: {}", key, forms);
-                throw new IllegalArgumentException("Form '" + key + "' is null or missing.");
-            }
+        throwIfInvalid(collectErrors(forms));
+    }
+
+    /**
+     * Validates a single form.
+     *
+     * @param key  The key of the form being validated.
+     * @param form The JSON element representing the form.
+     * @throws IllegalArgumentException if the form is invalid, listing every problem found.
+     */
+    public static void validateForm(String key, JsonElement form) {
+        List<ValidationError> errors = new ArrayList<>();
+        validateForm(key, form, errors);
+        throwIfInvalid(errors);
+    }
+
+    /**
+     * Validates all forms in parallel and collects every problem found.
+     *
+     * @param forms The JSON object containing all forms to validate.
+     * @return The problems found, in the order of the forms in the configuration.
+     */
+    public static List<ValidationError> collectErrors(JsonObject forms) {
+        List<Map.Entry<String, JsonElement>> entries = new ArrayList<>(forms.entrySet());
+        return ForkJoinPool.commonPool().invoke(new ValidateFormsTask(entries, 0, entries.size()));
+    }
+
+    /**
+     * Logs every problem and throws an exception summarizing them, if there are any.
+     *
+     * @param errors The problems found.
+     * @throws IllegalArgumentException if there is at least one problem.
+     */
+    private static void throwIfInvalid(List<ValidationError> errors) {
+        if (errors.isEmpty()) return;
 
-            JsonObject form = forms.getAsJsonObject(key);
+        StringBuilder message = new StringBuilder("Found ").append(errors.size()).append(" problem(s) in the forms configuration:");
+        for (ValidationError error : errors) {
+            ServerForms.LOGGER.error("{}: {}", error.path(), error.message());
+            message.append(System.lineSeparator()).append("  ").append(error.path()).append(": ").append(error.message());
+        }
+        throw new IllegalArgumentException(message.toString());
+    }
 
-            validateFormName(key, form);
-            validateAllowMultipleResponses(key, form);
-            validateQuestions(key, form);
+    /**
+     * Validates a single form and its questions.
+     *
+     * @param key    The key of the form being validated.
+     * @param form   The JSON element representing the form.
+     * @param errors The list to add problems to.
+     */
+    private static void validateForm(String key, JsonElement form, List<ValidationError> errors) {
+        String path = "$.forms" + pathSegment(key);
+        if (form == null || form.isJsonNull()) {
+            errors.add(new ValidationError(path, "Form is null or missing."));
+            return;
         }
+        if (!form.isJsonObject()) {
+            errors.add(new ValidationError(path, "Form must be a JSON object."));
+            return;
+        }
+
+        JsonObject formObject = form.getAsJsonObject();
+        validateFormName(path, formObject, errors);
+        validateBoolean(path, formObject, "allowMultipleResponses", errors);
+        validateBoolean(path, formObject, "returnAnswers", errors);
+        validateBoolean(path, formObject, "alias", errors);
+        validateQuestions(path, formObject, errors);
     }
 
     /**
      * Validates the 'name' field of a form.
      *
-     * @param key  The key of the form being validated.
-     * @param form The JSON object representing the form.
-     * @throws IllegalArgumentException if the 'name' field is missing or invalid.
+     * @param path   The JSON path of the form being validated.
+     * @param form   The JSON object representing the form.
+     * @param errors The list to add problems to.
      */
-    private static void validateFormName(String key, JsonObject form) {
+    private static void validateFormName(String path, JsonObject form, List<ValidationError> errors) {
         if (!form.has("name") || form.get("name").isJsonNull()) {
-            ServerForms.LOGGER.error("Form '{}' is missing the 'name' field. JSON: {}", key, form);
-            throw new IllegalArgumentException("Form '" + key + "' is missing the 'name' field.");
-        }
-        if (!form.get("name").isJsonPrimitive() || !form.get("name").getAsJsonPrimitive().isString()) {
-            ServerForms.LOGGER.error("The 'name' field in form '{}' must be a string. JSON: {}", key, form);
-            throw new IllegalArgumentException("The 'name' field in form '" + key + "' must be a string.");
+            errors.add(new ValidationError(path + ".name", "Form is missing the 'name' field."));
+        } else if (!isString(form.get("name"))) {
+            errors.add(new ValidationError(path + ".name", "The 'name' field must be a string."));
         }
     }
 
     /**
-     * Validates the 'allowMultipleResponses' field of a form.
+     * Validates an optional boolean field of a form.
      *
-     * @param key  The key of the form being validated.
-     * @param form The JSON object representing the form.
-     * @throws IllegalArgumentException if the 'allowMultipleResponses' field is invalid.
+     * @param path   The JSON path of the form being validated.
+     * @param form   The JSON object representing the form.
+     * @param field  The name of the field.
+     * @param errors The list to add problems to.
      */
-    private static void validateAllowMultipleResponses(String key, JsonObject form) {
-        if (form.has("allowMultipleResponses") && !form.get("allowMultipleResponses").isJsonPrimitive()) {
-            ServerForms.LOGGER.error("The 'allowMultipleResponses' field in form '{}' must be a boolean. JSON: {}", key, form);
-            throw new IllegalArgumentException("The 'allowMultipleResponses' field in form '" + key + "' must be a boolean.");
-        }
-        if (form.has("allowMultipleResponses") && !form.get("allowMultipleResponses").getAsJsonPrimitive().isBoolean()) {
-            ServerForms.LOGGER.error("The 'allowMultipleResponses' field in form '{}' must be a boolean. JSON: {}", key, form);
-            throw new IllegalArgumentException("The 'allowMultipleResponses' field in form '" + key + "' must be a boolean.");
+    private static void validateBoolean(String path, JsonObject form, String field, List<ValidationError> errors) {
+        if (form.has(field) && (!form.get(field).isJsonPrimitive() || !form.get(field).getAsJsonPrimitive().isBoolean())) {
+            errors.add(new ValidationError(path + "." + field, "The '" + field + "' field must be a boolean."));
         }
     }
 
     /**
-     * Validates the 'questions' field of a form.
+     * Validates the 'questions' field of a form and every question in it.
      *
-     * @param key  The key of the form being validated.
-     * @param form The JSON object representing the form.
-     * @throws IllegalArgumentException if the 'questions' field is missing or invalid.
+     * @param path   The JSON path of the form being validated.
+     * @param form   The JSON object representing the form.
+     * @param errors The list to add problems to.
      */
-    private static void validateQuestions(String key, JsonObject form) {
+    private static void validateQuestions(String path, JsonObject form, List<ValidationError> errors) {
         if (!form.has("questions") || form.get("questions").isJsonNull()) {
-            ServerForms.LOGGER.error("Form '{}' is missing the 'questions' field. JSON: {}", key, form);
-            throw new IllegalArgumentException("Form '" + key + "' is missing the 'questions' field.");
+            errors.add(new ValidationError(path + ".questions", "Form is missing the 'questions' field."));
+            return;
         }
         if (!form.get("questions").isJsonArray()) {
-            ServerForms.LOGGER.error("The 'questions' field in form '{}' must be a JSON array. JSON: {}", key, form);
-            throw new IllegalArgumentException("The 'questions' field in form '" + key + "' must be a JSON array.");
+            errors.add(new ValidationError(path + ".questions", "The 'questions' field must be a JSON array."));
+            return;
+        }
+
+        JsonArray questions = form.getAsJsonArray("questions");
+        Set<String> seenIds = new HashSet<>();
+        for (int i = 0; i < questions.size(); i++) {
+            String questionPath = path + ".questions[" + i + "]";
+            JsonElement question = questions.get(i);
+            if (!question.isJsonObject()) {
+                errors.add(new ValidationError(questionPath, "Question must be a JSON object."));
+                continue;
+            }
+
+            JsonObject questionObject = question.getAsJsonObject();
+            if (!questionObject.has("id") || questionObject.get("id").isJsonNull()) {
+                errors.add(new ValidationError(questionPath + ".id", "Question is missing the 'id' field."));
+            } else if (!questionObject.get("id").isJsonPrimitive() || questionObject.get("id").getAsString().isBlank()) {
+                errors.add(new ValidationError(questionPath + ".id", "The 'id' field must be a non-empty string or number."));
+            } else if (!seenIds.add(questionObject.get("id").getAsString())) {
+                errors.add(new ValidationError(questionPath + ".id", "Duplicate question ID '" + questionObject.get("id").getAsString() + "'."));
+            }
+
+            if (!questionObject.has("question") || questionObject.get("question").isJsonNull()) {
+                errors.add(new ValidationError(questionPath + ".question", "Question is missing the 'question' field."));
+            } else if (!isString(questionObject.get("question")) || questionObject.get("question").getAsString().isBlank()) {
+                errors.add(new ValidationError(questionPath + ".question", "The 'question' field must be a non-empty string."));
+            }
+
+            try {
+                AnswerValidator.compile(questionObject);
+            } catch (IllegalArgumentException e) {
+                errors.add(new ValidationError(questionPath, e.getMessage()));
+            }
+        }
+
+        for (FormFlow.Problem problem : FormFlow.check(questions)) {
+            errors.add(new ValidationError(path + ".questions[" + problem.position() + "]", problem.message()));
+        }
+    }
+
+    private static boolean isString(JsonElement element) {
+        return element.isJsonPrimitive() && element.getAsJsonPrimitive().isString();
+    }
+
+    /**
+     * Formats an object key as a JSON path segment, quoting it if it contains special characters.
+     *
+     * @param key The object key.
+     * @return The path segment, including its leading separator.
+     */
+    private static String pathSegment(String key) {
+        return SIMPLE_KEY.matcher(key).matches() ? "." + key : "['" + key.replace("'", "\\'") + "']";
+    }
+
+    /**
+     * A problem found in the forms configuration.
+     *
+     * @param path    The JSON path of the offending element, such as {@code $.forms.survey.questions[2].id}.
+     * @param message A description of the problem.
+     */
+    public record ValidationError(String path, String message) {
+    }
+
+    /**
+     * Validates a range of forms, splitting it in half until it is small enough to validate directly.
+     */
+    private static final class ValidateFormsTask extends RecursiveTask<List<ValidationError>> {
+        private final List<Map.Entry<String, JsonElement>> entries;
+        private final int from;
+        private final int to;
+
+        private ValidateFormsTask(List<Map.Entry<String, JsonElement>> entries, int from, int to) {
+            this.entries = entries;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<ValidationError> compute() {
+            if (to - from <= FORMS_PER_TASK) {
+                List<ValidationError> errors = new ArrayList<>();
+                for (int i = from; i < to; i++) {
+                    validateForm(entries.get(i).getKey(), entries.get(i).getValue(), errors);
+                }
+                return errors;
+            }
+
+            int middle = (from + to) >>> 1;
+            ValidateFormsTask left = new ValidateFormsTask(entries, from, middle);
+            ValidateFormsTask right = new ValidateFormsTask(entries, middle, to);
+            left.fork();
+            List<ValidationError> errors = new ArrayList<>(right.compute());
+            errors.addAll(0, left.join());
+            return errors;
         }
     }
 }
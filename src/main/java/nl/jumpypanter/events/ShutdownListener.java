@@ -2,6 +2,12 @@ package nl.jumpypanter.events;
 
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.config.ConfigLoader;
+import nl.jumpypanter.delivery.CompletionBus;
+import nl.jumpypanter.storage.AnswerStore;
+import nl.jumpypanter.storage.PlayerIndex;
+import nl.jumpypanter.utils.IoExecutor;
+import nl.jumpypanter.web.AnswerApiServer;
 
 /**
  * Listens for server shutdown events and performs necessary cleanup or logging.
@@ -10,13 +16,19 @@ public class ShutdownListener {
 
     /**
      * Registers the shutdown listener to handle server stopping events.
-     * Logs a message indicating the server is shutting down.
+     * Logs a message indicating the server is shutting down and flushes queued answer, player index and
+     * configuration writes and completion deliveries before stopping the I/O executor.
      */
     public static void register() {
         ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
             if (server != null) {
                 ServerForms.LOGGER.info("The server is stopping. FormMod is shutting down...");
-                // Add any additional cleanup logic here if needed
+                AnswerApiServer.stop();
+                AnswerStore.shutdown();
+                PlayerIndex.shutdown();
+                ConfigLoader.flush();
+                CompletionBus.shutdown();
+                IoExecutor.shutdown();
             } else {
                 ServerForms.LOGGER.warn("Server is null during shutdown. Skipping cleanup.");
             }
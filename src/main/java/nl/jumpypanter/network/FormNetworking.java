@@ -0,0 +1,71 @@
+package nl.jumpypanter.network;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.server.network.ServerPlayerEntity;
+import nl.jumpypanter.commands.PlayerFormSession;
+import nl.jumpypanter.config.FormFlow;
+import nl.jumpypanter.events.FormHandler;
+import nl.jumpypanter.utils.FormMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Connects form sessions to the optional client companion mod. Players whose client can receive
+ * {@link OpenFormPayload} get the whole form in a screen and send all answers back in one {@link SubmitFormPayload};
+ * everyone else answers in chat.
+ */
+public class FormNetworking {
+
+    /**
+     * Registers the custom payload types and the receiver for form submissions.
+     */
+    public static void register() {
+        PayloadTypeRegistry.playS2C().register(OpenFormPayload.ID, OpenFormPayload.CODEC);
+        PayloadTypeRegistry.playC2S().register(SubmitFormPayload.ID, SubmitFormPayload.CODEC);
+
+        ServerPlayNetworking.registerGlobalReceiver(SubmitFormPayload.ID, (payload, context) ->
+                FormHandler.handleSubmission(context.player(), payload.formName(), payload.questionIds(), payload.answers()));
+    }
+
+    /**
+     * Opens the form of a session in the player's companion screen, if their client supports it.
+     *
+     * @param player  The player filling out the form.
+     * @param session The player's form session.
+     * @return true if the form was sent to the client, false if the player has to answer in chat.
+     */
+    public static boolean openScreen(ServerPlayerEntity player, PlayerFormSession session) {
+        if (!ServerPlayNetworking.canSend(player, OpenFormPayload.ID)) {
+            return false;
+        }
+
+        List<String> questionIds = new ArrayList<>();
+        List<String> questions = new ArrayList<>();
+        List<Integer> defaultNext = new ArrayList<>();
+        List<OpenFormPayload.Branch> branches = new ArrayList<>();
+        FormFlow flow = session.getFlow();
+        int end = session.getQuestions().size();
+        for (JsonElement element : session.getQuestions()) {
+            JsonObject question = element.getAsJsonObject();
+            int position = questionIds.size();
+            questionIds.add(question.get("id").getAsString());
+            questions.add(question.get("question").getAsString());
+
+            // Questions added after the flow was compiled are never reached, as on the server
+            if (flow.isEnd(position)) {
+                defaultNext.add(end);
+                continue;
+            }
+            defaultNext.add(Math.min(flow.getDefaultNext(position), end));
+            flow.getBranches(position).forEach((answer, next) -> branches.add(new OpenFormPayload.Branch(position, answer, Math.min(next, end))));
+        }
+
+        ServerPlayNetworking.send(player, new OpenFormPayload(session.getFormName(), questionIds, questions, defaultNext, branches));
+        FormMetrics.increment("forms.openedInScreen");
+        return true;
+    }
+}
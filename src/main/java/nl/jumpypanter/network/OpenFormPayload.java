@@ -0,0 +1,70 @@
+package nl.jumpypanter.network;
+
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.codec.PacketCodecs;
+import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.util.Identifier;
+
+import java.util.List;
+
+/**
+ * Sent to clients running the companion mod to open a form screen.
+ * Carries the whole form and its question flow, so the player can answer every question without further packets.
+ *
+ * @param formName    The name of the form.
+ * @param questionIds The IDs of the questions, in order.
+ * @param questions   The text of the questions, in the same order as their IDs.
+ * @param defaultNext The position that follows each question after an answer without its own branch, or the number
+ *                    of questions if the form ends there.
+ * @param branches    The answers that lead somewhere other than the default.
+ */
+public record OpenFormPayload(String formName, List<String> questionIds, List<String> questions, List<Integer> defaultNext,
+                              List<Branch> branches) implements CustomPayload {
+    public static final CustomPayload.Id<OpenFormPayload> ID = new CustomPayload.Id<>(Identifier.of("serverforms", "open_form"));
+    public static final PacketCodec<RegistryByteBuf, OpenFormPayload> CODEC = PacketCodec.tuple(
+            PacketCodecs.STRING, OpenFormPayload::formName,
+            PacketCodecs.STRING.collect(PacketCodecs.toList()), OpenFormPayload::questionIds,
+            PacketCodecs.STRING.collect(PacketCodecs.toList()), OpenFormPayload::questions,
+            PacketCodecs.VAR_INT.collect(PacketCodecs.toList()), OpenFormPayload::defaultNext,
+            Branch.CODEC.collect(PacketCodecs.toList()), OpenFormPayload::branches,
+            OpenFormPayload::new
+    );
+
+    /**
+     * Chooses the question that follows an answer, the same way the server does.
+     *
+     * @param position The position of the answered question.
+     * @param answer   The answer.
+     * @return The position of the next question, or the number of questions if the form is complete.
+     */
+    public int next(int position, String answer) {
+        for (Branch branch : branches) {
+            if (branch.question() == position && branch.answer().equals(answer)) {
+                return branch.next();
+            }
+        }
+        return defaultNext.get(position);
+    }
+
+    @Override
+    public Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+
+    /**
+     * An answer to a question that leads to a specific question.
+     *
+     * @param question The position of the question.
+     * @param answer   The answer.
+     * @param next     The position of the next question, or the number of questions if the form ends.
+     */
+    public record Branch(int question, String answer, int next) {
+        public static final PacketCodec<RegistryByteBuf, Branch> CODEC = PacketCodec.tuple(
+                PacketCodecs.VAR_INT, Branch::question,
+                PacketCodecs.STRING, Branch::answer,
+                PacketCodecs.VAR_INT, Branch::next,
+                Branch::new
+        );
+    }
+}
@@ -0,0 +1,32 @@
+package nl.jumpypanter.network;
+
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.codec.PacketCodecs;
+import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.util.Identifier;
+
+import java.util.List;
+
+/**
+ * Sent by clients running the companion mod with all answers to the form they were shown.
+ * An empty submission means the player closed the screen and wants to continue in chat.
+ *
+ * @param formName    The name of the form being answered.
+ * @param questionIds The IDs of the answered questions, in the order they were answered.
+ * @param answers     The answers, in the same order as their question IDs.
+ */
+public record SubmitFormPayload(String formName, List<String> questionIds, List<String> answers) implements CustomPayload {
+    public static final CustomPayload.Id<SubmitFormPayload> ID = new CustomPayload.Id<>(Identifier.of("serverforms", "submit_form"));
+    public static final PacketCodec<RegistryByteBuf, SubmitFormPayload> CODEC = PacketCodec.tuple(
+            PacketCodecs.STRING, SubmitFormPayload::formName,
+            PacketCodecs.STRING.collect(PacketCodecs.toList()), SubmitFormPayload::questionIds,
+            PacketCodecs.STRING.collect(PacketCodecs.toList()), SubmitFormPayload::answers,
+            SubmitFormPayload::new
+    );
+
+    @Override
+    public Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+}
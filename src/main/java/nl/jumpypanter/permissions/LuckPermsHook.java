@@ -0,0 +1,65 @@
+package nl.jumpypanter.permissions;
+
+import net.luckperms.api.LuckPerms;
+import net.luckperms.api.LuckPermsProvider;
+import net.luckperms.api.event.EventSubscription;
+import net.luckperms.api.event.group.GroupDataRecalculateEvent;
+import net.luckperms.api.event.user.UserDataRecalculateEvent;
+import net.luckperms.api.model.user.User;
+
+import java.util.UUID;
+
+/**
+ * Isolates all references to the LuckPerms API, so the mod loads without LuckPerms installed.
+ * This class is only loaded after LuckPerms has been detected.
+ */
+class LuckPermsHook {
+    private final LuckPerms luckPerms;
+    private final EventSubscription<UserDataRecalculateEvent> userSubscription;
+    private final EventSubscription<GroupDataRecalculateEvent> groupSubscription;
+
+    private LuckPermsHook(LuckPerms luckPerms) {
+        this.luckPerms = luckPerms;
+        this.userSubscription = luckPerms.getEventBus().subscribe(UserDataRecalculateEvent.class,
+                event -> PermissionResolver.invalidate(event.getUser().getUniqueId()));
+        this.groupSubscription = luckPerms.getEventBus().subscribe(GroupDataRecalculateEvent.class,
+                event -> PermissionResolver.invalidateAll());
+    }
+
+    /**
+     * Connects to the running LuckPerms instance and subscribes to its recalculation events.
+     *
+     * @return The connected hook.
+     */
+    static LuckPermsHook connect() {
+        return new LuckPermsHook(LuckPermsProvider.get());
+    }
+
+    /**
+     * Asks LuckPerms for a player's value of a permission node.
+     *
+     * @param playerUUID The UUID of the player.
+     * @param node       The permission node to check.
+     * @return The decision, or {@link PermissionResolver.Decision#UNKNOWN} if LuckPerms has not loaded the player.
+     */
+    PermissionResolver.Decision check(UUID playerUUID, String node) {
+        User user = luckPerms.getUserManager().getUser(playerUUID);
+        if (user == null) {
+            return PermissionResolver.Decision.UNKNOWN;
+        }
+
+        return switch (user.getCachedData().getPermissionData().checkPermission(node)) {
+            case TRUE -> PermissionResolver.Decision.ALLOW;
+            case FALSE -> PermissionResolver.Decision.DENY;
+            case UNDEFINED -> PermissionResolver.Decision.UNDEFINED;
+        };
+    }
+
+    /**
+     * Unsubscribes from LuckPerms' events.
+     */
+    void close() {
+        userSubscription.close();
+        groupSubscription.close();
+    }
+}
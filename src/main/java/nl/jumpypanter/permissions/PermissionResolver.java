@@ -0,0 +1,163 @@
+package nl.jumpypanter.permissions;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.server.network.ServerPlayerEntity;
+import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.config.ConfigLoader;
+import nl.jumpypanter.utils.FormMetrics;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves permission nodes for command sources. When LuckPerms is installed, its decisions are cached per player UUID
+ * and invalidated whenever LuckPerms recalculates a player's data. Nodes that LuckPerms leaves undefined, and all nodes
+ * when LuckPerms is absent, fall back to the source's operator permission level.
+ */
+public class PermissionResolver {
+    private static final Map<UUID, Map<String, Decision>> cache = new ConcurrentHashMap<>();
+    private static volatile LuckPermsHook luckPerms;
+    private static volatile MinecraftServer server;
+
+    /**
+     * Registers the lifecycle listeners that connect to LuckPerms once it has started and clear cached decisions
+     * of players who leave.
+     */
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STARTED.register(startedServer -> {
+            server = startedServer;
+            if (FabricLoader.getInstance().isModLoaded("luckperms")) {
+                try {
+                    luckPerms = LuckPermsHook.connect();
+                    ServerForms.LOGGER.info("LuckPerms found. Form permissions are resolved through LuckPerms.");
+                } catch (IllegalStateException e) {
+                    ServerForms.LOGGER.error("LuckPerms is installed but not available. Form permissions fall back to operator levels.", e);
+                }
+            } else {
+                ServerForms.LOGGER.info("LuckPerms not found. Form permissions fall back to operator levels.");
+            }
+        });
+        ServerLifecycleEvents.SERVER_STOPPED.register(stoppedServer -> {
+            LuckPermsHook hook = luckPerms;
+            if (hook != null) {
+                hook.close();
+            }
+            luckPerms = null;
+            server = null;
+            cache.clear();
+        });
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, disconnectedServer) -> cache.remove(handler.player.getUuid()));
+    }
+
+    /**
+     * Checks whether the source may start the given form, using the {@code serverforms.form.<id>.start} node.
+     *
+     * @param source The command source.
+     * @param formId The ID of the form.
+     * @return true if the source may start the form, false otherwise.
+     */
+    public static boolean canStartForm(ServerCommandSource source, String formId) {
+        return hasPermission(source, "serverforms.form." + formId + ".start",
+                (int) ConfigLoader.getLongSetting("permissions.startLevel", 0));
+    }
+
+    /**
+     * Checks whether the source may view responses to the given form, using the {@code serverforms.form.<id>.view} node.
+     * Responses are stored under the form name, so the name is mapped to the form's ID first, the same ID the start
+     * node uses.
+     *
+     * @param source   The command source.
+     * @param formName The name of the form, as stored with its responses.
+     * @return true if the source may view the form's responses, false otherwise.
+     */
+    public static boolean canViewForm(ServerCommandSource source, String formName) {
+        return hasPermission(source, "serverforms.form." + ConfigLoader.getFormKey(formName) + ".view",
+                (int) ConfigLoader.getLongSetting("permissions.viewLevel", 4));
+    }
+
+    /**
+     * Checks whether the source has a permission node.
+     * Sources that are not players, such as the console, are always checked against their permission level.
+     *
+     * @param source        The command source.
+     * @param node          The permission node to check.
+     * @param fallbackLevel The operator level required when the node is not decided by LuckPerms.
+     * @return true if the source has the permission, false otherwise.
+     */
+    public static boolean hasPermission(ServerCommandSource source, String node, int fallbackLevel) {
+        ServerPlayerEntity player = source.getPlayer();
+        LuckPermsHook hook = luckPerms;
+        if (player == null || hook == null) {
+            return source.hasPermissionLevel(fallbackLevel);
+        }
+
+        Map<String, Decision> decisions = cache.computeIfAbsent(player.getUuid(), uuid -> new ConcurrentHashMap<>());
+        Decision decision = decisions.get(node);
+        if (decision == null) {
+            FormMetrics.increment("permissions.cacheMisses");
+            decision = hook.check(player.getUuid(), node);
+            // An unloaded user is not cached, so the node is checked again once LuckPerms has loaded them
+            if (decision != Decision.UNKNOWN) {
+                decisions.put(node, decision);
+            }
+        } else {
+            FormMetrics.increment("permissions.cacheHits");
+        }
+
+        return switch (decision) {
+            case ALLOW -> true;
+            case DENY -> false;
+            case UNDEFINED, UNKNOWN -> source.hasPermissionLevel(fallbackLevel);
+        };
+    }
+
+    /**
+     * Drops the cached decisions of a player and resends their command tree, so commands they gained
+     * or lost access to appear or disappear. Safe to call from any thread.
+     *
+     * @param playerUUID The UUID of the player.
+     */
+    static void invalidate(UUID playerUUID) {
+        cache.remove(playerUUID);
+        resendCommandTree(playerUUID);
+    }
+
+    /**
+     * Drops all cached decisions, for example after a group's permissions changed. Safe to call from any thread.
+     */
+    static void invalidateAll() {
+        cache.keySet().forEach(PermissionResolver::invalidate);
+    }
+
+    /**
+     * Resends the command tree of an online player on the server thread.
+     *
+     * @param playerUUID The UUID of the player.
+     */
+    private static void resendCommandTree(UUID playerUUID) {
+        MinecraftServer current = server;
+        if (current == null) return;
+
+        current.execute(() -> {
+            ServerPlayerEntity player = current.getPlayerManager().getPlayer(playerUUID);
+            if (player != null) {
+                current.getPlayerManager().sendCommandTree(player);
+            }
+        });
+    }
+
+    /**
+     * The outcome of a permission check before falling back to operator levels.
+     */
+    enum Decision {
+        ALLOW,
+        DENY,
+        UNDEFINED,
+        UNKNOWN
+    }
+}
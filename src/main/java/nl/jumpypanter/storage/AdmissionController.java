@@ -0,0 +1,79 @@
+package nl.jumpypanter.storage;
+
+import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.config.ConfigLoader;
+import nl.jumpypanter.utils.FormMetrics;
+
+/**
+ * Decides whether new form sessions may start based on the state of the {@link AnswerStore}.
+ * Admission closes when the write backlog or write latency crosses its high watermark and
+ * reopens once both have fallen back below their low watermarks. Active sessions are never affected.
+ */
+public class AdmissionController {
+    private static volatile boolean saturated = false;
+
+    static {
+        FormMetrics.registerGauge("admission.saturated", () -> saturated ? 1 : 0);
+        FormMetrics.registerGauge("admission.backlogHighWatermark", AdmissionController::getBacklogHighWatermark);
+        FormMetrics.registerGauge("admission.backlogLowWatermark", AdmissionController::getBacklogLowWatermark);
+        FormMetrics.registerGauge("admission.latencyHighWatermarkMs", AdmissionController::getLatencyHighWatermark);
+        FormMetrics.registerGauge("admission.latencyLowWatermarkMs", AdmissionController::getLatencyLowWatermark);
+    }
+
+    /**
+     * Initializes admission control so its watermarks are visible in metrics from startup.
+     */
+    public static void register() {
+        ServerForms.LOGGER.info("Admission control watermarks: backlog {}/{}, write latency {}/{} ms.",
+                getBacklogHighWatermark(), getBacklogLowWatermark(), getLatencyHighWatermark(), getLatencyLowWatermark());
+    }
+
+    /**
+     * Checks whether a new form session may start and counts the rejection if it may not.
+     *
+     * @return true if the answer store can accept new sessions, false otherwise.
+     */
+    public static boolean tryAdmit() {
+        if (evaluate()) {
+            FormMetrics.increment("admission.rejected");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Re-evaluates the saturation state against the configured watermarks.
+     * Called before each form start and after each completed write, so admission recovers on its own once the backlog drains.
+     *
+     * @return true if the answer store is saturated, false otherwise.
+     */
+    public static synchronized boolean evaluate() {
+        int backlog = AnswerStore.getBacklog();
+        long latency = AnswerStore.getWriteLatencyMillis();
+
+        if (!saturated && (backlog >= getBacklogHighWatermark() || (backlog > 0 && latency >= getLatencyHighWatermark()))) {
+            saturated = true;
+            ServerForms.LOGGER.warn("Answer store is saturated (backlog: {}, write latency: {} ms). New forms are paused.", backlog, latency);
+        } else if (saturated && backlog <= getBacklogLowWatermark() && (backlog == 0 || latency <= getLatencyLowWatermark())) {
+            saturated = false;
+            ServerForms.LOGGER.info("Answer store has recovered (backlog: {}, write latency: {} ms). New forms are accepted again.", backlog, latency);
+        }
+        return saturated;
+    }
+
+    private static long getBacklogHighWatermark() {
+        return ConfigLoader.getLongSetting("admission.backlogHighWatermark", 64);
+    }
+
+    private static long getBacklogLowWatermark() {
+        return ConfigLoader.getLongSetting("admission.backlogLowWatermark", 16);
+    }
+
+    private static long getLatencyHighWatermark() {
+        return ConfigLoader.getLongSetting("admission.latencyHighWatermarkMs", 500);
+    }
+
+    private static long getLatencyLowWatermark() {
+        return ConfigLoader.getLongSetting("admission.latencyLowWatermarkMs", 100);
+    }
+}
@@ -0,0 +1,141 @@
+package nl.jumpypanter.storage;
+
+import nl.jumpypanter.config.ConfigLoader;
+import nl.jumpypanter.utils.FlightEvents;
+import nl.jumpypanter.utils.FormMetrics;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A size-bounded, least-recently-used cache of parsed answers files. The cache is bounded by the estimated memory of
+ * its views ({@code answers.viewCacheMaxBytes}) rather than by their number, since one player may have answered many forms.
+ * <p>
+ * Writes replace the cached view of the player, and every invalidation bumps a generation counter, so a read that
+ * started before a write can never put the older view back into the cache.
+ */
+class AnswerCache {
+    private static final Map<UUID, AnswerView> views = new LinkedHashMap<>(64, 0.75f, true);
+    private static long weight = 0;
+    private static long generation = 0;
+
+    static {
+        FormMetrics.registerGauge("answers.viewCacheBytes", AnswerCache::getWeight);
+        FormMetrics.registerGauge("answers.viewCacheEntries", AnswerCache::size);
+    }
+
+    /**
+     * Retrieves the cached view of a player's answers.
+     *
+     * @param playerUUID The UUID of the player.
+     * @return The cached view, or null if the player's answers are not cached.
+     */
+    static synchronized AnswerView get(UUID playerUUID) {
+        FlightEvents.IndexLookup event = new FlightEvents.IndexLookup();
+        event.begin();
+        AnswerView view = views.get(playerUUID);
+        FormMetrics.increment(view != null ? "answers.viewCacheHits" : "answers.viewCacheMisses");
+        event.end();
+        if (event.shouldCommit()) {
+            event.index = "answerViews";
+            event.key = playerUUID.toString();
+            event.hit = view != null;
+            event.results = view != null ? view.getFormNames().size() : 0;
+            event.commit();
+        }
+        return view;
+    }
+
+    /**
+     * Retrieves the current generation, to be passed to {@link #putIfCurrent} once a read finishes.
+     *
+     * @return The current generation.
+     */
+    static synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Caches a view that was read from disk, unless the cache was invalidated or written to since the read started.
+     *
+     * @param playerUUID     The UUID of the player.
+     * @param view           The view read from disk.
+     * @param readGeneration The generation from before the read started.
+     */
+    static synchronized void putIfCurrent(UUID playerUUID, AnswerView view, long readGeneration) {
+        if (generation == readGeneration) {
+            store(playerUUID, view);
+        }
+    }
+
+    /**
+     * Replaces the cached view of a player after their answers were written.
+     *
+     * @param playerUUID The UUID of the player.
+     * @param view       The view of the written answers.
+     */
+    static synchronized void write(UUID playerUUID, AnswerView view) {
+        generation++;
+        store(playerUUID, view);
+    }
+
+    /**
+     * Drops the cached view of a player.
+     *
+     * @param playerUUID The UUID of the player.
+     */
+    static synchronized void invalidate(UUID playerUUID) {
+        generation++;
+        AnswerView removed = views.remove(playerUUID);
+        if (removed != null) {
+            weight -= removed.getWeight();
+        }
+    }
+
+    /**
+     * Drops every cached view.
+     */
+    static synchronized void invalidateAll() {
+        generation++;
+        views.clear();
+        weight = 0;
+    }
+
+    /**
+     * Stores a view and evicts the least recently used views until the cache fits its budget.
+     *
+     * @param playerUUID The UUID of the player.
+     * @param view       The view to store.
+     */
+    private static void store(UUID playerUUID, AnswerView view) {
+        AnswerView previous = views.remove(playerUUID);
+        if (previous != null) {
+            weight -= previous.getWeight();
+        }
+
+        long maxWeight = ConfigLoader.getLongSetting("answers.viewCacheMaxBytes", 8L * 1024 * 1024);
+        if (view.getWeight() > maxWeight) {
+            return;
+        }
+
+        views.put(playerUUID, view);
+        weight += view.getWeight();
+
+        Iterator<AnswerView> eldest = views.values().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= eldest.next().getWeight();
+            eldest.remove();
+            FormMetrics.increment("answers.viewCacheEvictions");
+        }
+    }
+
+    private static synchronized long getWeight() {
+        return weight;
+    }
+
+    private static synchronized long size() {
+        return views.size();
+    }
+}
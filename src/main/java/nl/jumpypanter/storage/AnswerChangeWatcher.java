@@ -0,0 +1,106 @@
+package nl.jumpypanter.storage;
+
+import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.utils.FormMetrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.UUID;
+
+/**
+ * Watches the answers directory for files written by other servers sharing it, and drops the
+ * cached completion state of every player whose answers file changed. Notifications for files this server wrote
+ * itself are ignored, since its caches were updated by the write.
+ */
+class AnswerChangeWatcher implements Closeable {
+    private static final String EXTENSION = ".json";
+
+    private final Path directory;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    /**
+     * Starts watching a directory.
+     *
+     * @param directory The answers directory.
+     * @throws IOException if the directory cannot be watched.
+     */
+    AnswerChangeWatcher(Path directory) throws IOException {
+        this.directory = directory;
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+        // A dedicated daemon thread, since it blocks for the lifetime of the server and must not hold an I/O permit
+        this.thread = Thread.ofPlatform().daemon().name("ServerForms answer watcher").start(this::watch);
+    }
+
+    /**
+     * Stops watching the directory.
+     */
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            ServerForms.LOGGER.warn("Failed to close the answers directory watcher.", e);
+        }
+        thread.interrupt();
+    }
+
+    /**
+     * Waits for changes and invalidates the affected players until the watcher is closed.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Some events were lost, so any cached state may be stale
+                        AnswerStore.invalidateAll();
+                        continue;
+                    }
+
+                    Path fileName = (Path) event.context();
+                    UUID playerUUID = parsePlayerUUID(fileName);
+                    if (playerUUID != null && !AnswerStore.isOwnWrite(directory.resolve(fileName))) {
+                        FormMetrics.increment("answers.changeNotifications");
+                        AnswerStore.invalidate(playerUUID);
+                    }
+                }
+                if (!key.reset()) {
+                    ServerForms.LOGGER.warn("The answers directory is no longer accessible; stopped watching it for changes.");
+                    AnswerStore.invalidateAll();
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // The watcher was closed
+        }
+    }
+
+    /**
+     * Extracts the player UUID from the name of an answers file.
+     *
+     * @param fileName The name of the changed file.
+     * @return The player UUID, or null if the file is not an answers file.
+     */
+    private static UUID parsePlayerUUID(Path fileName) {
+        String name = fileName.toString();
+        if (!name.endsWith(EXTENSION)) {
+            return null;
+        }
+        try {
+            return UUID.fromString(name.substring(0, name.length() - EXTENSION.length()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
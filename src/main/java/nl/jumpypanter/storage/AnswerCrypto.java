@@ -0,0 +1,571 @@
+package nl.jumpypanter.storage;
+
+import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.config.ConfigLoader;
+import nl.jumpypanter.utils.IoExecutor;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PushbackInputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Reads and writes answers files that may be encrypted at rest.
+ * <p>
+ * Every encrypted file has its own random 256-bit data key, stored in the file's header wrapped with AES-GCM under
+ * a master key from {@link AnswerKeys}. The answers follow as segments of up to 32 KiB, each sealed with AES-GCM
+ * under the data key, so a file is encrypted and decrypted while it streams instead of being held in memory twice.
+ * The nonce of a segment is a random per-file prefix followed by the segment number and a flag marking the last
+ * segment, and every segment authenticates the header, so segments cannot be reordered, dropped, truncated or moved
+ * between files without failing authentication. This is the segmented layout of streaming AEAD schemes such as
+ * Tink's {@code AesGcmHkdfStreaming}; the cipher itself is the JDK's own provider, whose AES-GCM runs on the AES-NI
+ * and carry-less multiply instructions of the CPU.
+ * <p>
+ * Files written before encryption was enabled start with '{' instead of the header's magic bytes and are read as
+ * plain JSON, so enabling encryption needs no downtime. {@link AnswerReencryptor} converts them in the background.
+ */
+public class AnswerCrypto {
+    private static final byte[] MAGIC = {'S', 'F', 'A', 'E'};
+    private static final byte VERSION = 1;
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int DATA_KEY_BYTES = 32;
+    private static final int IV_BYTES = 12;
+    private static final int NONCE_PREFIX_BYTES = 7;
+    private static final int TAG_BITS = 128;
+    private static final int TAG_BYTES = TAG_BITS / 8;
+    private static final int WRAPPED_KEY_BYTES = DATA_KEY_BYTES + TAG_BYTES;
+    static final int SEGMENT_BYTES = 32 * 1024;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * Loads the keystore if encryption is enabled or files may still be encrypted. Called whenever the configuration
+     * is (re)loaded; failures are logged, and writes fail until the keystore can be read, rather than falling back to
+     * storing answers in plain text.
+     */
+    public static void configure() {
+        IoExecutor.run("load answer keys", () -> {
+            try {
+                AnswerKeys.load();
+            } catch (IOException e) {
+                if (isEnabled()) {
+                    ServerForms.LOGGER.error("Answer encryption is enabled, but the keystore is not available. Answers cannot be saved until this is fixed.", e);
+                } else {
+                    ServerForms.LOGGER.warn("The answers keystore could not be read; encrypted answers files cannot be read: {}", e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks whether new answers files are encrypted, through the {@code encryption.enabled} setting.
+     *
+     * @return true if new answers files are encrypted.
+     */
+    public static boolean isEnabled() {
+        return ConfigLoader.getBooleanSetting("encryption.enabled", false);
+    }
+
+    /**
+     * Opens an answers file for reading, decrypting it if it is encrypted.
+     *
+     * @param file The answers file.
+     * @return A reader of the JSON in the file.
+     * @throws MissingKeyException if the file is encrypted with a key the keystore does not contain.
+     * @throws IOException         if the file cannot be opened, or its header is damaged.
+     */
+    public static Reader newReader(Path file) throws IOException {
+        return new BufferedReader(new InputStreamReader(newInputStream(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Opens an answers file for writing, encrypting it with a fresh data key under the active master key if
+     * encryption is enabled. The file is only complete once the writer is closed.
+     *
+     * @param file The file to write.
+     * @return A writer for the JSON of the file.
+     * @throws IOException if the file cannot be created, or encryption is enabled and the keystore is not available.
+     */
+    public static Writer newWriter(Path file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(newOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Opens an answers file as bytes, decrypting it if it is encrypted.
+     *
+     * @param file The answers file.
+     * @return A stream of the JSON in the file.
+     * @throws IOException if the file cannot be opened, or its header is damaged or names a missing key.
+     */
+    static InputStream newInputStream(Path file) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(Files.newInputStream(file), MAGIC.length);
+        try {
+            byte[] start = in.readNBytes(MAGIC.length);
+            in.unread(start);
+            return Arrays.equals(start, MAGIC) ? decrypt(in) : in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an answers file for writing as bytes, in the format selected by the settings.
+     *
+     * @param file The file to write.
+     * @return A stream for the JSON of the file.
+     * @throws IOException if the file cannot be created or the keystore is not available.
+     */
+    static OutputStream newOutputStream(Path file) throws IOException {
+        if (!isEnabled()) {
+            return Files.newOutputStream(file);
+        }
+        Map.Entry<String, SecretKey> master = AnswerKeys.getActiveKey();
+        return encrypt(Files.newOutputStream(file), master.getKey(), master.getValue());
+    }
+
+    /**
+     * Checks whether the contents of an answers file start with the header of an encrypted file.
+     *
+     * @param start The start of the file; its position is not changed.
+     * @return true if the file is encrypted.
+     */
+    static boolean isEncrypted(ByteBuffer start) {
+        if (start.remaining() < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (start.get(start.position() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads which master key an answers file is encrypted with, without decrypting it.
+     *
+     * @param file The answers file.
+     * @return The ID of the master key, or null if the file is not encrypted.
+     * @throws IOException if the file cannot be read or its header is damaged.
+     */
+    static String getKeyId(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            byte[] start = in.readNBytes(MAGIC.length);
+            if (!Arrays.equals(start, MAGIC)) {
+                return null;
+            }
+            return readKeyId(in);
+        } catch (EOFException e) {
+            throw new IOException("The encryption header of " + file.getFileName() + " is truncated.", e);
+        }
+    }
+
+    /**
+     * Starts an encrypted file on a stream: generates a data key, writes the header and returns a stream that seals
+     * everything written to it. Closing the returned stream writes the last segment and closes the underlying stream.
+     *
+     * @param out    The stream to write the file to.
+     * @param keyId  The ID of the master key.
+     * @param master The master key that wraps the data key.
+     * @return A stream that encrypts what is written to it.
+     * @throws IOException if the header cannot be written.
+     */
+    static OutputStream encrypt(OutputStream out, String keyId, SecretKey master) throws IOException {
+        byte[] dataKey = new byte[DATA_KEY_BYTES];
+        byte[] wrapIv = new byte[IV_BYTES];
+        byte[] noncePrefix = new byte[NONCE_PREFIX_BYTES];
+        RANDOM.nextBytes(dataKey);
+        RANDOM.nextBytes(wrapIv);
+        RANDOM.nextBytes(noncePrefix);
+
+        byte[] keyIdBytes = keyIdBytes(keyId);
+        byte[] wrapped;
+        try {
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.ENCRYPT_MODE, master, new GCMParameterSpec(TAG_BITS, wrapIv));
+            cipher.updateAAD(wrapContext(keyIdBytes));
+            wrapped = cipher.doFinal(dataKey);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to wrap the data key of an answers file.", e);
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        header.write(MAGIC);
+        header.write(VERSION);
+        header.write(keyIdBytes.length);
+        header.write(keyIdBytes);
+        header.write(wrapIv);
+        header.write(wrapped);
+        header.write(noncePrefix);
+        byte[] headerBytes = header.toByteArray();
+        out.write(headerBytes);
+
+        SecretKeySpec key = new SecretKeySpec(dataKey, "AES");
+        Arrays.fill(dataKey, (byte) 0);
+        return new EncryptingOutputStream(out, key, noncePrefix, headerBytes);
+    }
+
+    /**
+     * Reads the header of an encrypted file from a stream and returns a stream of its decrypted contents.
+     *
+     * @param in The stream, positioned at the magic bytes.
+     * @return A stream that decrypts the file while it is read.
+     * @throws MissingKeyException if the file is encrypted with a key the keystore does not contain.
+     * @throws IOException         if the header is damaged.
+     */
+    static InputStream decrypt(InputStream in) throws IOException {
+        return decrypt(in, AnswerKeys::getKey);
+    }
+
+    /**
+     * Reads the header of an encrypted file from a stream and returns a stream of its decrypted contents.
+     *
+     * @param in   The stream, positioned at the magic bytes.
+     * @param keys Looks up the master key named in the header.
+     * @return A stream that decrypts the file while it is read.
+     * @throws IOException if the header is damaged or the key cannot be found.
+     */
+    static InputStream decrypt(InputStream in, KeyLookup keys) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        try {
+            byte[] magic = data.readNBytes(MAGIC.length);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not an encrypted answers file.");
+            }
+            String keyId = readKeyId(data);
+            byte[] keyIdBytes = keyIdBytes(keyId);
+            byte[] wrapIv = new byte[IV_BYTES];
+            byte[] wrapped = new byte[WRAPPED_KEY_BYTES];
+            byte[] noncePrefix = new byte[NONCE_PREFIX_BYTES];
+            data.readFully(wrapIv);
+            data.readFully(wrapped);
+            data.readFully(noncePrefix);
+
+            byte[] dataKey;
+            try {
+                Cipher cipher = Cipher.getInstance(CIPHER);
+                cipher.init(Cipher.DECRYPT_MODE, keys.getKey(keyId), new GCMParameterSpec(TAG_BITS, wrapIv));
+                cipher.updateAAD(wrapContext(keyIdBytes));
+                dataKey = cipher.doFinal(wrapped);
+            } catch (AEADBadTagException e) {
+                throw new IOException("The data key of an answers file failed authentication under key " + keyId + ".", e);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Failed to unwrap the data key of an answers file.", e);
+            }
+
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            header.write(MAGIC);
+            header.write(VERSION);
+            header.write(keyIdBytes.length);
+            header.write(keyIdBytes);
+            header.write(wrapIv);
+            header.write(wrapped);
+            header.write(noncePrefix);
+
+            SecretKeySpec key = new SecretKeySpec(dataKey, "AES");
+            Arrays.fill(dataKey, (byte) 0);
+            return new DecryptingInputStream(in, key, noncePrefix, header.toByteArray());
+        } catch (EOFException e) {
+            throw new IOException("The encryption header of an answers file is truncated.", e);
+        }
+    }
+
+    /**
+     * Reads the version and master key ID that follow the magic bytes of the header.
+     *
+     * @param in The stream, positioned after the magic bytes.
+     * @return The ID of the master key.
+     * @throws IOException if the version is not supported or the header is truncated.
+     */
+    private static String readKeyId(DataInputStream in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported answers file encryption version " + version + ".");
+        }
+        byte[] keyId = new byte[in.readUnsignedByte()];
+        in.readFully(keyId);
+        return new String(keyId, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Encodes a master key ID for the header.
+     *
+     * @param keyId The ID of the master key.
+     * @return The ID as ASCII bytes.
+     */
+    private static byte[] keyIdBytes(String keyId) {
+        byte[] bytes = keyId.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length > 255) {
+            throw new IllegalArgumentException("Key ID is too long: " + keyId);
+        }
+        return bytes;
+    }
+
+    /**
+     * Builds the associated data of the wrapped data key, binding it to the format and the master key's ID.
+     *
+     * @param keyIdBytes The encoded ID of the master key.
+     * @return The associated data.
+     */
+    private static byte[] wrapContext(byte[] keyIdBytes) {
+        byte[] context = new byte[MAGIC.length + 1 + keyIdBytes.length];
+        System.arraycopy(MAGIC, 0, context, 0, MAGIC.length);
+        context[MAGIC.length] = VERSION;
+        System.arraycopy(keyIdBytes, 0, context, MAGIC.length + 1, keyIdBytes.length);
+        return context;
+    }
+
+    /**
+     * Builds the nonce of a segment: the file's nonce prefix, the segment number and whether it is the last segment.
+     *
+     * @param noncePrefix The random nonce prefix of the file.
+     * @param segment     The number of the segment, starting at 0.
+     * @param last        Whether this is the last segment of the file.
+     * @return The nonce.
+     */
+    private static byte[] segmentNonce(byte[] noncePrefix, int segment, boolean last) {
+        byte[] nonce = new byte[IV_BYTES];
+        System.arraycopy(noncePrefix, 0, nonce, 0, NONCE_PREFIX_BYTES);
+        nonce[7] = (byte) (segment >>> 24);
+        nonce[8] = (byte) (segment >>> 16);
+        nonce[9] = (byte) (segment >>> 8);
+        nonce[10] = (byte) segment;
+        nonce[11] = (byte) (last ? 1 : 0);
+        return nonce;
+    }
+
+    /**
+     * Seals what is written to it into segments. A full segment is only sealed once more data follows, so the last
+     * segment can be marked as such when the stream is closed.
+     */
+    private static final class EncryptingOutputStream extends FilterOutputStream {
+        private final SecretKey key;
+        private final byte[] noncePrefix;
+        private final byte[] header;
+        private final Cipher cipher;
+        private final byte[] plain = new byte[SEGMENT_BYTES];
+        private final byte[] sealed = new byte[SEGMENT_BYTES + TAG_BYTES];
+        private int length = 0;
+        private int segment = 0;
+        private boolean closed = false;
+
+        private EncryptingOutputStream(OutputStream out, SecretKey key, byte[] noncePrefix, byte[] header) throws IOException {
+            super(out);
+            this.key = key;
+            this.noncePrefix = noncePrefix;
+            this.header = header;
+            try {
+                this.cipher = Cipher.getInstance(CIPHER);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(CIPHER + " is not supported by this Java runtime.", e);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (length == SEGMENT_BYTES) {
+                    seal(false);
+                }
+                int count = Math.min(len, SEGMENT_BYTES - length);
+                System.arraycopy(b, off, plain, length, count);
+                length += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        @Override
+        public void flush() {
+            // Segments are only written when full or when the stream is closed
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                seal(true);
+                out.flush();
+            } finally {
+                out.close();
+            }
+        }
+
+        private void seal(boolean last) throws IOException {
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, segmentNonce(noncePrefix, segment, last)));
+                cipher.updateAAD(header);
+                int count = cipher.doFinal(plain, 0, length, sealed, 0);
+                out.write(sealed, 0, count);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Failed to encrypt a segment of an answers file.", e);
+            }
+            segment++;
+            length = 0;
+        }
+    }
+
+    /**
+     * Opens segments as they are read. A full segment is only the last one if nothing follows it, so one byte is read
+     * ahead to tell.
+     */
+    private static final class DecryptingInputStream extends InputStream {
+        private final InputStream in;
+        private final SecretKey key;
+        private final byte[] noncePrefix;
+        private final byte[] header;
+        private final Cipher cipher;
+        private final byte[] sealed = new byte[SEGMENT_BYTES + TAG_BYTES];
+        private final byte[] plain = new byte[SEGMENT_BYTES];
+        private int position = 0;
+        private int length = 0;
+        private int segment = 0;
+        private int lookahead = -1;
+        private boolean finished = false;
+
+        private DecryptingInputStream(InputStream in, SecretKey key, byte[] noncePrefix, byte[] header) throws IOException {
+            this.in = in;
+            this.key = key;
+            this.noncePrefix = noncePrefix;
+            this.header = header;
+            try {
+                this.cipher = Cipher.getInstance(CIPHER);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(CIPHER + " is not supported by this Java runtime.", e);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position == length) {
+                if (finished) {
+                    return -1;
+                }
+                open();
+            }
+            int count = Math.min(len, length - position);
+            System.arraycopy(plain, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void open() throws IOException {
+            int count = 0;
+            if (lookahead >= 0) {
+                sealed[count++] = (byte) lookahead;
+                lookahead = -1;
+            }
+            count += in.readNBytes(sealed, count, sealed.length - count);
+
+            boolean last = true;
+            if (count == sealed.length) {
+                lookahead = in.read();
+                last = lookahead < 0;
+            }
+            if (count < TAG_BYTES) {
+                throw new IOException("Encrypted answers file is truncated.");
+            }
+
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, segmentNonce(noncePrefix, segment, last)));
+                cipher.updateAAD(header);
+                length = cipher.doFinal(sealed, 0, count, plain, 0);
+            } catch (AEADBadTagException e) {
+                throw new IOException("Segment " + segment + " of an encrypted answers file failed authentication.", e);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Failed to decrypt a segment of an answers file.", e);
+            }
+            position = 0;
+            segment++;
+            finished = last;
+        }
+    }
+
+    /**
+     * Looks up a master key by the ID in a file's header.
+     */
+    @FunctionalInterface
+    interface KeyLookup {
+        /**
+         * Retrieves a master key.
+         *
+         * @param keyId The ID of the key.
+         * @return The key.
+         * @throws IOException if the key cannot be found.
+         */
+        SecretKey getKey(String keyId) throws IOException;
+    }
+
+    /**
+     * Thrown when an answers file is encrypted with a master key that is not in the keystore, so it cannot be read
+     * but is not damaged either.
+     */
+    public static class MissingKeyException extends IOException {
+        private final String keyId;
+
+        /**
+         * Creates the exception.
+         *
+         * @param keyId The ID of the missing key.
+         */
+        public MissingKeyException(String keyId) {
+            super("The answers keystore does not contain key " + keyId + ".");
+            this.keyId = keyId;
+        }
+
+        /**
+         * Retrieves the ID of the missing key.
+         *
+         * @return The key ID.
+         */
+        public String getKeyId() {
+            return keyId;
+        }
+    }
+}
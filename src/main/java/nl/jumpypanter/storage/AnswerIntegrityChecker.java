@@ -0,0 +1,497 @@
+package nl.jumpypanter.storage;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.config.ConfigLoader;
+import nl.jumpypanter.config.FormFileStore;
+import nl.jumpypanter.utils.FormMetrics;
+import nl.jumpypanter.utils.IoExecutor;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Verifies every file in the answers directory and optionally repairs the damage. Files are checked with a strict
+ * streaming parser for truncated or malformed JSON, a missing {@code playerName}, answers to forms that are not in
+ * the configuration, and encrypted files whose key is not in the keystore. Encrypted files that fail authentication
+ * count as corrupt. When repairing, corrupt files are moved to the {@code .quarantine} folder and whatever could be
+ * read with a lenient parser is written back in their place.
+ * <p>
+ * Files are checked in small parallel batches, so memory use does not grow with the number of files, and while the
+ * server runs the checker is throttled to {@code integrity.maxFilesPerSecond}. Problems are written to a report file
+ * in the {@code .reports} folder as they are found. The checker can also run offline through {@link #main(String[])}.
+ */
+public class AnswerIntegrityChecker {
+    private static final String EXTENSION = ".json";
+    private static final String QUARANTINE_DIR = ".quarantine";
+    private static final String REPORTS_DIR = ".reports";
+    private static final int FILES_PER_BATCH = 32;
+    private static final DateTimeFormatter FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private static final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * Checks the answers directory in the background while the server runs.
+     *
+     * @param repair Whether to quarantine and salvage corrupt files and fill in missing player names.
+     * @return A future completed with the report once every file was checked, or null if a check is already running.
+     */
+    public static CompletableFuture<Report> checkOnline(boolean repair) {
+        Set<String> knownForms = new HashSet<>();
+        for (Map.Entry<String, JsonElement> entry : ConfigLoader.getForms().entrySet()) {
+            JsonElement form = entry.getValue();
+            if (form.isJsonObject() && form.getAsJsonObject().has("name")) {
+                knownForms.add(form.getAsJsonObject().get("name").getAsString());
+            }
+        }
+        long maxFilesPerSecond = ConfigLoader.getLongSetting("integrity.maxFilesPerSecond", 200);
+        return check(repair, knownForms, maxFilesPerSecond);
+    }
+
+    /**
+     * Checks the answers directory of a stopped server.
+     * <p>
+     * Usage: {@code AnswerIntegrityChecker [--repair] [--answers <dir>] [--forms <dir>]}. The answers directory defaults
+     * to {@code mods/FormAnswers} and the forms directory to {@code config/ServerForms/forms}.
+     *
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) {
+        boolean repair = false;
+        File formsDir = FormFileStore.FORMS_DIR;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--repair" -> repair = true;
+                case "--answers" -> AnswerStore.useAnswersDirectory(new File(args[++i]));
+                case "--forms" -> formsDir = new File(args[++i]);
+                default -> {
+                    System.err.println("Usage: AnswerIntegrityChecker [--repair] [--answers <dir>] [--forms <dir>]");
+                    System.exit(2);
+                }
+            }
+        }
+
+        Report report = check(repair, readFormNames(formsDir), 0).join();
+        System.out.println("Checked " + report.filesChecked() + " files, found " + report.problemCount() + " problems, quarantined "
+                + report.quarantined() + " files and salvaged " + report.salvaged() + ".");
+        report.problems().forEach((kind, count) -> System.out.println("  " + kind + ": " + count));
+        System.out.println("Report: " + report.reportFile().toAbsolutePath());
+        IoExecutor.shutdown();
+        System.exit(report.problemCount() == 0 ? 0 : 1);
+    }
+
+    /**
+     * Checks every answers file on a dedicated virtual thread, which forks the files of each batch onto the
+     * {@link IoExecutor} and waits for them without holding an I/O permit itself.
+     *
+     * @param repair            Whether to repair the problems found.
+     * @param knownForms        The names of the configured forms, or null to skip the unknown form check.
+     * @param maxFilesPerSecond The maximum number of files to check per second, or 0 for no limit.
+     * @return A future completed with the report, or completed with null if a check is already running.
+     */
+    private static CompletableFuture<Report> check(boolean repair, Set<String> knownForms, long maxFilesPerSecond) {
+        if (!running.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Report> result = new CompletableFuture<>();
+        Thread.ofVirtual().name("ServerForms integrity check").start(() -> {
+            try {
+                result.complete(runCheck(repair, knownForms, maxFilesPerSecond));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                running.set(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Walks the answers directory batch by batch and writes every problem to the report.
+     *
+     * @param repair            Whether to repair the problems found.
+     * @param knownForms        The names of the configured forms, or null to skip the unknown form check.
+     * @param maxFilesPerSecond The maximum number of files to check per second, or 0 for no limit.
+     * @return The report.
+     * @throws IOException          if the directory cannot be listed or the report cannot be written.
+     * @throws InterruptedException if the check was interrupted.
+     */
+    private static Report runCheck(boolean repair, Set<String> knownForms, long maxFilesPerSecond) throws IOException, InterruptedException {
+        Path directory = AnswerStore.getAnswersDirectory().toPath();
+        Path reportFile = directory.resolve(REPORTS_DIR).resolve("integrity-" + LocalDateTime.now().format(FILE_TIME_FORMAT) + ".tsv");
+        Files.createDirectories(reportFile.getParent());
+
+        Map<Problem.Kind, Integer> counts = new EnumMap<>(Problem.Kind.class);
+        int checked = 0;
+        int quarantined = 0;
+        int salvaged = 0;
+        long start = System.nanoTime();
+
+        try (BufferedWriter report = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8);
+             DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            report.write("problem\tfile\tdetail\n");
+
+            List<Path> batch = new ArrayList<>(FILES_PER_BATCH);
+            var iterator = files.iterator();
+            while (iterator.hasNext() || !batch.isEmpty()) {
+                if (iterator.hasNext()) {
+                    Path file = iterator.next();
+                    if (Files.isRegularFile(file)) {
+                        batch.add(file);
+                    }
+                    if (batch.size() < FILES_PER_BATCH && iterator.hasNext()) {
+                        continue;
+                    }
+                }
+
+                for (FileResult fileResult : checkBatch(batch, repair, knownForms)) {
+                    checked++;
+                    if (fileResult.quarantined()) quarantined++;
+                    if (fileResult.salvaged()) salvaged++;
+                    for (Problem problem : fileResult.problems()) {
+                        counts.merge(problem.kind(), 1, Integer::sum);
+                        report.write(problem.kind() + "\t" + problem.file() + "\t" + problem.detail().replace('\t', ' ').replace('\n', ' ') + "\n");
+                    }
+                }
+                batch.clear();
+                throttle(start, checked, maxFilesPerSecond);
+            }
+
+            report.write("# checked " + checked + " files, quarantined " + quarantined + ", salvaged " + salvaged + "\n");
+        }
+
+        int problemCount = counts.values().stream().mapToInt(Integer::intValue).sum();
+        FormMetrics.add("integrity.filesChecked", checked);
+        FormMetrics.add("integrity.problems", problemCount);
+        FormMetrics.add("integrity.quarantined", quarantined);
+        FormMetrics.add("integrity.salvaged", salvaged);
+        ServerForms.LOGGER.info("Checked {} answers files: {} problems, {} quarantined, {} salvaged. Report: {}",
+                checked, problemCount, quarantined, salvaged, reportFile);
+        return new Report(checked, counts, problemCount, quarantined, salvaged, reportFile);
+    }
+
+    /**
+     * Checks a batch of files in parallel and waits for all of them.
+     *
+     * @param batch      The files to check.
+     * @param repair     Whether to repair the problems found.
+     * @param knownForms The names of the configured forms, or null to skip the unknown form check.
+     * @return The result of every file in the batch.
+     * @throws InterruptedException if the check was interrupted.
+     */
+    private static List<FileResult> checkBatch(List<Path> batch, boolean repair, Set<String> knownForms) throws InterruptedException {
+        try (IoExecutor.Scope<FileResult> scope = IoExecutor.openScope()) {
+            for (Path file : batch) {
+                scope.fork("check " + file.getFileName(), () -> checkFile(file, repair, knownForms));
+            }
+            return scope.join().get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("An integrity check task failed.", e.getCause());
+        }
+    }
+
+    /**
+     * Checks and optionally repairs a single answers file. Runs on an I/O thread.
+     *
+     * @param file       The answers file.
+     * @param repair     Whether to repair the problems found.
+     * @param knownForms The names of the configured forms, or null to skip the unknown form check.
+     * @return The problems found and the repairs made.
+     * @throws IOException if a repair fails.
+     */
+    private static FileResult checkFile(Path file, boolean repair, Set<String> knownForms) throws IOException {
+        String fileName = file.getFileName().toString();
+        List<Problem> problems = new ArrayList<>();
+
+        UUID playerUUID;
+        try {
+            playerUUID = UUID.fromString(fileName.substring(0, fileName.length() - EXTENSION.length()));
+        } catch (IllegalArgumentException e) {
+            problems.add(new Problem(Problem.Kind.INVALID_FILE_NAME, fileName, "File name is not a player UUID."));
+            return new FileResult(problems, false, false);
+        }
+
+        FileScan scan;
+        try {
+            scan = scanStrict(file);
+        } catch (AnswerCrypto.MissingKeyException e) {
+            // Not damaged, so never quarantined: restoring the key makes the file readable again
+            problems.add(new Problem(Problem.Kind.MISSING_KEY, fileName, "Encrypted with key " + e.getKeyId() + ", which is not in the keystore."));
+            return new FileResult(problems, false, false);
+        }
+        if (scan.error() != null) {
+            problems.add(new Problem(Problem.Kind.CORRUPT, fileName, scan.error()));
+            if (!repair) {
+                return new FileResult(problems, false, false);
+            }
+            boolean salvaged = quarantineAndSalvage(file, playerUUID);
+            return new FileResult(problems, true, salvaged);
+        }
+
+        if (!scan.hasPlayerName()) {
+            String knownName = PlayerIndex.getCurrentName(playerUUID);
+            problems.add(new Problem(Problem.Kind.MISSING_PLAYER_NAME, fileName,
+                    knownName != null ? "Player is known as " + knownName + "." : "Player name is unknown."));
+            if (repair && knownName != null) {
+                rewrite(file, playerUUID, allForms -> allForms.addProperty("playerName", knownName));
+            }
+        }
+
+        if (knownForms != null) {
+            for (String formName : scan.formNames()) {
+                if (!knownForms.contains(formName)) {
+                    problems.add(new Problem(Problem.Kind.UNKNOWN_FORM, fileName, "Answers to form '" + formName + "', which is not configured."));
+                }
+            }
+        }
+        return new FileResult(problems, false, false);
+    }
+
+    /**
+     * Reads a file with a strict streaming parser, keeping only the player name flag and the form names.
+     *
+     * @param file The answers file.
+     * @return The form names found, or the first parse error.
+     * @throws AnswerCrypto.MissingKeyException if the file is encrypted with a key the keystore does not contain.
+     */
+    private static FileScan scanStrict(Path file) throws AnswerCrypto.MissingKeyException {
+        boolean hasPlayerName = false;
+        List<String> formNames = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(AnswerCrypto.newReader(file))) {
+            reader.setStrictness(Strictness.STRICT);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("playerName")) {
+                    if (reader.peek() == JsonToken.STRING) {
+                        hasPlayerName = !reader.nextString().isBlank();
+                    } else {
+                        reader.skipValue();
+                    }
+                    continue;
+                }
+                if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    return new FileScan(false, formNames, "Answers to form '" + name + "' are not a JSON object.");
+                }
+                formNames.add(name);
+                reader.skipValue();
+            }
+            reader.endObject();
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                return new FileScan(false, formNames, "Unexpected content after the end of the document.");
+            }
+            return new FileScan(hasPlayerName, formNames, null);
+        } catch (AnswerCrypto.MissingKeyException e) {
+            throw e;
+        } catch (IOException | IllegalStateException e) {
+            return new FileScan(false, formNames, e.getMessage() != null ? e.getMessage().lines().findFirst().orElse("") : e.toString());
+        }
+    }
+
+    /**
+     * Moves a corrupt file to the quarantine folder and writes back every form that could still be read with a
+     * lenient parser. Holds the player's lock, so it never races with a save. Runs on an I/O thread.
+     *
+     * @param file       The corrupt answers file.
+     * @param playerUUID The UUID of the player.
+     * @return true if any answers were salvaged.
+     * @throws IOException if the file cannot be moved or written.
+     */
+    private static boolean quarantineAndSalvage(Path file, UUID playerUUID) throws IOException {
+        Path quarantine = file.resolveSibling(QUARANTINE_DIR)
+                .resolve(file.getFileName() + "." + LocalDateTime.now().format(FILE_TIME_FORMAT));
+        Files.createDirectories(quarantine.getParent());
+
+        boolean salvaged = AnswerStore.withPlayerLock(playerUUID, () -> {
+            JsonObject recovered = salvage(file);
+            Files.move(file, quarantine, StandardCopyOption.REPLACE_EXISTING);
+
+            if (recovered.size() == 0) {
+                return false;
+            }
+            if (!recovered.has("playerName") && PlayerIndex.getCurrentName(playerUUID) != null) {
+                recovered.addProperty("playerName", PlayerIndex.getCurrentName(playerUUID));
+            }
+            AnswerStore.writeAtomically(file, recovered);
+            return true;
+        });
+
+        AnswerStore.invalidate(playerUUID);
+        ServerForms.LOGGER.warn("Quarantined corrupt answers file {} as {}{}", file.getFileName(), quarantine,
+                salvaged ? " and salvaged what could be read." : ".");
+        return salvaged;
+    }
+
+    /**
+     * Reads as many complete top-level entries from a damaged file as possible with a lenient streaming parser.
+     *
+     * @param file The damaged answers file.
+     * @return The entries that could be read in full.
+     */
+    private static JsonObject salvage(Path file) {
+        JsonObject recovered = new JsonObject();
+        try (Reader in = AnswerCrypto.newReader(file); JsonReader reader = new JsonReader(in)) {
+            reader.setStrictness(Strictness.LENIENT);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                JsonElement value = JsonParser.parseReader(reader);
+                if (name.equals("playerName") ? value.isJsonPrimitive() : value.isJsonObject()) {
+                    recovered.add(name, value);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Keep everything read before the damage
+        }
+        return recovered;
+    }
+
+    /**
+     * Applies a change to an answers file while holding the player's lock. Runs on an I/O thread.
+     *
+     * @param file       The answers file.
+     * @param playerUUID The UUID of the player.
+     * @param change     The change to apply to the parsed file.
+     * @throws IOException if the file cannot be read or written.
+     */
+    private static void rewrite(Path file, UUID playerUUID, Consumer<JsonObject> change) throws IOException {
+        AnswerStore.withPlayerLock(playerUUID, () -> {
+            JsonObject allForms;
+            try (Reader reader = AnswerCrypto.newReader(file)) {
+                allForms = JsonParser.parseReader(reader).getAsJsonObject();
+            }
+            change.accept(allForms);
+            AnswerStore.writeAtomically(file, allForms);
+            return null;
+        });
+        AnswerStore.invalidate(playerUUID);
+    }
+
+    /**
+     * Sleeps long enough to keep the check at or below the allowed rate.
+     *
+     * @param start             The {@link System#nanoTime()} the check started.
+     * @param checked           The number of files checked so far.
+     * @param maxFilesPerSecond The maximum number of files per second, or 0 for no limit.
+     * @throws InterruptedException if the check was interrupted.
+     */
+    private static void throttle(long start, int checked, long maxFilesPerSecond) throws InterruptedException {
+        if (maxFilesPerSecond <= 0) {
+            return;
+        }
+        long due = start + TimeUnit.SECONDS.toNanos(checked) / maxFilesPerSecond;
+        long wait = due - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Reads the names of the configured forms for an offline check.
+     *
+     * @param formsDir The forms directory.
+     * @return The form names, or null if the directory does not exist.
+     */
+    private static Set<String> readFormNames(File formsDir) {
+        File[] files = formsDir.listFiles(file -> file.isFile() && file.getName().endsWith(EXTENSION));
+        if (files == null) {
+            System.out.println("Forms directory " + formsDir + " not found; skipping the unknown form check.");
+            return null;
+        }
+
+        Set<String> names = new HashSet<>();
+        for (File file : files) {
+            try (FileReader reader = new FileReader(file, StandardCharsets.UTF_8)) {
+                JsonObject form = JsonParser.parseReader(reader).getAsJsonObject();
+                if (form.has("name")) {
+                    names.add(form.get("name").getAsString());
+                }
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Skipping unreadable form file " + file.getName() + ".");
+            }
+        }
+        return names;
+    }
+
+    /**
+     * A problem found in an answers file.
+     *
+     * @param kind   The kind of problem.
+     * @param file   The name of the file.
+     * @param detail A description of the problem.
+     */
+    public record Problem(Kind kind, String file, String detail) {
+
+        /**
+         * The kinds of problems the checker detects.
+         */
+        public enum Kind {
+            CORRUPT,
+            MISSING_PLAYER_NAME,
+            UNKNOWN_FORM,
+            INVALID_FILE_NAME,
+            MISSING_KEY
+        }
+    }
+
+    /**
+     * The outcome of a check.
+     *
+     * @param filesChecked The number of files checked.
+     * @param problems     The number of problems found, by kind.
+     * @param problemCount The total number of problems found.
+     * @param quarantined  The number of files moved to the quarantine folder.
+     * @param salvaged     The number of quarantined files that were partly restored.
+     * @param reportFile   The report listing every problem.
+     */
+    public record Report(int filesChecked, Map<Problem.Kind, Integer> problems, int problemCount, int quarantined, int salvaged, Path reportFile) {
+    }
+
+    /**
+     * The result of checking a single file.
+     *
+     * @param problems    The problems found.
+     * @param quarantined Whether the file was quarantined.
+     * @param salvaged    Whether answers were salvaged from the file.
+     */
+    private record FileResult(List<Problem> problems, boolean quarantined, boolean salvaged) {
+    }
+
+    /**
+     * What a strict scan of a file found.
+     *
+     * @param hasPlayerName Whether the file has a non-empty player name.
+     * @param formNames     The names of the forms in the file.
+     * @param error         The first parse error, or null if the file is valid.
+     */
+    private record FileScan(boolean hasPlayerName, List<String> formNames, String error) {
+    }
+}
@@ -0,0 +1,228 @@
+package nl.jumpypanter.storage;
+
+import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.config.ConfigLoader;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The master keys that wrap the data key of every encrypted answers file, kept in a PKCS#12 keystore outside the
+ * answers directory, at {@code encryption.keystore}. The keystore password is read from the
+ * {@code SERVERFORMS_KEYSTORE_PASSWORD} environment variable, or else from the {@code encryption.keystorePassword}
+ * setting.
+ * <p>
+ * Keys are named {@code answers-master-1}, {@code answers-master-2} and so on; the highest number is the active key
+ * new files are encrypted with. Older keys are kept so files that were not re-encrypted yet stay readable. The keystore
+ * is created with a first key when encryption is enabled, and read again when a file names a key this server has not
+ * seen yet, so a key rotated on another server sharing the keystore is picked up.
+ */
+public class AnswerKeys {
+    private static final String ALIAS_PREFIX = "answers-master-";
+    private static final String PASSWORD_VARIABLE = "SERVERFORMS_KEYSTORE_PASSWORD";
+    private static final String DEFAULT_KEYSTORE = "config/ServerForms/answers.p12";
+    private static final int KEY_BITS = 256;
+
+    private static volatile KeyRing ring;
+
+    /**
+     * Loads the keystore, creating it with a first key if encryption is enabled and it does not exist yet.
+     * Runs on an I/O thread.
+     *
+     * @throws IOException if the keystore cannot be read or created.
+     */
+    static synchronized void load() throws IOException {
+        Path file = getKeystoreFile();
+        if (!Files.exists(file)) {
+            if (!AnswerCrypto.isEnabled()) {
+                ring = null;
+                return;
+            }
+            KeyStore keyStore = newKeyStore();
+            addKey(keyStore, 1);
+            save(keyStore);
+            ServerForms.LOGGER.info("Created the answers keystore at {}.", file.toAbsolutePath());
+        }
+        ring = read();
+        ServerForms.LOGGER.info("Loaded {} answer encryption keys; the active key is {}.", ring.keys().size(), ring.activeId());
+    }
+
+    /**
+     * Retrieves the key new files are encrypted with.
+     *
+     * @return The ID and key of the active master key.
+     * @throws IOException if the keystore is not available.
+     */
+    static Map.Entry<String, SecretKey> getActiveKey() throws IOException {
+        KeyRing current = getRing();
+        return Map.entry(current.activeId(), current.keys().get(current.activeId()));
+    }
+
+    /**
+     * Retrieves a master key by ID, reading the keystore again if the key is not known yet.
+     *
+     * @param keyId The ID of the key.
+     * @return The key.
+     * @throws AnswerCrypto.MissingKeyException if the keystore does not contain the key.
+     * @throws IOException                      if the keystore is not available.
+     */
+    static SecretKey getKey(String keyId) throws IOException {
+        SecretKey key = ring != null ? ring.keys().get(keyId) : null;
+        if (key != null) {
+            return key;
+        }
+        synchronized (AnswerKeys.class) {
+            if (Files.exists(getKeystoreFile())) {
+                ring = read();
+                key = ring.keys().get(keyId);
+            }
+        }
+        if (key == null) {
+            throw new AnswerCrypto.MissingKeyException(keyId);
+        }
+        return key;
+    }
+
+    /**
+     * Adds a new master key and makes it the active key. Files encrypted with older keys stay readable until they
+     * are re-encrypted by the {@link AnswerReencryptor}. Runs on an I/O thread.
+     *
+     * @return The ID of the new key.
+     * @throws IOException if the keystore cannot be read or written.
+     */
+    static synchronized String rotate() throws IOException {
+        KeyRing current = getRing();
+        KeyStore keyStore = newKeyStore();
+        current.keys().forEach((alias, key) -> setKey(keyStore, alias, key));
+        int next = aliasNumber(current.activeId()) + 1;
+        addKey(keyStore, next);
+        save(keyStore);
+        ring = read();
+        ServerForms.LOGGER.info("Rotated the answer encryption key; the active key is now {}.", ring.activeId());
+        return ring.activeId();
+    }
+
+    private static KeyRing getRing() throws IOException {
+        KeyRing current = ring;
+        if (current == null) {
+            load();
+            current = ring;
+            if (current == null) {
+                throw new IOException("The answers keystore " + getKeystoreFile() + " does not exist.");
+            }
+        }
+        return current;
+    }
+
+    private static KeyRing read() throws IOException {
+        Path file = getKeystoreFile();
+        char[] password = getPassword();
+        try (InputStream in = Files.newInputStream(file)) {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(in, password);
+
+            Map<String, SecretKey> keys = new HashMap<>();
+            String activeId = null;
+            for (String alias : Collections.list(keyStore.aliases())) {
+                if (!alias.startsWith(ALIAS_PREFIX) || !keyStore.isKeyEntry(alias)) {
+                    continue;
+                }
+                keys.put(alias, (SecretKey) keyStore.getKey(alias, password));
+                if (activeId == null || aliasNumber(alias) > aliasNumber(activeId)) {
+                    activeId = alias;
+                }
+            }
+            if (activeId == null) {
+                throw new IOException("The answers keystore " + file + " does not contain any keys.");
+            }
+            return new KeyRing(Map.copyOf(keys), activeId);
+        } catch (GeneralSecurityException | ClassCastException e) {
+            throw new IOException("Failed to read the answers keystore " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void save(KeyStore keyStore) throws IOException {
+        Path file = getKeystoreFile();
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            keyStore.store(out, getPassword());
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to write the answers keystore " + file + ": " + e.getMessage(), e);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static KeyStore newKeyStore() throws IOException {
+        try {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(null, null);
+            return keyStore;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("PKCS#12 keystores are not supported by this Java runtime.", e);
+        }
+    }
+
+    private static void addKey(KeyStore keyStore, int number) throws IOException {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(KEY_BITS);
+            setKey(keyStore, ALIAS_PREFIX + number, generator.generateKey());
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to generate an answer encryption key.", e);
+        }
+    }
+
+    private static void setKey(KeyStore keyStore, String alias, SecretKey key) {
+        try {
+            keyStore.setEntry(alias, new KeyStore.SecretKeyEntry(key), new KeyStore.PasswordProtection(getPassword()));
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("Failed to store answer encryption key " + alias + ".", e);
+        }
+    }
+
+    private static int aliasNumber(String alias) {
+        try {
+            return Integer.parseInt(alias.substring(ALIAS_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static char[] getPassword() throws IOException {
+        String password = System.getenv(PASSWORD_VARIABLE);
+        if (password == null || password.isEmpty()) {
+            password = ConfigLoader.getStringSetting("encryption.keystorePassword", "");
+        }
+        if (password.isEmpty()) {
+            throw new IOException("No password for the answers keystore. Set the " + PASSWORD_VARIABLE
+                    + " environment variable or the encryption.keystorePassword setting.");
+        }
+        return password.toCharArray();
+    }
+
+    private static Path getKeystoreFile() {
+        return Path.of(ConfigLoader.getStringSetting("encryption.keystore", DEFAULT_KEYSTORE));
+    }
+
+    /**
+     * The master keys read from the keystore.
+     *
+     * @param keys     The keys by ID.
+     * @param activeId The ID of the key new files are encrypted with.
+     */
+    private record KeyRing(Map<String, SecretKey> keys, String activeId) {
+    }
+}
@@ -0,0 +1,435 @@
+package nl.jumpypanter.storage;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.config.ConfigLoader;
+import nl.jumpypanter.utils.FormMetrics;
+import nl.jumpypanter.utils.IoExecutor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Deletes answers once they are older than the retention rules in the {@code retention} section of the configuration,
+ * for example {@code "retention": {"event_signup": "30d", "*": "365d"}}. A rule is a number of days or a duration such
+ * as {@code "12h"}, {@code "30d"} or {@code "8w"}; {@code "*"} applies to every form without its own rule, and
+ * {@code "forever"} keeps a form's answers when {@code "*"} would not.
+ * <p>
+ * Expired answers are found through the {@link RespondentIndex}, which is sorted by completion time, so the answers
+ * directory is never listed. They are removed in small parallel batches under each player's lock, throttled to
+ * {@code retention.maxFilesPerSecond}, on a background thread every {@code retention.intervalMinutes}. Answers files
+ * left without any forms are deleted, and every removal is taken out of the respondent index and the answer caches.
+ * What was removed is written to a report in the {@code .reports} folder.
+ */
+public class AnswerPurger {
+    private static final String DEFAULT_RULE = "*";
+    private static final String FOREVER = "forever";
+    private static final String REPORTS_DIR = ".reports";
+    private static final String PLAYER_NAME_KEY = "playerName";
+    private static final int FILES_PER_BATCH = 32;
+    private static final Pattern DURATION = Pattern.compile("(\\d{1,6})([hdwHDW])");
+    private static final DateTimeFormatter FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private static final AtomicBoolean running = new AtomicBoolean(false);
+    private static volatile Thread scheduler;
+
+    /**
+     * Starts purging on a schedule once the server has started and the respondent index is loaded, and stops when
+     * the server stops.
+     */
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STARTED.register(server -> {
+            Thread thread = Thread.ofVirtual().name("ServerForms retention").unstarted(AnswerPurger::runSchedule);
+            scheduler = thread;
+            thread.start();
+        });
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
+            Thread thread = scheduler;
+            if (thread != null) {
+                thread.interrupt();
+                scheduler = null;
+            }
+        });
+    }
+
+    /**
+     * Purges expired answers in the background right away.
+     *
+     * @return A future completed with the report, or completed with null if a purge is already running.
+     */
+    public static CompletableFuture<Report> purgeNow() {
+        if (!running.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Report> result = new CompletableFuture<>();
+        Thread.ofVirtual().name("ServerForms retention purge").start(() -> {
+            try {
+                result.complete(purge());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                running.set(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Purges every {@code retention.intervalMinutes} until interrupted. Runs on its own virtual thread.
+     */
+    private static void runSchedule() {
+        try {
+            RespondentIndex.loaded().get();
+            while (!Thread.currentThread().isInterrupted()) {
+                if (running.compareAndSet(false, true)) {
+                    try {
+                        purge();
+                    } catch (IOException | RuntimeException e) {
+                        // Log and keep the schedule going; the next run may succeed
+                        ServerForms.LOGGER.error("Failed to purge expired answers.", e);
+                    } finally {
+                        running.set(false);
+                    }
+                }
+                long interval = Math.max(1, ConfigLoader.getLongSetting("retention.intervalMinutes", 60));
+                TimeUnit.MINUTES.sleep(interval);
+            }
+        } catch (InterruptedException e) {
+            // The server is stopping
+        } catch (ExecutionException e) {
+            ServerForms.LOGGER.error("Not purging expired answers because the respondent index failed to load.", e.getCause());
+        }
+    }
+
+    /**
+     * Removes the expired answers of every form with a retention rule.
+     *
+     * @return The report.
+     * @throws IOException          if the report cannot be written.
+     * @throws InterruptedException if the purge was interrupted.
+     */
+    private static Report purge() throws IOException, InterruptedException {
+        Map<String, Long> rules = parseRules(ConfigLoader.getRetentionRules());
+        if (rules.isEmpty()) {
+            return new Report(0, 0, 0, Map.of(), null);
+        }
+
+        long maxFilesPerSecond = ConfigLoader.getLongSetting("retention.maxFilesPerSecond", 50);
+        long now = System.currentTimeMillis();
+        long start = System.nanoTime();
+        Map<String, Integer> removedByForm = new TreeMap<>();
+        int processed = 0;
+        int filesDeleted = 0;
+        int failed = 0;
+
+        try (ReportWriter report = new ReportWriter()) {
+            for (String formName : List.copyOf(RespondentIndex.getFormNames())) {
+                Long retention = rules.getOrDefault(formName, rules.get(DEFAULT_RULE));
+                if (retention == null || retention < 0) {
+                    continue;
+                }
+                long cutoff = now - retention;
+
+                // Completions that could not be removed stay at the front of the index, so page past them
+                int kept = 0;
+                while (true) {
+                    List<RespondentIndex.Respondent> page = RespondentIndex.getRespondents(formName, 0, kept, FILES_PER_BATCH).respondents();
+                    List<RespondentIndex.Respondent> expired = page.stream().takeWhile(respondent -> respondent.completedAt() < cutoff).toList();
+                    if (expired.isEmpty()) {
+                        break;
+                    }
+
+                    List<Outcome> outcomes = purgeBatch(formName, expired);
+                    for (int i = 0; i < expired.size(); i++) {
+                        Outcome outcome = outcomes.get(i);
+                        switch (outcome) {
+                            case REMOVED, FILE_DELETED, MISSING -> removedByForm.merge(formName, 1, Integer::sum);
+                            case FAILED -> {
+                                failed++;
+                                kept++;
+                            }
+                            case COMPLETED_AGAIN -> {
+                            }
+                        }
+                        if (outcome == Outcome.FILE_DELETED) {
+                            filesDeleted++;
+                        }
+                        if (outcome != Outcome.COMPLETED_AGAIN) {
+                            report.write(formName, expired.get(i), outcome);
+                        }
+                    }
+
+                    processed += expired.size();
+                    throttle(start, processed, maxFilesPerSecond);
+                    if (expired.size() < page.size()) {
+                        break;
+                    }
+                }
+            }
+
+            int removed = removedByForm.values().stream().mapToInt(Integer::intValue).sum();
+            FormMetrics.add("retention.removed", removed);
+            FormMetrics.add("retention.filesDeleted", filesDeleted);
+            FormMetrics.add("retention.failures", failed);
+            if (removed > 0 || failed > 0) {
+                ServerForms.LOGGER.info("Removed {} expired responses and deleted {} empty answers files; {} could not be removed. Report: {}",
+                        removed, filesDeleted, failed, report.file);
+            }
+            return new Report(removed, filesDeleted, failed, removedByForm, report.file);
+        }
+    }
+
+    /**
+     * Removes a batch of expired completions of a form in parallel and waits for all of them.
+     *
+     * @param formName The name of the form.
+     * @param expired  The expired completions.
+     * @return The outcome of every completion, in the same order.
+     * @throws InterruptedException if the purge was interrupted.
+     */
+    private static List<Outcome> purgeBatch(String formName, List<RespondentIndex.Respondent> expired) throws InterruptedException {
+        try (IoExecutor.Scope<Outcome> scope = IoExecutor.openScope()) {
+            for (RespondentIndex.Respondent respondent : expired) {
+                scope.fork("purge " + formName + " of " + respondent.playerUUID(),
+                        () -> purgeCompletion(formName, respondent.playerUUID(), respondent.completedAt()));
+            }
+            return scope.join().get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A retention purge task failed.", e.getCause());
+        }
+    }
+
+    /**
+     * Removes a player's answers to a form while holding the player's lock, deleting the answers file if no other
+     * answers are left, and then updates the respondent index and the caches. Runs on an I/O thread.
+     *
+     * @param formName    The name of the form.
+     * @param playerUUID  The UUID of the player.
+     * @param completedAt The expired completion time from the index.
+     * @return What happened to the completion.
+     */
+    private static Outcome purgeCompletion(String formName, UUID playerUUID, long completedAt) {
+        Path file = AnswerStore.getAnswersFile(playerUUID).toPath();
+        Outcome outcome;
+        try {
+            outcome = AnswerStore.withPlayerLock(playerUUID, () -> {
+                // The player may have completed the form again since the index was read
+                Long current = RespondentIndex.getCompletedAt(formName, playerUUID);
+                if (current == null || current > completedAt) {
+                    return Outcome.COMPLETED_AGAIN;
+                }
+                return removeForm(file, formName);
+            });
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            ServerForms.LOGGER.warn("Failed to remove the expired answers of player UUID {} to form '{}': {}", playerUUID, formName, e.getMessage());
+            return Outcome.FAILED;
+        }
+        if (outcome == Outcome.COMPLETED_AGAIN) {
+            return outcome;
+        }
+
+        AnswerStore.invalidate(playerUUID);
+        try {
+            RespondentIndex.removeCompletion(formName, playerUUID, completedAt);
+        } catch (IOException e) {
+            ServerForms.LOGGER.error("Failed to remove the response of player UUID " + playerUUID + " from the respondent index of form " + formName, e);
+        }
+        return outcome;
+    }
+
+    /**
+     * Removes a form from an answers file, or deletes the file if nothing else is left in it. The caller holds the
+     * player's lock.
+     *
+     * @param file     The answers file.
+     * @param formName The name of the form.
+     * @return What happened to the file.
+     * @throws IOException if the file cannot be read or written.
+     */
+    private static Outcome removeForm(Path file, String formName) throws IOException {
+        if (!Files.exists(file)) {
+            return Outcome.MISSING;
+        }
+
+        JsonObject allForms;
+        try (Reader reader = AnswerCrypto.newReader(file)) {
+            allForms = JsonParser.parseReader(reader).getAsJsonObject();
+        }
+        if (allForms.remove(formName) == null) {
+            return Outcome.MISSING;
+        }
+
+        for (Map.Entry<String, JsonElement> entry : allForms.entrySet()) {
+            if (!entry.getKey().equals(PLAYER_NAME_KEY)) {
+                AnswerStore.writeAtomically(file, allForms);
+                return Outcome.REMOVED;
+            }
+        }
+        Files.delete(file);
+        return Outcome.FILE_DELETED;
+    }
+
+    /**
+     * Parses the retention rules. Malformed rules are logged and ignored.
+     *
+     * @param section The retention section of the configuration.
+     * @return How long answers are kept by form name, in milliseconds, or -1 for forms kept forever.
+     */
+    private static Map<String, Long> parseRules(JsonObject section) {
+        Map<String, Long> rules = new HashMap<>();
+        for (Map.Entry<String, JsonElement> rule : section.entrySet()) {
+            Long millis = parseRetention(rule.getValue());
+            if (millis == null) {
+                ServerForms.LOGGER.warn("Ignoring the retention rule of '{}': use a number of days, a duration such as \"30d\", or \"forever\".", rule.getKey());
+                continue;
+            }
+            rules.put(rule.getKey(), millis);
+        }
+        return rules;
+    }
+
+    /**
+     * Parses how long answers are kept.
+     *
+     * @param value A number of days, a duration such as "12h", "30d" or "8w", or "forever".
+     * @return The retention in milliseconds, -1 for forever, or null if the value cannot be parsed or is too long
+     *         to represent.
+     */
+    static Long parseRetention(JsonElement value) {
+        if (!value.isJsonPrimitive()) {
+            return null;
+        }
+        try {
+            if (value.getAsJsonPrimitive().isNumber()) {
+                long days = value.getAsBigDecimal().longValueExact();
+                return days >= 0 ? Duration.ofDays(days).toMillis() : null;
+            }
+            return parseDuration(value.getAsString().trim());
+        } catch (ArithmeticException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses a retention given as text.
+     *
+     * @param text A duration such as "12h", "30d" or "8w", or "forever".
+     * @return The retention in milliseconds, -1 for forever, or null if the text is not a duration.
+     * @throws ArithmeticException   if the duration does not fit in a long.
+     * @throws NumberFormatException if the amount does not fit in a long.
+     */
+    private static Long parseDuration(String text) {
+        if (text.equalsIgnoreCase(FOREVER)) {
+            return -1L;
+        }
+        Matcher matcher = DURATION.matcher(text);
+        if (!matcher.matches()) {
+            return null;
+        }
+        long amount = Long.parseLong(matcher.group(1));
+        Duration unit = switch (matcher.group(2).toLowerCase(Locale.ROOT)) {
+            case "h" -> Duration.ofHours(1);
+            case "d" -> Duration.ofDays(1);
+            default -> Duration.ofDays(7);
+        };
+        return Math.multiplyExact(unit.toMillis(), amount);
+    }
+
+    /**
+     * Sleeps long enough to keep the purge at or below the allowed rate.
+     *
+     * @param start             The {@link System#nanoTime()} the purge started.
+     * @param processed         The number of completions processed so far.
+     * @param maxFilesPerSecond The maximum number of files per second, or 0 for no limit.
+     * @throws InterruptedException if the purge was interrupted.
+     */
+    private static void throttle(long start, int processed, long maxFilesPerSecond) throws InterruptedException {
+        if (maxFilesPerSecond <= 0) {
+            return;
+        }
+        long due = start + TimeUnit.SECONDS.toNanos(processed) / maxFilesPerSecond;
+        long wait = due - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * What happened to an expired completion.
+     */
+    public enum Outcome {
+        /** The form was removed from the answers file. */
+        REMOVED,
+        /** The form was the last one in the answers file, so the file was deleted. */
+        FILE_DELETED,
+        /** The answers were already gone, so only the index entry was removed. */
+        MISSING,
+        /** The player completed the form again in the meantime, so nothing was removed. */
+        COMPLETED_AGAIN,
+        /** The answers file could not be read or written. */
+        FAILED
+    }
+
+    /**
+     * The result of a purge.
+     *
+     * @param removed       The number of expired responses removed.
+     * @param filesDeleted  The number of answers files deleted because no answers were left in them.
+     * @param failed        The number of expired responses that could not be removed.
+     * @param removedByForm The number of responses removed per form.
+     * @param reportFile    The report listing every removal, or null if nothing expired.
+     */
+    public record Report(int removed, int filesDeleted, int failed, Map<String, Integer> removedByForm, Path reportFile) {
+    }
+
+    /**
+     * Writes the purge report, creating the file only once there is something to report.
+     */
+    private static final class ReportWriter implements AutoCloseable {
+        private Path file;
+        private BufferedWriter writer;
+
+        private void write(String formName, RespondentIndex.Respondent respondent, Outcome outcome) throws IOException {
+            if (writer == null) {
+                Path directory = AnswerStore.getAnswersDirectory().toPath().resolve(REPORTS_DIR);
+                Files.createDirectories(directory);
+                file = directory.resolve("retention-" + LocalDateTime.now().format(FILE_TIME_FORMAT) + ".tsv");
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+                writer.write("form\tplayer\tcompletedAt\toutcome\n");
+            }
+            writer.write(formName + "\t" + respondent.playerUUID() + "\t" + Instant.ofEpochMilli(respondent.completedAt()) + "\t" + outcome + "\n");
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
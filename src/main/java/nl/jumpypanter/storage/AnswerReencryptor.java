@@ -0,0 +1,256 @@
+package nl.jumpypanter.storage;
+
+import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.config.ConfigLoader;
+import nl.jumpypanter.utils.FormMetrics;
+import nl.jumpypanter.utils.IoExecutor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Brings every answers file in line with the encryption settings: plain files are encrypted when encryption is
+ * enabled, files under an older master key get a fresh data key under the active one, and encrypted files are written
+ * back in plain text when encryption was disabled. Optionally a new master key is created first, which is how keys
+ * are rotated.
+ * <p>
+ * Files are streamed through {@link AnswerCrypto} without parsing the JSON, in small parallel batches under each
+ * player's lock, throttled to {@code encryption.maxFilesPerSecond}. Files that are already in the right form are only
+ * read up to their header. Every converted file is written to a report in the {@code .reports} folder.
+ */
+public class AnswerReencryptor {
+    private static final String EXTENSION = ".json";
+    private static final String REPORTS_DIR = ".reports";
+    private static final int FILES_PER_BATCH = 32;
+    private static final DateTimeFormatter FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private static final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * Converts the answers directory in the background.
+     *
+     * @param rotate Whether to create a new master key first, so every file is re-encrypted under it.
+     * @return A future completed with the report, or completed with null if a conversion is already running.
+     */
+    public static CompletableFuture<Report> start(boolean rotate) {
+        if (!running.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Report> result = new CompletableFuture<>();
+        Thread.ofVirtual().name("ServerForms re-encryption").start(() -> {
+            try {
+                String rotatedTo = null;
+                if (rotate) {
+                    if (!AnswerCrypto.isEnabled()) {
+                        throw new IllegalStateException("Cannot rotate the answer encryption key while encryption is disabled.");
+                    }
+                    rotatedTo = AnswerKeys.rotate();
+                }
+                long maxFilesPerSecond = ConfigLoader.getLongSetting("encryption.maxFilesPerSecond", 100);
+                result.complete(convert(rotatedTo, maxFilesPerSecond));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                running.set(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Walks the answers directory batch by batch and writes every converted file to the report.
+     *
+     * @param rotatedTo         The ID of the key that was just created, or null if no key was rotated.
+     * @param maxFilesPerSecond The maximum number of files to convert per second, or 0 for no limit.
+     * @return The report.
+     * @throws IOException          if the directory cannot be listed, the keystore is not available or the report
+     *                              cannot be written.
+     * @throws InterruptedException if the conversion was interrupted.
+     */
+    private static Report convert(String rotatedTo, long maxFilesPerSecond) throws IOException, InterruptedException {
+        String targetKey = AnswerCrypto.isEnabled() ? AnswerKeys.getActiveKey().getKey() : null;
+        Path directory = AnswerStore.getAnswersDirectory().toPath();
+        Path reportFile = directory.resolve(REPORTS_DIR).resolve("encryption-" + LocalDateTime.now().format(FILE_TIME_FORMAT) + ".tsv");
+        Files.createDirectories(reportFile.getParent());
+
+        Map<Outcome, Integer> counts = new EnumMap<>(Outcome.class);
+        int processed = 0;
+        long start = System.nanoTime();
+
+        try (BufferedWriter report = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8);
+             DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            report.write("file\toutcome\n");
+
+            List<Path> batch = new ArrayList<>(FILES_PER_BATCH);
+            var iterator = files.iterator();
+            while (iterator.hasNext() || !batch.isEmpty()) {
+                if (iterator.hasNext()) {
+                    Path file = iterator.next();
+                    if (Files.isRegularFile(file)) {
+                        batch.add(file);
+                    }
+                    if (batch.size() < FILES_PER_BATCH && iterator.hasNext()) {
+                        continue;
+                    }
+                }
+
+                List<Outcome> outcomes = convertBatch(batch, targetKey);
+                for (int i = 0; i < batch.size(); i++) {
+                    Outcome outcome = outcomes.get(i);
+                    counts.merge(outcome, 1, Integer::sum);
+                    if (outcome != Outcome.UNCHANGED) {
+                        report.write(batch.get(i).getFileName() + "\t" + outcome + "\n");
+                    }
+                }
+                processed += batch.size();
+                batch.clear();
+                throttle(start, processed, maxFilesPerSecond);
+            }
+        }
+
+        int converted = counts.getOrDefault(Outcome.ENCRYPTED, 0) + counts.getOrDefault(Outcome.REKEYED, 0)
+                + counts.getOrDefault(Outcome.DECRYPTED, 0);
+        int failed = counts.getOrDefault(Outcome.MISSING_KEY, 0) + counts.getOrDefault(Outcome.FAILED, 0);
+        FormMetrics.add("encryption.filesConverted", converted);
+        FormMetrics.add("encryption.failures", failed);
+        ServerForms.LOGGER.info("Converted {} of {} answers files to {}; {} could not be converted. Report: {}",
+                converted, processed, targetKey != null ? "key " + targetKey : "plain text", failed, reportFile);
+        return new Report(processed, counts, rotatedTo, reportFile);
+    }
+
+    /**
+     * Converts a batch of files in parallel and waits for all of them.
+     *
+     * @param batch     The answers files.
+     * @param targetKey The ID of the key the files should be encrypted with, or null for plain text.
+     * @return The outcome of every file, in the same order.
+     * @throws InterruptedException if the conversion was interrupted.
+     */
+    private static List<Outcome> convertBatch(List<Path> batch, String targetKey) throws InterruptedException {
+        try (IoExecutor.Scope<Outcome> scope = IoExecutor.openScope()) {
+            for (Path file : batch) {
+                scope.fork("re-encrypt " + file.getFileName(), () -> convertFile(file, targetKey));
+            }
+            return scope.join().get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A re-encryption task failed.", e.getCause());
+        }
+    }
+
+    /**
+     * Rewrites a single answers file in the current format while holding the player's lock, unless it is already
+     * in the target form. Runs on an I/O thread.
+     *
+     * @param file      The answers file.
+     * @param targetKey The ID of the key the file should be encrypted with, or null for plain text.
+     * @return What happened to the file.
+     */
+    private static Outcome convertFile(Path file, String targetKey) {
+        String fileName = file.getFileName().toString();
+        UUID playerUUID;
+        try {
+            playerUUID = UUID.fromString(fileName.substring(0, fileName.length() - EXTENSION.length()));
+        } catch (IllegalArgumentException e) {
+            // Never read by the mod; the integrity check reports these
+            return Outcome.UNCHANGED;
+        }
+
+        Path temp = file.resolveSibling(fileName + ".tmp");
+        try {
+            return AnswerStore.withPlayerLock(playerUUID, () -> {
+                if (!Files.exists(file)) {
+                    return Outcome.UNCHANGED;
+                }
+                String currentKey = AnswerCrypto.getKeyId(file);
+                if (Objects.equals(currentKey, targetKey)) {
+                    return Outcome.UNCHANGED;
+                }
+
+                try (InputStream in = AnswerCrypto.newInputStream(file);
+                     OutputStream out = AnswerCrypto.newOutputStream(temp)) {
+                    in.transferTo(out);
+                }
+                AnswerStore.replaceWith(temp, file);
+                return currentKey == null ? Outcome.ENCRYPTED : targetKey == null ? Outcome.DECRYPTED : Outcome.REKEYED;
+            });
+        } catch (AnswerCrypto.MissingKeyException e) {
+            ServerForms.LOGGER.warn("Cannot re-encrypt answers file {}: {}", fileName, e.getMessage());
+            return Outcome.MISSING_KEY;
+        } catch (IOException e) {
+            ServerForms.LOGGER.warn("Failed to re-encrypt answers file {}: {}", fileName, e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // Overwritten by the next write of the file
+            }
+            return Outcome.FAILED;
+        }
+    }
+
+    /**
+     * Sleeps long enough to keep the conversion at or below the allowed rate.
+     *
+     * @param start             The {@link System#nanoTime()} the conversion started.
+     * @param processed         The number of files processed so far.
+     * @param maxFilesPerSecond The maximum number of files per second, or 0 for no limit.
+     * @throws InterruptedException if the conversion was interrupted.
+     */
+    private static void throttle(long start, int processed, long maxFilesPerSecond) throws InterruptedException {
+        if (maxFilesPerSecond <= 0) {
+            return;
+        }
+        long due = start + TimeUnit.SECONDS.toNanos(processed) / maxFilesPerSecond;
+        long wait = due - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * What happened to an answers file.
+     */
+    public enum Outcome {
+        /** The file was already in the target form. */
+        UNCHANGED,
+        /** A plain file was encrypted. */
+        ENCRYPTED,
+        /** An encrypted file was re-encrypted under the active key. */
+        REKEYED,
+        /** An encrypted file was written back in plain text because encryption is disabled. */
+        DECRYPTED,
+        /** The file is encrypted with a key that is not in the keystore. */
+        MISSING_KEY,
+        /** The file could not be read, failed authentication, or could not be written. */
+        FAILED
+    }
+
+    /**
+     * The result of a conversion.
+     *
+     * @param filesProcessed The number of answers files looked at.
+     * @param outcomes       The number of files per outcome.
+     * @param rotatedTo      The ID of the key created for this conversion, or null if no key was rotated.
+     * @param reportFile     The report listing every file that was not left unchanged.
+     */
+    public record Report(int filesProcessed, Map<Outcome, Integer> outcomes, String rotatedTo, Path reportFile) {
+    }
+}
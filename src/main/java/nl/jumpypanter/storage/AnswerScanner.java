@@ -0,0 +1,326 @@
+package nl.jumpypanter.storage;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.config.ConfigLoader;
+import nl.jumpypanter.utils.FormMetrics;
+import nl.jumpypanter.utils.IoExecutor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.CharArrayReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Scans the answers directory at startup to bring the {@link PlayerIndex} and {@link RespondentIndex} up to date.
+ * Files are read in parallel on a fork/join pool through memory-mapped channels, and only the player name and the
+ * top-level form names are pulled out with a streaming reader, without building a JSON tree. Encrypted files are
+ * decrypted as they stream into the same reader.
+ * <p>
+ * The result is saved as a snapshot together with a watermark (the time the scan started). The next startup loads the
+ * snapshot and only reads files that are new, changed in size or modification time, or modified after the watermark.
+ */
+public class AnswerScanner {
+    private static final String SNAPSHOT_FILE = "answers.snapshot";
+    private static final int SNAPSHOT_MAGIC = 0x53465331;
+    private static final String EXTENSION = ".json";
+    private static final int FILES_PER_TASK = 128;
+
+    /**
+     * Scans the answers directory once both indexes have loaded, and adds every player name and completion
+     * found in new or changed files.
+     */
+    public static void register() {
+        CompletableFuture.allOf(PlayerIndex.loaded(), RespondentIndex.loaded())
+                .thenCompose(ignored -> {
+                    // An index that had to start from nothing needs every file, not just the ones that changed
+                    boolean useSnapshot = PlayerIndex.loaded().join() && RespondentIndex.loaded().join();
+                    return IoExecutor.supply("scan answers", () -> scan(useSnapshot));
+                })
+                .thenAccept(changed -> {
+                    PlayerIndex.addScanned(changed);
+                    RespondentIndex.addScanned(changed);
+                })
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        ServerForms.LOGGER.error("Failed to scan the answers directory.", error);
+                    }
+                });
+    }
+
+    /**
+     * Scans the answers directory and saves a new snapshot. Runs on an I/O thread.
+     *
+     * @param useSnapshot Whether files that did not change since the previous snapshot may be skipped.
+     * @return The summaries of the files that were read.
+     * @throws IOException if the snapshot cannot be saved.
+     */
+    static List<FileSummary> scan(boolean useSnapshot) throws IOException {
+        long start = System.nanoTime();
+        long watermark = System.currentTimeMillis();
+        Snapshot previous = useSnapshot ? readSnapshot() : Snapshot.EMPTY;
+
+        File[] files = AnswerStore.getAnswersDirectory().listFiles(file -> file.isFile() && file.getName().endsWith(EXTENSION));
+        List<File> changed = new ArrayList<>();
+        Map<UUID, FileSummary> summaries = new HashMap<>();
+        if (files != null) {
+            for (File file : files) {
+                UUID playerUUID = parsePlayerUUID(file);
+                if (playerUUID == null) {
+                    continue;
+                }
+                FileSummary known = previous.files().get(playerUUID);
+                if (known != null && known.lastModified() == file.lastModified() && known.size() == file.length()
+                        && known.lastModified() < previous.watermark()) {
+                    summaries.put(playerUUID, known);
+                } else {
+                    changed.add(file);
+                }
+            }
+        }
+
+        int parallelism = (int) Math.max(1, ConfigLoader.getLongSetting("io.maxConcurrency", 8));
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        List<FileSummary> scanned;
+        try {
+            scanned = pool.invoke(new ScanFilesTask(changed, 0, changed.size()));
+        } finally {
+            pool.shutdown();
+        }
+        scanned.forEach(summary -> summaries.put(summary.playerUUID(), summary));
+
+        writeSnapshot(new Snapshot(watermark, summaries));
+        FormMetrics.add("scanner.filesRead", scanned.size());
+        FormMetrics.add("scanner.filesSkipped", summaries.size() - scanned.size());
+        ServerForms.LOGGER.info("Scanned the answers directory in {} ms: read {} files, reused {} from the snapshot.",
+                (System.nanoTime() - start) / 1_000_000, scanned.size(), summaries.size() - scanned.size());
+        return scanned;
+    }
+
+    /**
+     * Reads the player name and form names from an answers file, without parsing the answers themselves.
+     *
+     * @param file The answers file.
+     * @return The summary of the file, or null if it cannot be read.
+     */
+    static FileSummary summarize(File file) {
+        UUID playerUUID = parsePlayerUUID(file);
+        if (playerUUID == null) {
+            return null;
+        }
+
+        long lastModified = file.lastModified();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            Reader source;
+            if (AnswerCrypto.isEncrypted(mapped)) {
+                // Encrypted files are decrypted while streaming; the mapping only served to recognise them
+                source = AnswerCrypto.newReader(file.toPath());
+            } else {
+                CharBuffer chars = StandardCharsets.UTF_8.decode(mapped);
+                source = new CharArrayReader(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+            }
+
+            String playerName = null;
+            Set<String> formNames = new LinkedHashSet<>();
+            try (JsonReader reader = new JsonReader(source)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (name.equals("playerName") && reader.peek() == JsonToken.STRING) {
+                        playerName = reader.nextString();
+                    } else {
+                        if (!name.equals("playerName")) {
+                            formNames.add(name);
+                        }
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+            return new FileSummary(playerUUID, playerName, Set.copyOf(formNames), lastModified, size);
+        } catch (IOException | IllegalStateException e) {
+            ServerForms.LOGGER.warn("Skipping unreadable answers file {}: {}", file.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Extracts the player UUID from the name of an answers file.
+     *
+     * @param file The answers file.
+     * @return The player UUID, or null if the file name is not a UUID.
+     */
+    private static UUID parsePlayerUUID(File file) {
+        String name = file.getName();
+        try {
+            return UUID.fromString(name.substring(0, name.length() - EXTENSION.length()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Loads the snapshot of the previous scan. Runs on an I/O thread.
+     *
+     * @return The previous snapshot, or an empty snapshot if there is none or it cannot be read.
+     */
+    private static Snapshot readSnapshot() {
+        Path snapshotFile = getSnapshotFile();
+        if (!Files.exists(snapshotFile)) {
+            return Snapshot.EMPTY;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                ServerForms.LOGGER.warn("Ignoring answers snapshot with an unknown format.");
+                return Snapshot.EMPTY;
+            }
+
+            long watermark = in.readLong();
+            int count = in.readInt();
+            Map<UUID, FileSummary> files = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                UUID playerUUID = new UUID(in.readLong(), in.readLong());
+                long lastModified = in.readLong();
+                long size = in.readLong();
+                String playerName = in.readBoolean() ? in.readUTF() : null;
+                int formCount = in.readInt();
+                Set<String> formNames = new LinkedHashSet<>();
+                for (int j = 0; j < formCount; j++) {
+                    formNames.add(in.readUTF());
+                }
+                files.put(playerUUID, new FileSummary(playerUUID, playerName, Set.copyOf(formNames), lastModified, size));
+            }
+            return new Snapshot(watermark, files);
+        } catch (IOException e) {
+            ServerForms.LOGGER.warn("Ignoring unreadable answers snapshot; every answers file is scanned again.", e);
+            return Snapshot.EMPTY;
+        }
+    }
+
+    /**
+     * Saves a snapshot, replacing the previous one atomically. Runs on an I/O thread.
+     *
+     * @param snapshot The snapshot to save.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    private static void writeSnapshot(Snapshot snapshot) throws IOException {
+        Path target = getSnapshotFile();
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(snapshot.watermark());
+            out.writeInt(snapshot.files().size());
+            for (FileSummary summary : snapshot.files().values()) {
+                out.writeLong(summary.playerUUID().getMostSignificantBits());
+                out.writeLong(summary.playerUUID().getLeastSignificantBits());
+                out.writeLong(summary.lastModified());
+                out.writeLong(summary.size());
+                out.writeBoolean(summary.playerName() != null);
+                if (summary.playerName() != null) {
+                    out.writeUTF(summary.playerName());
+                }
+                out.writeInt(summary.formNames().size());
+                for (String formName : summary.formNames()) {
+                    out.writeUTF(formName);
+                }
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Retrieves the path of the snapshot file.
+     *
+     * @return The path of the snapshot in the answers directory.
+     */
+    private static Path getSnapshotFile() {
+        return AnswerStore.getAnswersDirectory().toPath().resolve(".index").resolve(SNAPSHOT_FILE);
+    }
+
+    /**
+     * What the scanner knows about a single answers file.
+     *
+     * @param playerUUID   The UUID of the player.
+     * @param playerName   The player name stored in the file, or null if there is none.
+     * @param formNames    The names of the forms the player answered.
+     * @param lastModified The modification time of the file when it was read.
+     * @param size         The size of the file when it was read.
+     */
+    record FileSummary(UUID playerUUID, String playerName, Set<String> formNames, long lastModified, long size) {
+    }
+
+    /**
+     * The saved result of a scan.
+     *
+     * @param watermark The time the scan started. Files modified at or after it are always read again.
+     * @param files     The summary of every answers file, by player UUID.
+     */
+    private record Snapshot(long watermark, Map<UUID, FileSummary> files) {
+        private static final Snapshot EMPTY = new Snapshot(0, Map.of());
+    }
+
+    /**
+     * Summarizes a range of files, splitting it in half until it is small enough to read directly.
+     */
+    private static final class ScanFilesTask extends RecursiveTask<List<FileSummary>> {
+        private final List<File> files;
+        private final int from;
+        private final int to;
+
+        private ScanFilesTask(List<File> files, int from, int to) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<FileSummary> compute() {
+            if (to - from <= FILES_PER_TASK) {
+                List<FileSummary> summaries = new ArrayList<>(to - from);
+                for (int i = from; i < to; i++) {
+                    FileSummary summary = summarize(files.get(i));
+                    if (summary != null) {
+                        summaries.add(summary);
+                    }
+                }
+                return summaries;
+            }
+
+            int middle = (from + to) >>> 1;
+            ScanFilesTask left = new ScanFilesTask(files, from, middle);
+            ScanFilesTask right = new ScanFilesTask(files, middle, to);
+            left.fork();
+            List<FileSummary> summaries = new ArrayList<>(right.compute());
+            summaries.addAll(0, left.join());
+            return summaries;
+        }
+    }
+}
@@ -0,0 +1,588 @@
+package nl.jumpypanter.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.config.ConfigLoader;
+import nl.jumpypanter.utils.FlightEvents;
+import nl.jumpypanter.utils.FormMetrics;
+import nl.jumpypanter.utils.IoExecutor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stores player answers in the answers directory ({@code mods/FormAnswers} by default), one JSON file per player UUID.
+ * All reads and writes run through the {@link IoExecutor} so a slow disk never stalls the server thread.
+ * Writes for the same player are applied in order, while the backlog and write latency are tracked for {@link AdmissionController}.
+ * <p>
+ * The directory may be shared by several servers. Writes hold the player's lock, in-process and on the player's lock
+ * file, while they read, merge and atomically replace the answers file, and each server keeps a near-cache of completed forms per player
+ * that is invalidated when another server changes the player's file.
+ */
+public class AnswerStore {
+    public static final String DEFAULT_ANSWERS_DIR = "mods/FormAnswers";
+    private static final String LOCKS_DIR = ".locks";
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final ReentrantLock[] PLAYER_LOCKS = new ReentrantLock[64];
+
+    private static final Map<UUID, CompletableFuture<Void>> writeChains = new ConcurrentHashMap<>();
+    private static final AtomicInteger backlog = new AtomicInteger();
+    private static final Map<UUID, Set<String>> pendingForms = new ConcurrentHashMap<>();
+    private static final Map<UUID, CachedCompletions> completionCache = new ConcurrentHashMap<>();
+    private static final Map<String, FileStamp> ownWrites = new ConcurrentHashMap<>();
+    private static final AtomicLong invalidations = new AtomicLong();
+    private static volatile long writeLatencyMicros = 0;
+    private static volatile File answersDir;
+    private static AnswerChangeWatcher watcher;
+
+    static {
+        for (int i = 0; i < PLAYER_LOCKS.length; i++) {
+            PLAYER_LOCKS[i] = new ReentrantLock();
+        }
+        FormMetrics.registerGauge("answers.backlog", AnswerStore::getBacklog);
+        FormMetrics.registerGauge("answers.writeLatencyMs", AnswerStore::getWriteLatencyMillis);
+        FormMetrics.registerGauge("answers.cachedPlayers", completionCache::size);
+    }
+
+    /**
+     * Registers the lifecycle listeners that watch the answers directory for changes made by other servers.
+     */
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STARTED.register(server -> {
+            if (!ConfigLoader.getBooleanSetting("answers.watchChanges", true)) {
+                return;
+            }
+            try {
+                watcher = new AnswerChangeWatcher(getAnswersDirectory().toPath());
+            } catch (IOException | UnsupportedOperationException e) {
+                ServerForms.LOGGER.warn("Cannot watch the answers directory for changes; cached completions expire after answers.cacheTtlMs instead.", e);
+            }
+        });
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            if (watcher != null) {
+                watcher.close();
+                watcher = null;
+            }
+            invalidateAll();
+        });
+    }
+
+    /**
+     * Retrieves the answers directory, configured by the {@code answers.directory} setting.
+     * The directory is resolved once, so changing the setting takes effect after a restart.
+     *
+     * @return The directory answers files are stored in.
+     */
+    public static File getAnswersDirectory() {
+        File directory = answersDir;
+        if (directory == null) {
+            synchronized (AnswerStore.class) {
+                if (answersDir == null) {
+                    answersDir = new File(ConfigLoader.getStringSetting("answers.directory", DEFAULT_ANSWERS_DIR));
+
+                    // Ensure the directory for form answers exists
+                    if (!answersDir.exists() && !answersDir.mkdirs()) {
+                        ServerForms.LOGGER.error("Failed to create answers directory: {}", answersDir.getAbsolutePath());
+                    }
+                }
+                directory = answersDir;
+            }
+        }
+        return directory;
+    }
+
+    /**
+     * Queues the player's answers to be saved to their answers file.
+     *
+     * @param playerUUID             The UUID of the player.
+     * @param playerName             The name of the player.
+     * @param formName               The name of the form.
+     * @param answers                The player's answers.
+     * @param allowMultipleResponses Whether earlier answers to the form may be replaced. If not, a response already
+     *                               stored by another server wins and these answers are discarded.
+     */
+    public static void saveAnswers(UUID playerUUID, String playerName, String formName, Map<String, String> answers,
+                                   boolean allowMultipleResponses) {
+        JsonObject formAnswers = new JsonObject();
+        answers.forEach(formAnswers::addProperty);
+        PlayerIndex.observe(playerUUID, playerName);
+
+        pendingForms.computeIfAbsent(playerUUID, uuid -> ConcurrentHashMap.newKeySet()).add(formName);
+        backlog.incrementAndGet();
+        long queuedAt = System.nanoTime();
+        CompletableFuture<Void> write = writeChains.compute(playerUUID, (uuid, previous) ->
+                (previous != null ? previous.handle((ignored, error) -> (Void) null) : CompletableFuture.<Void>completedFuture(null))
+                        .thenCompose(ignored -> IoExecutor.run("save answers " + playerUUID, () -> {
+                            long start = System.nanoTime();
+                            writeAnswers(playerUUID, playerName, formName, formAnswers, allowMultipleResponses, start - queuedAt);
+                            recordWriteLatency(System.nanoTime() - start);
+                        })));
+        write.whenComplete((ignored, error) -> {
+            pendingForms.computeIfPresent(playerUUID, (uuid, forms) -> {
+                forms.remove(formName);
+                return forms.isEmpty() ? null : forms;
+            });
+            writeChains.remove(playerUUID, write);
+            backlog.decrementAndGet();
+            AdmissionController.evaluate();
+        });
+    }
+
+    /**
+     * Checks if the player has already completed the specified form, including answers still queued for writing.
+     *
+     * @param playerUUID The UUID of the player.
+     * @param formName   The name of the form.
+     * @return A future completed with true if the player has already completed the form, false otherwise.
+     */
+    public static CompletableFuture<Boolean> hasResponse(UUID playerUUID, String formName) {
+        Set<String> pending = pendingForms.get(playerUUID);
+        if (pending != null && pending.contains(formName)) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        // Completed forms stay completed, but a missing form is only trusted until the cache entry expires
+        CachedCompletions cached = completionCache.get(playerUUID);
+        if (cached != null && (cached.forms().contains(formName) || !cached.isExpired())) {
+            FormMetrics.increment("answers.cacheHits");
+            return CompletableFuture.completedFuture(cached.forms().contains(formName));
+        }
+
+        FormMetrics.increment("answers.cacheMisses");
+        long generation = invalidations.get();
+        // Read from disk rather than the view cache, which has no expiry for changes made by other servers
+        return loadAnswers(playerUUID).thenApply(view -> {
+            cacheCompletions(playerUUID, view, generation);
+            return view != null && view.hasForm(formName);
+        });
+    }
+
+    /**
+     * Reads all stored answers of a player. Recently read or written answers are served from the {@link AnswerCache}
+     * without touching the disk.
+     *
+     * @param playerUUID The UUID of the player.
+     * @return A future completed with a view of the player's answers, or null if they have none or the file cannot be read.
+     */
+    public static CompletableFuture<AnswerView> readAnswers(UUID playerUUID) {
+        AnswerView cached = AnswerCache.get(playerUUID);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return loadAnswers(playerUUID);
+    }
+
+    /**
+     * Reads and parses a player's answers file, and caches the result.
+     *
+     * @param playerUUID The UUID of the player.
+     * @return A future completed with a view of the player's answers, or null if they have none or the file cannot be read.
+     */
+    private static CompletableFuture<AnswerView> loadAnswers(UUID playerUUID) {
+        long generation = AnswerCache.getGeneration();
+        return IoExecutor.supply("read answers " + playerUUID, () -> {
+            JsonObject allForms;
+            try {
+                allForms = readAnswersFile(playerUUID);
+            } catch (IOException e) {
+                ServerForms.LOGGER.error("Failed to read answers file for player UUID " + playerUUID, e);
+                return null;
+            }
+            if (allForms == null) {
+                return null;
+            }
+            AnswerView view = AnswerView.of(allForms);
+            AnswerCache.putIfCurrent(playerUUID, view, generation);
+            return view;
+        });
+    }
+
+    /**
+     * Reads all stored answers of a player. Runs on an I/O thread.
+     *
+     * @param playerUUID The UUID of the player.
+     * @return The contents of the player's answers file, or null if it does not exist.
+     * @throws IOException if the file exists but cannot be read, decrypted or parsed, including when its key is
+     *                     missing from the keystore.
+     */
+    private static JsonObject readAnswersFile(UUID playerUUID) throws IOException {
+        File answersFile = getAnswersFile(playerUUID);
+        if (!answersFile.exists()) {
+            return null;
+        }
+
+        JsonObject allForms;
+        try (Reader reader = AnswerCrypto.newReader(answersFile.toPath())) {
+            allForms = GSON.fromJson(reader, JsonObject.class);
+        } catch (JsonParseException e) {
+            throw e.getCause() instanceof IOException cause ? cause : new IOException("The answers file is not valid JSON: " + e.getMessage(), e);
+        }
+        if (allForms == null) {
+            throw new IOException("The answers file is empty.");
+        }
+        return allForms;
+    }
+
+    /**
+     * Points the store at another answers directory. Only used by offline tools, before anything is read or written.
+     *
+     * @param directory The answers directory.
+     */
+    static synchronized void useAnswersDirectory(File directory) {
+        answersDir = directory;
+    }
+
+    /**
+     * Retrieves the answers file of a player.
+     *
+     * @param playerUUID The UUID of the player.
+     * @return The file the player's answers are stored in.
+     */
+    public static File getAnswersFile(UUID playerUUID) {
+        return new File(getAnswersDirectory(), playerUUID.toString() + ".json");
+    }
+
+    /**
+     * Drops the cached completion state of a player, so the next duplicate check reads their answers file.
+     *
+     * @param playerUUID The UUID of the player.
+     */
+    static void invalidate(UUID playerUUID) {
+        invalidations.incrementAndGet();
+        completionCache.remove(playerUUID);
+        AnswerCache.invalidate(playerUUID);
+    }
+
+    /**
+     * Drops the cached completion state of every player.
+     */
+    static void invalidateAll() {
+        invalidations.incrementAndGet();
+        completionCache.clear();
+        AnswerCache.invalidateAll();
+    }
+
+    /**
+     * Retrieves the number of answer writes that are queued or in progress.
+     *
+     * @return The current write backlog.
+     */
+    public static int getBacklog() {
+        return backlog.get();
+    }
+
+    /**
+     * Retrieves the smoothed duration of recent answer writes.
+     *
+     * @return The write latency in milliseconds.
+     */
+    public static long getWriteLatencyMillis() {
+        return writeLatencyMicros / 1000;
+    }
+
+    /**
+     * Waits for all queued writes to finish. Called when the server stops.
+     */
+    public static void shutdown() {
+        try {
+            CompletableFuture.allOf(writeChains.values().toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            ServerForms.LOGGER.warn("Timed out waiting for {} pending answer writes.", backlog.get());
+        } catch (ExecutionException e) {
+            ServerForms.LOGGER.error("An answer write failed during shutdown.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Merges the form answers into the player's answers file. Runs on an I/O thread.
+     * The player's lock file is held for the whole read-merge-write, so servers sharing the directory never
+     * overwrite each other's answers, and the file is replaced atomically so readers never see a partial write.
+     * If the existing file cannot be read or decrypted, the save fails and the file is left alone rather than
+     * replaced with only the new answers.
+     *
+     * @param playerUUID             The UUID of the player.
+     * @param playerName             The name of the player.
+     * @param formName               The name of the form.
+     * @param formAnswers            The answers to store under the form name.
+     * @param allowMultipleResponses Whether earlier answers to the form may be replaced.
+     * @param queueTime              How long the write waited before it started, in nanoseconds.
+     */
+    private static void writeAnswers(UUID playerUUID, String playerName, String formName, JsonObject formAnswers,
+                                     boolean allowMultipleResponses, long queueTime) {
+        File answersFile = getAnswersFile(playerUUID);
+        FlightEvents.AnswerSave event = new FlightEvents.AnswerSave();
+        event.begin();
+        String outcome = "failed";
+
+        try {
+            outcome = withPlayerLock(playerUUID, () -> {
+                // Read existing data from the file (if present)
+                JsonObject allForms = readAnswersFile(playerUUID);
+                if (allForms == null) {
+                    allForms = new JsonObject();
+                }
+
+                // Another server may have stored a response since this player's duplicate check
+                if (!allowMultipleResponses && allForms.has(formName)) {
+                    FormMetrics.increment("answers.duplicatesRejected");
+                    ServerForms.LOGGER.warn("Discarded answers of player UUID {} to form '{}', which another server already stored.", playerUUID, formName);
+                    cacheCompletions(playerUUID, AnswerView.of(allForms), invalidations.get());
+                    return "duplicate";
+                }
+
+                allForms.addProperty("playerName", playerName);
+                allForms.add(formName, formAnswers);
+
+                // Write the updated data back to the file
+                writeAtomically(answersFile.toPath(), allForms);
+
+                AnswerView view = AnswerView.of(allForms);
+                AnswerCache.write(playerUUID, view);
+                cacheCompletions(playerUUID, view, invalidations.get());
+                FormMetrics.increment("answers.saved");
+                indexCompletion(playerUUID, formName);
+                ServerForms.LOGGER.info("Saved answers for player UUID {} to {}", playerUUID, answersFile.getAbsolutePath());
+                return "saved";
+            });
+        } catch (IOException e) {
+            FormMetrics.increment("answers.saveFailures");
+            ServerForms.LOGGER.error("Failed to save answers for player UUID " + playerUUID, e);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.formName = formName;
+                event.outcome = outcome;
+                event.fileSize = answersFile.length();
+                event.queueTime = queueTime;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Adds a saved response to the respondent index. A failure is logged but does not fail the save. Runs on an I/O thread.
+     *
+     * @param playerUUID The UUID of the player.
+     * @param formName   The name of the form.
+     */
+    private static void indexCompletion(UUID playerUUID, String formName) {
+        try {
+            RespondentIndex.recordCompletion(formName, playerUUID, System.currentTimeMillis());
+        } catch (IOException e) {
+            ServerForms.LOGGER.error("Failed to add the response of player UUID " + playerUUID + " to the respondent index of form " + formName, e);
+        }
+    }
+
+    /**
+     * Replaces an answers file through a temporary file, so readers never see a partial write. The file is encrypted
+     * if encryption is enabled. The caller must hold the player's lock. Runs on an I/O thread.
+     *
+     * @param file     The answers file.
+     * @param allForms The new contents.
+     * @throws IOException if the file cannot be written.
+     */
+    static void writeAtomically(Path file, JsonObject allForms) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = AnswerCrypto.newWriter(temp)) {
+            GSON.toJson(allForms, writer);
+        } catch (JsonIOException e) {
+            throw e.getCause() instanceof IOException cause ? cause : new IOException(e);
+        }
+        replaceWith(temp, file);
+    }
+
+    /**
+     * Moves a finished temporary file over an answers file, and remembers it as this server's own write so the
+     * change notification it causes is ignored. The caller must hold the player's lock. Runs on an I/O thread.
+     *
+     * @param temp The temporary file.
+     * @param file The answers file.
+     * @throws IOException if the file cannot be moved.
+     */
+    static void replaceWith(Path temp, Path file) throws IOException {
+        // A rename keeps the file's identity, size and modification time, so the stamp can be taken before the
+        // watcher can see the new file
+        String fileName = file.getFileName().toString();
+        ownWrites.put(fileName, FileStamp.of(temp));
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            ownWrites.remove(fileName);
+            throw e;
+        }
+    }
+
+    /**
+     * Checks whether an answers file is still exactly as this server last wrote it, so a change notification for it
+     * was caused by this server and the cached state is still correct. Runs on the watcher thread.
+     *
+     * @param file The answers file.
+     * @return true if the file was last written by this server.
+     */
+    static boolean isOwnWrite(Path file) {
+        String fileName = file.getFileName().toString();
+        FileStamp own = ownWrites.get(fileName);
+        if (own == null) {
+            return false;
+        }
+        try {
+            if (own.equals(FileStamp.of(file))) {
+                return true;
+            }
+        } catch (IOException e) {
+            // Deleted or unreadable, so not the file this server wrote
+        }
+        ownWrites.remove(fileName, own);
+        return false;
+    }
+
+    /**
+     * Runs an action while holding the player's lock: first the in-process lock, so threads of this server wait for
+     * each other, and then an exclusive lock on the player's lock file, so servers sharing the directory wait for each
+     * other. A file lock alone is not enough, because a second lock on the same file from the same JVM fails instead
+     * of waiting. Anything that rewrites an answers file must go through this. Runs on an I/O thread.
+     *
+     * @param playerUUID The UUID of the player.
+     * @param action     The action to run.
+     * @param <T>        The type of the action's result.
+     * @return The result of the action.
+     * @throws IOException if the lock file cannot be opened or the action fails.
+     */
+    static <T> T withPlayerLock(UUID playerUUID, LockedAction<T> action) throws IOException {
+        ReentrantLock lock = PLAYER_LOCKS[Math.floorMod(playerUUID.hashCode(), PLAYER_LOCKS.length)];
+        lock.lock();
+        try (FileChannel lockChannel = FileChannel.open(getLockFile(playerUUID), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = lockChannel.lock()) {
+            return action.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the lock file that guards writes to a player's answers file. Runs on an I/O thread.
+     *
+     * @param playerUUID The UUID of the player.
+     * @return The path of the player's lock file.
+     * @throws IOException if the locks directory cannot be created.
+     */
+    private static Path getLockFile(UUID playerUUID) throws IOException {
+        Path locksDir = getAnswersDirectory().toPath().resolve(LOCKS_DIR);
+        Files.createDirectories(locksDir);
+        return locksDir.resolve(playerUUID + ".lock");
+    }
+
+    /**
+     * Remembers which forms a player has completed, unless the player was invalidated since the answers were read.
+     *
+     * @param playerUUID The UUID of the player.
+     * @param view       The player's answers, or null if they have none.
+     * @param generation The invalidation count from before the answers were read.
+     */
+    private static void cacheCompletions(UUID playerUUID, AnswerView view, long generation) {
+        Set<String> forms = view != null ? view.getFormNames() : Set.of();
+
+        long ttlNanos = TimeUnit.MILLISECONDS.toNanos(ConfigLoader.getLongSetting("answers.cacheTtlMs", 30000));
+        completionCache.put(playerUUID, new CachedCompletions(forms, System.nanoTime() + ttlNanos));
+
+        // A change notification arrived while the file was being read, so the answers may already be stale
+        if (invalidations.get() != generation) {
+            completionCache.remove(playerUUID);
+        }
+    }
+
+    /**
+     * Folds a write duration into the exponentially weighted write latency.
+     *
+     * @param nanos The duration of the write in nanoseconds.
+     */
+    private static synchronized void recordWriteLatency(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        writeLatencyMicros = writeLatencyMicros == 0 ? micros : (writeLatencyMicros * 4 + micros) / 5;
+    }
+
+    /**
+     * An action on a player's answers file that runs while the player's lock is held.
+     *
+     * @param <T> The type of the action's result.
+     */
+    @FunctionalInterface
+    interface LockedAction<T> {
+        /**
+         * Runs the action.
+         *
+         * @return The result of the action.
+         * @throws IOException if the action fails.
+         */
+        T run() throws IOException;
+    }
+
+    /**
+     * Identifies one version of a file. Every atomic replace creates a new file, so the file key changes with each
+     * write even when the size and modification time do not.
+     *
+     * @param fileKey      The file system's identity of the file, or null if it has none.
+     * @param lastModified The modification time.
+     * @param size         The size in bytes.
+     */
+    private record FileStamp(Object fileKey, FileTime lastModified, long size) {
+
+        /**
+         * Reads the stamp of a file.
+         *
+         * @param file The file.
+         * @return The stamp.
+         * @throws IOException if the file's attributes cannot be read.
+         */
+        static FileStamp of(Path file) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new FileStamp(attributes.fileKey(), attributes.lastModifiedTime(), attributes.size());
+        }
+    }
+
+    /**
+     * The forms a player is known to have completed.
+     *
+     * @param forms     The names of the completed forms.
+     * @param expiresAt The {@link System#nanoTime()} after which forms missing from this entry must be read again.
+     */
+    private record CachedCompletions(Set<String> forms, long expiresAt) {
+
+        /**
+         * Checks whether forms missing from this entry can no longer be trusted to be incomplete.
+         *
+         * @return true if the entry has expired.
+         */
+        boolean isExpired() {
+            return System.nanoTime() - expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package nl.jumpypanter.storage;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable, parsed view of a player's answers file. Views are shared between readers through the
+ * {@link AnswerCache}, so they never change after they are created.
+ */
+public final class AnswerView {
+    private static final String PLAYER_NAME_KEY = "playerName";
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private final String playerName;
+    private final Map<String, Map<String, String>> forms;
+    private final long weight;
+
+    private AnswerView(String playerName, Map<String, Map<String, String>> forms, long weight) {
+        this.playerName = playerName;
+        this.forms = forms;
+        this.weight = weight;
+    }
+
+    /**
+     * Creates a view of the contents of an answers file.
+     *
+     * @param allForms The parsed answers file.
+     * @return A view that does not share any state with the given object.
+     */
+    public static AnswerView of(JsonObject allForms) {
+        String playerName = null;
+        long weight = ENTRY_OVERHEAD_BYTES;
+        Map<String, Map<String, String>> forms = new LinkedHashMap<>();
+
+        for (Map.Entry<String, JsonElement> entry : allForms.entrySet()) {
+            if (entry.getKey().equals(PLAYER_NAME_KEY)) {
+                playerName = entry.getValue().isJsonPrimitive() ? entry.getValue().getAsString() : null;
+                weight += sizeOf(playerName);
+                continue;
+            }
+            if (!entry.getValue().isJsonObject()) {
+                continue;
+            }
+
+            Map<String, String> answers = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonElement> answer : entry.getValue().getAsJsonObject().entrySet()) {
+                String value = answer.getValue().isJsonPrimitive() ? answer.getValue().getAsString() : answer.getValue().toString();
+                answers.put(answer.getKey(), value);
+                weight += ENTRY_OVERHEAD_BYTES + sizeOf(answer.getKey()) + sizeOf(value);
+            }
+            forms.put(entry.getKey(), Collections.unmodifiableMap(answers));
+            weight += ENTRY_OVERHEAD_BYTES + sizeOf(entry.getKey());
+        }
+
+        return new AnswerView(playerName, Collections.unmodifiableMap(forms), weight);
+    }
+
+    /**
+     * Retrieves the name the player had when they last saved answers.
+     *
+     * @return The player name, or null if the file does not contain one.
+     */
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    /**
+     * Retrieves the names of the forms the player answered, in the order they were first saved.
+     *
+     * @return The form names.
+     */
+    public Set<String> getFormNames() {
+        return forms.keySet();
+    }
+
+    /**
+     * Checks whether the player answered a form.
+     *
+     * @param formName The name of the form.
+     * @return true if the file contains answers to the form.
+     */
+    public boolean hasForm(String formName) {
+        return forms.containsKey(formName);
+    }
+
+    /**
+     * Retrieves the player's answers to a form.
+     *
+     * @param formName The name of the form.
+     * @return The answers by question ID, or null if the player did not answer the form.
+     */
+    public Map<String, String> getAnswers(String formName) {
+        return forms.get(formName);
+    }
+
+    /**
+     * Retrieves the form that was first saved most recently.
+     *
+     * @return The name of the last form in the file, or null if the player answered no forms.
+     */
+    public String getLastFormName() {
+        String last = null;
+        for (String formName : forms.keySet()) {
+            last = formName;
+        }
+        return last;
+    }
+
+    /**
+     * Retrieves the estimated memory used by this view, used to bound the size of the {@link AnswerCache}.
+     *
+     * @return The estimated size in bytes.
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    private static long sizeOf(String value) {
+        return value == null ? 0 : 40L + 2L * value.length();
+    }
+}
@@ -0,0 +1,295 @@
+package nl.jumpypanter.storage;
+
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.utils.FlightEvents;
+import nl.jumpypanter.utils.FormMetrics;
+import nl.jumpypanter.utils.IoExecutor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A persistent index of every player name seen on the server and the UUID it belonged to.
+ * Names are recorded when players join, when they save answers and when the {@link AnswerScanner} finds them in
+ * answers files. They are kept after a player renames, so {@code /viewform} can find players by old names and
+ * players the server's user cache has forgotten.
+ * <p>
+ * The index is an append-only file in the answers directory with one {@code firstSeen<TAB>uuid<TAB>name} line per
+ * name a UUID has used. It is loaded into hash maps at startup, so lookups never touch the disk.
+ */
+public class PlayerIndex {
+    private static final String INDEX_DIR = ".index";
+    private static final String INDEX_FILE = "players.tsv";
+
+    private static final Map<String, UUID> uuidsByName = new ConcurrentHashMap<>();
+    private static final Map<String, Long> nameClaimedAt = new ConcurrentHashMap<>();
+    private static final Map<UUID, List<NameRecord>> namesByUUID = new ConcurrentHashMap<>();
+    private static volatile CompletableFuture<Void> appendChain = CompletableFuture.completedFuture(null);
+    private static volatile CompletableFuture<Boolean> loaded = new CompletableFuture<>();
+
+    static {
+        FormMetrics.registerGauge("players.indexed", namesByUUID::size);
+    }
+
+    /**
+     * Loads the index in the background and registers the listener that records the names of joining players.
+     * Names from answers files that changed while the server was offline are added by the {@link AnswerScanner}.
+     */
+    public static void register() {
+        loaded = IoExecutor.supply("load player index", PlayerIndex::load).exceptionally(error -> {
+            ServerForms.LOGGER.error("Failed to load the player index.", error);
+            return false;
+        });
+
+        ServerPlayConnectionEvents.JOIN.register((handler, sender, server) ->
+                observe(handler.player.getUuid(), handler.player.getGameProfile().getName()));
+    }
+
+    /**
+     * Records that a name belongs to a player. Names already known for the player are not written again.
+     *
+     * @param playerUUID The UUID of the player.
+     * @param playerName The name the player is using.
+     */
+    public static void observe(UUID playerUUID, String playerName) {
+        observe(playerUUID, playerName, System.currentTimeMillis());
+    }
+
+    /**
+     * Records that a name belonged to a player at a given time. Names already known for the player are not written again.
+     *
+     * @param playerUUID The UUID of the player.
+     * @param playerName The name the player was using.
+     * @param seenAt     When the name was seen, in milliseconds since the epoch.
+     */
+    private static void observe(UUID playerUUID, String playerName, long seenAt) {
+        NameRecord record = new NameRecord(playerName, seenAt);
+        if (!index(playerUUID, record)) {
+            return;
+        }
+        queueAppend(playerUUID, record);
+    }
+
+    /**
+     * Queues a name to be appended to the index file after the appends queued before it. Names are observed on the
+     * server thread and on scanner threads, so the queue is extended under a lock; otherwise two appends could run at
+     * once and the second file lock from this JVM would fail instead of waiting.
+     *
+     * @param playerUUID The UUID of the player.
+     * @param record     The name and when it was first seen.
+     */
+    private static synchronized void queueAppend(UUID playerUUID, NameRecord record) {
+        appendChain = appendChain
+                .handle((ignored, error) -> (Void) null)
+                .thenCompose(ignored -> IoExecutor.run("index player " + playerUUID, () -> append(playerUUID, record)));
+    }
+
+    /**
+     * Waits for all queued names to be written. Called when the server stops, before the I/O executor is stopped.
+     */
+    public static void shutdown() {
+        try {
+            appendChain.get(10, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            ServerForms.LOGGER.warn("Timed out waiting for the player index to be written.");
+        } catch (ExecutionException e) {
+            ServerForms.LOGGER.error("Failed to write the player index during shutdown.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Adds the player names found by the {@link AnswerScanner} in new or changed answers files.
+     *
+     * @param summaries The summaries of the scanned files.
+     */
+    static void addScanned(List<AnswerScanner.FileSummary> summaries) {
+        for (AnswerScanner.FileSummary summary : summaries) {
+            if (summary.playerName() != null) {
+                observe(summary.playerUUID(), summary.playerName(), summary.lastModified());
+            }
+        }
+    }
+
+    /**
+     * Retrieves the future that completes once the index file has been loaded.
+     *
+     * @return A future completed with true if an existing index was loaded, or false if the index started empty.
+     */
+    static CompletableFuture<Boolean> loaded() {
+        return loaded;
+    }
+
+    /**
+     * Finds the UUID of the player who most recently used a name.
+     *
+     * @param playerName The current or a former name of the player, ignoring case.
+     * @return The player's UUID, or null if the name has never been seen.
+     */
+    public static UUID findUUID(String playerName) {
+        FlightEvents.IndexLookup event = new FlightEvents.IndexLookup();
+        event.begin();
+        UUID playerUUID = uuidsByName.get(playerName.toLowerCase(Locale.ROOT));
+        event.end();
+        if (event.shouldCommit()) {
+            event.index = "players";
+            event.key = playerName;
+            event.hit = playerUUID != null;
+            event.results = playerUUID != null ? 1 : 0;
+            event.commit();
+        }
+        return playerUUID;
+    }
+
+    /**
+     * Retrieves the most recent name of a player.
+     *
+     * @param playerUUID The UUID of the player.
+     * @return The player's latest name, or null if the player has never been seen.
+     */
+    public static String getCurrentName(UUID playerUUID) {
+        List<NameRecord> history = namesByUUID.get(playerUUID);
+        return history == null || history.isEmpty() ? null : history.get(history.size() - 1).name();
+    }
+
+    /**
+     * Retrieves every name a player has been seen with.
+     *
+     * @param playerUUID The UUID of the player.
+     * @return The player's names, oldest first, or an empty list if the player has never been seen.
+     */
+    public static List<NameRecord> getNameHistory(UUID playerUUID) {
+        List<NameRecord> history = namesByUUID.get(playerUUID);
+        return history == null ? List.of() : history;
+    }
+
+    /**
+     * Retrieves the latest name of every indexed player, for command suggestions.
+     *
+     * @return The current player names.
+     */
+    public static List<String> getCurrentNames() {
+        List<String> names = new ArrayList<>(namesByUUID.size());
+        for (List<NameRecord> history : namesByUUID.values()) {
+            if (!history.isEmpty()) {
+                names.add(history.get(history.size() - 1).name());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Adds a name to the in-memory index. A name used by several players resolves to whoever claimed it last.
+     *
+     * @param playerUUID The UUID of the player.
+     * @param record     The name and when it was first seen.
+     * @return true if the name is new for the player, false if it was already indexed.
+     */
+    private static synchronized boolean index(UUID playerUUID, NameRecord record) {
+        List<NameRecord> history = new ArrayList<>(namesByUUID.getOrDefault(playerUUID, List.of()));
+        if (history.stream().anyMatch(existing -> existing.name().equalsIgnoreCase(record.name()))) {
+            return false;
+        }
+        history.add(record);
+        history.sort(Comparator.comparingLong(NameRecord::firstSeen));
+        namesByUUID.put(playerUUID, Collections.unmodifiableList(history));
+
+        String key = record.name().toLowerCase(Locale.ROOT);
+        Long claimedAt = nameClaimedAt.get(key);
+        if (claimedAt == null || claimedAt <= record.firstSeen()) {
+            uuidsByName.put(key, playerUUID);
+            nameClaimedAt.put(key, record.firstSeen());
+        }
+        return true;
+    }
+
+    /**
+     * Reads the index file. Runs on an I/O thread.
+     *
+     * @return true if the index file existed, false if the index starts empty.
+     * @throws IOException if the index cannot be read.
+     */
+    private static boolean load() throws IOException {
+        Path indexFile = getIndexFile();
+        if (!Files.exists(indexFile)) {
+            return false;
+        }
+
+        int lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length != 3) {
+                    continue;
+                }
+                try {
+                    index(UUID.fromString(fields[1]), new NameRecord(fields[2], Long.parseLong(fields[0])));
+                    lines++;
+                } catch (IllegalArgumentException e) {
+                    ServerForms.LOGGER.warn("Skipping malformed player index line: {}", line);
+                }
+            }
+        }
+        ServerForms.LOGGER.info("Loaded {} player names for {} players from the player index.", lines, namesByUUID.size());
+        return true;
+    }
+
+    /**
+     * Appends a name to the index file. The file is locked while appending, so servers sharing the answers
+     * directory never interleave lines. Runs on an I/O thread.
+     *
+     * @param playerUUID The UUID of the player.
+     * @param record     The name and when it was first seen.
+     * @throws IOException if the index cannot be written.
+     */
+    private static void append(UUID playerUUID, NameRecord record) throws IOException {
+        Path indexFile = getIndexFile();
+        Files.createDirectories(indexFile.getParent());
+
+        byte[] line = (record.firstSeen() + "\t" + playerUUID + "\t" + record.name() + "\n").getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             FileLock ignored = channel.lock()) {
+            channel.write(ByteBuffer.wrap(line));
+        }
+    }
+
+    /**
+     * Retrieves the path of the index file.
+     *
+     * @return The path of the index file in the answers directory.
+     */
+    private static Path getIndexFile() {
+        return AnswerStore.getAnswersDirectory().toPath().resolve(INDEX_DIR).resolve(INDEX_FILE);
+    }
+
+    /**
+     * A name a player has used.
+     *
+     * @param name      The player name.
+     * @param firstSeen When the name was first seen, in milliseconds since the epoch.
+     */
+    public record NameRecord(String name, long firstSeen) {
+    }
+}
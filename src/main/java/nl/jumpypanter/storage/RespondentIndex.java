@@ -0,0 +1,422 @@
+package nl.jumpypanter.storage;
+
+import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.utils.FlightEvents;
+import nl.jumpypanter.utils.FormMetrics;
+import nl.jumpypanter.utils.IoExecutor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A reverse index from each form to the players who completed it, ordered by completion time.
+ * Completions are appended to one file per form in the {@code .index/respondents} directory next to the answers,
+ * and kept in memory as sorted lists, so a page of respondents is served without touching the disk.
+ * Completions removed by the {@link AnswerPurger} are appended as lines ending in {@code removed}, which cancel the
+ * earlier completion when the file is loaded again.
+ */
+public class RespondentIndex {
+    private static final String RESPONDENTS_DIR = "respondents";
+    private static final String EXTENSION = ".tsv";
+    private static final String REMOVED_MARKER = "removed";
+
+    private static final Map<String, FormRespondents> respondentsByForm = new ConcurrentHashMap<>();
+    private static final Map<String, ReentrantLock> appendLocks = new ConcurrentHashMap<>();
+    private static volatile CompletableFuture<Boolean> loaded = new CompletableFuture<>();
+
+    static {
+        FormMetrics.registerGauge("respondents.forms", respondentsByForm::size);
+    }
+
+    /**
+     * Loads the index in the background. Completions in answers files that changed while the server was offline
+     * are added by the {@link AnswerScanner}.
+     */
+    public static void register() {
+        loaded = IoExecutor.supply("load respondent index", RespondentIndex::load).exceptionally(error -> {
+            ServerForms.LOGGER.error("Failed to load the respondent index.", error);
+            return false;
+        });
+    }
+
+    /**
+     * Retrieves the future that completes once the index files have been loaded.
+     *
+     * @return A future completed with true if an existing index was loaded, or false if the index started empty.
+     */
+    static CompletableFuture<Boolean> loaded() {
+        return loaded;
+    }
+
+    /**
+     * Adds the completions found by the {@link AnswerScanner} in new or changed answers files, using each file's
+     * modification time as the completion time of forms the index does not know about yet. Runs on an I/O thread.
+     *
+     * @param summaries The summaries of the scanned files.
+     */
+    static void addScanned(List<AnswerScanner.FileSummary> summaries) {
+        int added = 0;
+        for (AnswerScanner.FileSummary summary : summaries) {
+            for (String formName : summary.formNames()) {
+                if (getRespondents(formName).contains(summary.playerUUID())) {
+                    continue;
+                }
+                try {
+                    recordCompletion(formName, summary.playerUUID(), summary.lastModified());
+                    added++;
+                } catch (IOException e) {
+                    ServerForms.LOGGER.error("Failed to add a scanned completion of form " + formName + " to the respondent index.", e);
+                }
+            }
+        }
+        if (added > 0) {
+            ServerForms.LOGGER.info("Added {} completions found in answers files to the respondent index.", added);
+        }
+    }
+
+    /**
+     * Records that a player completed a form and appends the completion to the form's index file.
+     * Must be called on an I/O thread.
+     *
+     * @param formName    The name of the completed form.
+     * @param playerUUID  The UUID of the player.
+     * @param completedAt When the form was completed, in milliseconds since the epoch.
+     * @throws IOException if the index file cannot be written.
+     */
+    static void recordCompletion(String formName, UUID playerUUID, long completedAt) throws IOException {
+        getRespondents(formName).add(playerUUID, completedAt);
+
+        append(formName, completedAt + "\t" + playerUUID + "\n");
+    }
+
+    /**
+     * Removes a player's completion of a form, unless they completed it again after the given time, and appends the
+     * removal to the form's index file. Must be called on an I/O thread.
+     *
+     * @param formName    The name of the form.
+     * @param playerUUID  The UUID of the player.
+     * @param completedAt The completion being removed, in milliseconds since the epoch.
+     * @throws IOException if the index file cannot be written.
+     */
+    static void removeCompletion(String formName, UUID playerUUID, long completedAt) throws IOException {
+        FormRespondents respondents = respondentsByForm.get(formName);
+        if (respondents == null || !respondents.remove(playerUUID, completedAt)) {
+            return;
+        }
+
+        append(formName, completedAt + "\t" + playerUUID + "\t" + REMOVED_MARKER + "\n");
+    }
+
+    /**
+     * Appends a line to a form's index file. Appends from this server are serialised per form in-process, since a
+     * second file lock on the same file from the same JVM fails instead of waiting; the file lock only keeps servers
+     * sharing the directory from interleaving their lines. Must be called on an I/O thread.
+     *
+     * @param formName The name of the form.
+     * @param line     The line to append, including its line break.
+     * @throws IOException if the index file cannot be written.
+     */
+    private static void append(String formName, String line) throws IOException {
+        Path file = getIndexFile(formName);
+        Files.createDirectories(file.getParent());
+        ReentrantLock lock = appendLocks.computeIfAbsent(formName, name -> new ReentrantLock());
+        lock.lock();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             FileLock ignored = channel.lock()) {
+            channel.write(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves when a player last completed a form, according to the index.
+     *
+     * @param formName   The name of the form.
+     * @param playerUUID The UUID of the player.
+     * @return The completion time in milliseconds since the epoch, or null if the player is not a respondent.
+     */
+    static Long getCompletedAt(String formName, UUID playerUUID) {
+        FormRespondents respondents = respondentsByForm.get(formName);
+        return respondents == null ? null : respondents.getCompletedAt(playerUUID);
+    }
+
+    /**
+     * Retrieves one page of the players who completed a form, oldest completion first.
+     *
+     * @param formName The name of the form.
+     * @param since    Only include completions at or after this time, in milliseconds since the epoch.
+     * @param offset   The number of matching respondents to skip.
+     * @param limit    The maximum number of respondents to return.
+     * @return The requested page and the total number of matching respondents.
+     */
+    public static Page getRespondents(String formName, long since, int offset, int limit) {
+        FlightEvents.IndexLookup event = new FlightEvents.IndexLookup();
+        event.begin();
+        FormRespondents respondents = respondentsByForm.get(formName);
+        Page page = respondents == null ? new Page(List.of(), 0) : respondents.page(since, offset, limit);
+        event.end();
+        if (event.shouldCommit()) {
+            event.index = "respondents";
+            event.key = formName;
+            event.hit = respondents != null;
+            event.results = page.respondents().size();
+            event.commit();
+        }
+        return page;
+    }
+
+    /**
+     * Computes the number of respondents to skip for a one-based page. The product is computed in long, so a huge
+     * page number lies past the end instead of overflowing to a negative offset.
+     *
+     * @param page     The one-based page number.
+     * @param pageSize The number of respondents per page.
+     * @return The offset of the page, at most {@link Integer#MAX_VALUE}.
+     */
+    public static int pageOffset(int page, int pageSize) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, (long) (page - 1) * pageSize));
+    }
+
+    /**
+     * Retrieves the names of all forms that have at least one respondent.
+     *
+     * @return The form names.
+     */
+    public static Set<String> getFormNames() {
+        return respondentsByForm.keySet();
+    }
+
+    /**
+     * Retrieves the respondents of a form, creating an empty entry if the form has none yet.
+     *
+     * @param formName The name of the form.
+     * @return The form's respondents.
+     */
+    private static FormRespondents getRespondents(String formName) {
+        return respondentsByForm.computeIfAbsent(formName, name -> new FormRespondents());
+    }
+
+    /**
+     * Reads the index files. Runs on an I/O thread.
+     *
+     * @return true if the index directory existed, false if the index starts empty.
+     * @throws IOException if the index cannot be read.
+     */
+    private static boolean load() throws IOException {
+        Path directory = getIndexDirectory();
+        if (!Files.isDirectory(directory)) {
+            return false;
+        }
+
+        File[] files = directory.toFile().listFiles(file -> file.isFile() && file.getName().endsWith(EXTENSION));
+        int completions = 0;
+        if (files != null) {
+            for (File file : files) {
+                String fileName = file.getName();
+                FormRespondents respondents = getRespondents(
+                        URLDecoder.decode(fileName.substring(0, fileName.length() - EXTENSION.length()), StandardCharsets.UTF_8));
+                try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        String[] fields = line.split("\t", 3);
+                        if (fields.length < 2) {
+                            continue;
+                        }
+                        try {
+                            if (fields.length == 3 && fields[2].equals(REMOVED_MARKER)) {
+                                respondents.remove(UUID.fromString(fields[1]), Long.parseLong(fields[0]));
+                                continue;
+                            }
+                            respondents.add(UUID.fromString(fields[1]), Long.parseLong(fields[0]));
+                            completions++;
+                        } catch (IllegalArgumentException e) {
+                            ServerForms.LOGGER.warn("Skipping malformed line in respondent index {}: {}", fileName, line);
+                        }
+                    }
+                }
+            }
+        }
+        ServerForms.LOGGER.info("Loaded {} completions of {} forms from the respondent index.", completions, respondentsByForm.size());
+        return true;
+    }
+
+    /**
+     * Retrieves the directory the respondent index files are stored in.
+     *
+     * @return The path of the respondent index directory.
+     */
+    private static Path getIndexDirectory() {
+        return AnswerStore.getAnswersDirectory().toPath().resolve(".index").resolve(RESPONDENTS_DIR);
+    }
+
+    /**
+     * Retrieves the index file of a form. Form names are URL-encoded so any name maps to a valid file name.
+     *
+     * @param formName The name of the form.
+     * @return The path of the form's index file.
+     */
+    private static Path getIndexFile(String formName) {
+        return getIndexDirectory().resolve(URLEncoder.encode(formName, StandardCharsets.UTF_8) + EXTENSION);
+    }
+
+    /**
+     * A player who completed a form.
+     *
+     * @param playerUUID  The UUID of the player.
+     * @param completedAt When the player last completed the form, in milliseconds since the epoch.
+     */
+    public record Respondent(UUID playerUUID, long completedAt) {
+    }
+
+    /**
+     * A page of respondents.
+     *
+     * @param respondents The respondents on this page.
+     * @param total       The number of respondents matching the query across all pages.
+     */
+    public record Page(List<Respondent> respondents, int total) {
+    }
+
+    /**
+     * The respondents of a single form, sorted by completion time. Each player appears once, with their latest completion.
+     */
+    private static class FormRespondents {
+        private final List<Respondent> byTime = new ArrayList<>();
+        private final Map<UUID, Respondent> byPlayer = new HashMap<>();
+
+        /**
+         * Adds or updates a player's completion.
+         *
+         * @param playerUUID  The UUID of the player.
+         * @param completedAt When the player completed the form.
+         */
+        synchronized void add(UUID playerUUID, long completedAt) {
+            Respondent previous = byPlayer.get(playerUUID);
+            if (previous != null) {
+                if (previous.completedAt() >= completedAt) {
+                    return;
+                }
+                byTime.remove(indexOf(previous));
+            }
+
+            Respondent respondent = new Respondent(playerUUID, completedAt);
+            byPlayer.put(playerUUID, respondent);
+
+            // Completions almost always arrive in order, so this is usually an append
+            if (byTime.isEmpty() || byTime.get(byTime.size() - 1).completedAt() <= completedAt) {
+                byTime.add(respondent);
+            } else {
+                byTime.add(lowerBound(completedAt + 1), respondent);
+            }
+        }
+
+        /**
+         * Removes a player's completion, unless it is newer than the given time.
+         *
+         * @param playerUUID  The UUID of the player.
+         * @param completedAt The completion being removed.
+         * @return true if the player was removed.
+         */
+        synchronized boolean remove(UUID playerUUID, long completedAt) {
+            Respondent previous = byPlayer.get(playerUUID);
+            if (previous == null || previous.completedAt() > completedAt) {
+                return false;
+            }
+            byTime.remove(indexOf(previous));
+            byPlayer.remove(playerUUID);
+            return true;
+        }
+
+        /**
+         * Retrieves when a player last completed the form.
+         *
+         * @param playerUUID The UUID of the player.
+         * @return The completion time, or null if the player is not a respondent.
+         */
+        synchronized Long getCompletedAt(UUID playerUUID) {
+            Respondent respondent = byPlayer.get(playerUUID);
+            return respondent == null ? null : respondent.completedAt();
+        }
+
+        /**
+         * Checks whether a player completed the form.
+         *
+         * @param playerUUID The UUID of the player.
+         * @return true if the player is a respondent.
+         */
+        synchronized boolean contains(UUID playerUUID) {
+            return byPlayer.containsKey(playerUUID);
+        }
+
+        /**
+         * Copies one page of respondents completed at or after a time.
+         *
+         * @param since  The earliest completion time to include.
+         * @param offset The number of matching respondents to skip.
+         * @param limit  The maximum number of respondents to return.
+         * @return The requested page.
+         */
+        synchronized Page page(long since, int offset, int limit) {
+            int first = lowerBound(since);
+            int total = byTime.size() - first;
+            int from = (int) Math.min(byTime.size(), (long) first + Math.max(0, offset));
+            int to = (int) Math.min(byTime.size(), (long) from + Math.max(0, limit));
+            return new Page(List.copyOf(byTime.subList(from, to)), total);
+        }
+
+        /**
+         * Finds the position of the first respondent completed at or after a time.
+         *
+         * @param completedAt The completion time to search for.
+         * @return The index of the first matching respondent, or the list size if there is none.
+         */
+        private int lowerBound(long completedAt) {
+            int low = 0;
+            int high = byTime.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (byTime.get(middle).completedAt() < completedAt) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Finds the position of a respondent in the time-ordered list.
+         *
+         * @param respondent The respondent to find.
+         * @return The index of the respondent.
+         */
+        private int indexOf(Respondent respondent) {
+            for (int i = lowerBound(respondent.completedAt()); i < byTime.size(); i++) {
+                if (byTime.get(i).equals(respondent)) {
+                    return i;
+                }
+            }
+            throw new IllegalStateException("Respondent " + respondent.playerUUID() + " is tracked but missing from the index.");
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package nl.jumpypanter.utils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import net.minecraft.text.ClickEvent;
+import net.minecraft.text.HoverEvent;
+import net.minecraft.text.MutableText;
+import net.minecraft.text.Style;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+import nl.jumpypanter.commands.PlayerFormSession;
+import nl.jumpypanter.config.CompiledForm;
+import nl.jumpypanter.config.ConfigLoader;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds the chat messages of a form as single components, so a question with its progress and suggested answers,
+ * or a whole summary of answers, reaches the player in one packet instead of one per line.
+ * <p>
+ * The prompt of a question, with its color codes resolved and its suggested answers made clickable, only depends on
+ * the form, so it is built the first time the question is asked and reused until the form or messages are reloaded.
+ * Only the progress indicator is built per player.
+ */
+public class ChatRenderer {
+    private static final String ANSWER_COMMAND = "/answer ";
+    private static final Map<String, PromptCache> prompts = new ConcurrentHashMap<>();
+
+    /**
+     * Builds the message that asks the current question of a session.
+     *
+     * @param session The player's form session.
+     * @return The progress indicator, the question and its suggested answers.
+     */
+    public static Text renderQuestion(PlayerFormSession session) {
+        int position = session.getCurrentQuestionIndex();
+        int answered = session.getAnswers().size();
+        int total = answered + session.getFlow().getLongestRemaining(position);
+        String progress = ConfigLoader.getMessage("questionProgress", "&7[{current}/{total}] ")
+                .replace("{current}", String.valueOf(answered + 1))
+                .replace("{total}", String.valueOf(total));
+
+        return Text.empty()
+                .append(TextFormatter.formatColor(progress))
+                .append(getPrompt(session, position));
+    }
+
+    /**
+     * Builds a summary of answers as one multi-line message.
+     *
+     * @param header  The first line of the summary.
+     * @param answers The answers by question ID, in the order they should be listed.
+     * @return The summary.
+     */
+    public static Text renderSummary(Text header, Map<String, String> answers) {
+        MutableText summary = Text.empty().append(header);
+        answers.forEach((questionId, answer) -> summary
+                .append("\n")
+                .append(TextFormatter.formatColor("&b" + questionId + ": &f" + answer)));
+        return summary;
+    }
+
+    /**
+     * Retrieves the prompt of a question, building it if it was not cached for the session's version of the form.
+     *
+     * @param session  The player's form session.
+     * @param position The position of the question.
+     * @return The question and its suggested answers.
+     */
+    private static Text getPrompt(PlayerFormSession session, int position) {
+        CompiledForm compiled = session.getCompiledForm();
+        PromptCache cache = prompts.get(session.getFormKey());
+        if (cache == null || cache.form() != compiled) {
+            // Sessions started before a reload keep asking the old questions; only cache the current version
+            if (compiled != ConfigLoader.getCompiledForm(session.getFormKey())) {
+                return buildPrompt(session, position);
+            }
+            cache = new PromptCache(compiled, new Text[session.getQuestions().size()]);
+            prompts.put(session.getFormKey(), cache);
+        }
+
+        Text prompt = cache.prompts()[position];
+        if (prompt == null) {
+            prompt = buildPrompt(session, position);
+            cache.prompts()[position] = prompt;
+        }
+        return prompt;
+    }
+
+    /**
+     * Builds the prompt of a question. Each suggested answer fills in the answer command when clicked, so the player
+     * can still change it before sending.
+     *
+     * @param session  The player's form session.
+     * @param position The position of the question.
+     * @return The question and its suggested answers.
+     */
+    private static Text buildPrompt(PlayerFormSession session, int position) {
+        JsonObject question = session.getQuestions().get(position).getAsJsonObject();
+        String questionText = ConfigLoader.getMessage("nextQuestion", "&eNext question: &f{question}")
+                .replace("{question}", question.get("question").getAsString());
+        MutableText prompt = Text.empty().append(TextFormatter.formatColor(questionText)).append("\n");
+
+        Set<String> suggestions = getSuggestedAnswers(question, session, position);
+        if (suggestions.isEmpty()) {
+            prompt.append(suggestion("[Answer]", ANSWER_COMMAND, "Click to answer"));
+        } else {
+            for (String answer : suggestions) {
+                prompt.append(suggestion("[" + answer + "]", ANSWER_COMMAND + answer, "Click to answer '" + answer + "'")).append(" ");
+            }
+        }
+        return prompt;
+    }
+
+    /**
+     * Collects the answers to suggest for a question: its choices, or otherwise the answers its flow branches on.
+     *
+     * @param question The question from the configuration.
+     * @param session  The player's form session.
+     * @param position The position of the question.
+     * @return The suggested answers in configuration order, or an empty set if any answer is expected.
+     */
+    private static Set<String> getSuggestedAnswers(JsonObject question, PlayerFormSession session, int position) {
+        Set<String> suggestions = new LinkedHashSet<>();
+        if (question.has("choices") && question.get("choices").isJsonArray()) {
+            JsonArray choices = question.getAsJsonArray("choices");
+            for (JsonElement choice : choices) {
+                if (choice.isJsonPrimitive()) {
+                    suggestions.add(choice.getAsString());
+                }
+            }
+        } else if (question.has("next") && question.get("next").isJsonObject()) {
+            suggestions.addAll(session.getFlow().getBranches(position).keySet());
+            // Keep the order of the rules in the configuration
+            Set<String> ordered = new LinkedHashSet<>(question.getAsJsonObject("next").keySet());
+            ordered.retainAll(suggestions);
+            suggestions = ordered;
+        }
+        return suggestions;
+    }
+
+    /**
+     * Builds a clickable suggestion that fills in a command.
+     *
+     * @param label   The text to show.
+     * @param command The command to fill in.
+     * @param hover   The text to show when hovering over the suggestion.
+     * @return The suggestion.
+     */
+    private static Text suggestion(String label, String command, String hover) {
+        return Text.literal(label).setStyle(Style.EMPTY
+                .withColor(Formatting.AQUA)
+                .withClickEvent(new ClickEvent.SuggestCommand(command))
+                .withHoverEvent(new HoverEvent.ShowText(Text.literal(hover))));
+    }
+
+    /**
+     * The prompts built for one version of a form.
+     *
+     * @param form    The compiled form the prompts belong to.
+     * @param prompts The prompt of each question, or null where not built yet.
+     */
+    private record PromptCache(CompiledForm form, Text[] prompts) {
+    }
+}
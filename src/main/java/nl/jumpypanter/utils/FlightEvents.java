@@ -0,0 +1,222 @@
+package nl.jumpypanter.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import nl.jumpypanter.ServerForms;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Java Flight Recorder events for the mod's form lifecycle and persistence work, so form activity can be lined up
+ * against tick time in JDK Mission Control.
+ * <p>
+ * Events are created, timed and committed inline with the following pattern, which costs next to nothing while the
+ * event is disabled: fields are only filled in once {@link Event#shouldCommit()} returns true.
+ * <pre>{@code
+ * FlightEvents.AnswerSave event = new FlightEvents.AnswerSave();
+ * event.begin();
+ * ...
+ * if (event.shouldCommit()) {
+ *     event.formName = formName;
+ *     event.commit();
+ * }
+ * }</pre>
+ * The bundled {@code serverforms.jfc} settings profile enables every event and is copied to the configuration
+ * directory at startup.
+ */
+public class FlightEvents {
+    private static final String SETTINGS_RESOURCE = "/serverforms.jfc";
+    private static final File SETTINGS_FILE = new File(new File("config", "ServerForms"), "serverforms.jfc");
+
+    private static final List<Class<? extends Event>> EVENT_TYPES = List.of(
+            FormStart.class, FormAnswer.class, FormCompletion.class, AnswerSave.class,
+            IndexLookup.class, ConfigReload.class, SuggestionComputation.class);
+
+    /**
+     * Registers the event types, so they are listed in recordings and in Mission Control before they first occur,
+     * and copies the bundled settings profile to the configuration directory if it is not there yet.
+     */
+    public static void register() {
+        if (!FlightRecorder.isAvailable()) {
+            ServerForms.LOGGER.info("Java Flight Recorder is not available; form events will not be recorded.");
+            return;
+        }
+        EVENT_TYPES.forEach(FlightRecorder::register);
+
+        IoExecutor.run("install flight recorder settings", () -> {
+            if (SETTINGS_FILE.exists()) {
+                return;
+            }
+            try (InputStream in = FlightEvents.class.getResourceAsStream(SETTINGS_RESOURCE)) {
+                if (in == null) {
+                    throw new IOException("The bundled " + SETTINGS_RESOURCE + " is missing.");
+                }
+                Files.createDirectories(SETTINGS_FILE.getParentFile().toPath());
+                Files.copy(in, SETTINGS_FILE.toPath());
+            }
+        }).exceptionally(error -> {
+            ServerForms.LOGGER.warn("Failed to copy the flight recorder settings to {}.", SETTINGS_FILE, error);
+            return null;
+        });
+    }
+
+    /**
+     * A player starting a form, from the command until the first question is shown, including the duplicate check.
+     */
+    @Name("serverforms.FormStart")
+    @Label("Form Start")
+    @Category({"ServerForms", "Forms"})
+    @Description("A player started a form, or was turned away")
+    @StackTrace(false)
+    public static final class FormStart extends Event {
+        @Label("Form Name")
+        public String formName;
+
+        @Label("Questions")
+        public int questionCount;
+
+        @Label("Outcome")
+        @Description("started, alreadyActive, alreadyCompleted, busy or failed")
+        public String outcome;
+
+        @Label("Opened in Screen")
+        public boolean inScreen;
+    }
+
+    /**
+     * A single answer given in chat.
+     */
+    @Name("serverforms.FormAnswer")
+    @Label("Form Answer")
+    @Category({"ServerForms", "Forms"})
+    @Description("A player answered a question in chat")
+    @StackTrace(false)
+    public static final class FormAnswer extends Event {
+        @Label("Form Name")
+        public String formName;
+
+        @Label("Question ID")
+        public String questionId;
+
+        @Label("Answer Length")
+        public int answerLength;
+    }
+
+    /**
+     * A player finishing a form, in chat or through the client companion screen.
+     */
+    @Name("serverforms.FormCompletion")
+    @Label("Form Completion")
+    @Category({"ServerForms", "Forms"})
+    @Description("A player completed a form and the answers were queued for saving")
+    @StackTrace(false)
+    public static final class FormCompletion extends Event {
+        @Label("Form Name")
+        public String formName;
+
+        @Label("Answers")
+        public int answerCount;
+
+        @Label("Submitted from Screen")
+        public boolean fromScreen;
+
+        @Label("Session Duration")
+        @Description("Time from the start of the form until it was completed")
+        @Timespan(Timespan.NANOSECONDS)
+        public long sessionDuration;
+    }
+
+    /**
+     * The read-merge-write of a player's answers file, on an I/O thread.
+     */
+    @Name("serverforms.AnswerSave")
+    @Label("Answer Save")
+    @Category({"ServerForms", "Storage"})
+    @Description("Answers were merged into a player's answers file")
+    @StackTrace(false)
+    public static final class AnswerSave extends Event {
+        @Label("Form Name")
+        public String formName;
+
+        @Label("Outcome")
+        @Description("saved, duplicate or failed")
+        public String outcome;
+
+        @Label("File Size")
+        @DataAmount
+        public long fileSize;
+
+        @Label("Queue Time")
+        @Description("Time the write waited for earlier writes of the same player and for an I/O permit")
+        @Timespan(Timespan.NANOSECONDS)
+        public long queueTime;
+    }
+
+    /**
+     * A lookup in one of the in-memory indexes or caches.
+     */
+    @Name("serverforms.IndexLookup")
+    @Label("Index Lookup")
+    @Category({"ServerForms", "Storage"})
+    @Description("A lookup in the player index, the respondent index or the answer view cache")
+    @StackTrace(false)
+    public static final class IndexLookup extends Event {
+        @Label("Index")
+        public String index;
+
+        @Label("Key")
+        public String key;
+
+        @Label("Hit")
+        public boolean hit;
+
+        @Label("Results")
+        public int results;
+    }
+
+    /**
+     * A reload of the configuration and form files.
+     */
+    @Name("serverforms.ConfigReload")
+    @Label("Config Reload")
+    @Category({"ServerForms", "Configuration"})
+    @Description("The configuration and form files were read again")
+    @StackTrace(false)
+    public static final class ConfigReload extends Event {
+        @Label("Forms")
+        public int formCount;
+
+        @Label("Succeeded")
+        public boolean succeeded;
+    }
+
+    /**
+     * The computation of command suggestions while a player types.
+     */
+    @Name("serverforms.SuggestionComputation")
+    @Label("Suggestion Computation")
+    @Category({"ServerForms", "Commands"})
+    @Description("Suggestions were computed for a command argument")
+    @StackTrace(false)
+    public static final class SuggestionComputation extends Event {
+        @Label("Command")
+        public String command;
+
+        @Label("Prefix Length")
+        public int prefixLength;
+
+        @Label("Suggestions")
+        public int suggestionCount;
+    }
+}
@@ -0,0 +1,69 @@
+package nl.jumpypanter.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Central registry for the mod's runtime metrics.
+ * Counters are cheap to increment from any thread, gauges are sampled only when a snapshot is taken.
+ */
+public class FormMetrics {
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentHashMap<>();
+
+    /**
+     * Increments the counter with the given name by one.
+     *
+     * @param name The name of the counter.
+     */
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    /**
+     * Adds the given amount to the counter with the given name.
+     *
+     * @param name  The name of the counter.
+     * @param delta The amount to add.
+     */
+    public static void add(String name, long delta) {
+        COUNTERS.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * Registers a gauge whose value is sampled each time a snapshot is taken.
+     * Registering a gauge with an existing name replaces the previous one.
+     *
+     * @param name  The name of the gauge.
+     * @param gauge The supplier providing the current value.
+     */
+    public static void registerGauge(String name, LongSupplier gauge) {
+        GAUGES.put(name, gauge);
+    }
+
+    /**
+     * Retrieves the current value of a counter.
+     *
+     * @param name The name of the counter.
+     * @return The counter value, or 0 if the counter has never been incremented.
+     */
+    public static long getCounter(String name) {
+        LongAdder counter = COUNTERS.get(name);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    /**
+     * Takes a snapshot of all counters and gauges, sorted by name.
+     *
+     * @return A map of metric names to their current values.
+     */
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        COUNTERS.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+        GAUGES.forEach((name, gauge) -> snapshot.put(name, gauge.getAsLong()));
+        return snapshot;
+    }
+}
@@ -0,0 +1,277 @@
+package nl.jumpypanter.utils;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.config.ConfigLoader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs all blocking file operations of the mod on virtual threads, away from the server thread.
+ * The number of operations touching the disk at the same time is capped by the {@code io.maxConcurrency} setting,
+ * and results can be handed back to the server thread with {@link #onMainThread(CompletableFuture)}.
+ */
+public class IoExecutor {
+    private static final int DEFAULT_MAX_CONCURRENCY = 8;
+
+    private static volatile ExecutorService executor = newExecutor();
+    private static final Set<IoTask<?>> inFlight = ConcurrentHashMap.newKeySet();
+    private static volatile Semaphore permits = new Semaphore(DEFAULT_MAX_CONCURRENCY);
+    private static volatile int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    private static volatile Executor mainThread = Runnable::run;
+
+    static {
+        FormMetrics.registerGauge("io.inFlight", inFlight::size);
+        FormMetrics.registerGauge("io.maxConcurrency", () -> maxConcurrency);
+    }
+
+    /**
+     * Registers the server lifecycle listeners that route results back to the server thread.
+     * Until the server is starting, results are delivered on the thread that completes them.
+     */
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STARTING.register(server -> mainThread = server::execute);
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> mainThread = Runnable::run);
+    }
+
+    /**
+     * Applies the {@code io.maxConcurrency} setting. Tasks that already hold a permit finish under the old limit.
+     */
+    public static void configure() {
+        int configured = (int) Math.max(1, ConfigLoader.getLongSetting("io.maxConcurrency", DEFAULT_MAX_CONCURRENCY));
+        if (configured != maxConcurrency) {
+            permits = new Semaphore(configured);
+            maxConcurrency = configured;
+            ServerForms.LOGGER.info("I/O concurrency limit set to {}.", configured);
+        }
+    }
+
+    /**
+     * Runs a blocking task on a virtual thread once an I/O permit is available.
+     * Cancelling the returned future interrupts the task if it is running.
+     *
+     * @param name The name of the task, used when logging failures.
+     * @param task The blocking task to run.
+     * @param <T>  The type of the task's result.
+     * @return A future completed on the I/O thread with the task's result.
+     */
+    public static <T> CompletableFuture<T> supply(String name, Callable<T> task) {
+        IoTask<T> ioTask = new IoTask<>(name, task);
+        inFlight.add(ioTask);
+        FormMetrics.increment("io.tasks");
+        try {
+            executor.execute(ioTask);
+        } catch (RejectedExecutionException e) {
+            // Submitted while the server was stopping; run it on the executor of the next server
+            executor.execute(ioTask);
+        }
+        return ioTask;
+    }
+
+    /**
+     * Runs a blocking action on a virtual thread once an I/O permit is available.
+     *
+     * @param name   The name of the action, used when logging failures.
+     * @param action The blocking action to run.
+     * @return A future completed on the I/O thread when the action has finished.
+     */
+    public static CompletableFuture<Void> run(String name, IoAction action) {
+        return supply(name, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Returns a future that completes on the server thread with the outcome of the given future.
+     * Callbacks attached to the returned future therefore run on the server thread and may touch game state.
+     *
+     * @param future The future to hop back from.
+     * @param <T>    The type of the result.
+     * @return A future completed on the server thread.
+     */
+    public static <T> CompletableFuture<T> onMainThread(CompletableFuture<T> future) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        future.whenComplete((value, error) -> mainThread.execute(() -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        }));
+        return result;
+    }
+
+    /**
+     * Opens a scope that groups related tasks, so that closing the scope cancels all of them that are still running.
+     *
+     * @param <T> The type of the results of the tasks in the scope.
+     * @return A new, empty scope.
+     */
+    public static <T> Scope<T> openScope() {
+        return new Scope<>();
+    }
+
+    /**
+     * Cancels all tasks that are still waiting for an I/O permit and waits for the running ones to finish. Running
+     * tasks are not interrupted, because an interrupt closes any file channel they are writing to halfway through the
+     * write. Called when the server stops, after components that must finish their writes have flushed them. Tasks
+     * submitted afterwards run on a fresh executor, because an integrated server can start again in the same JVM.
+     */
+    public static void shutdown() {
+        inFlight.forEach(IoTask::cancelIfWaiting);
+        ExecutorService stopping = executor;
+        executor = newExecutor();
+        stopping.shutdown();
+        try {
+            if (!stopping.awaitTermination(10, TimeUnit.SECONDS)) {
+                ServerForms.LOGGER.warn("Timed out waiting for I/O tasks to stop.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates the executor that starts a virtual thread per task.
+     *
+     * @return The executor.
+     */
+    private static ExecutorService newExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ServerForms-IO-", 0).factory());
+    }
+
+    /**
+     * A blocking action without a result.
+     */
+    @FunctionalInterface
+    public interface IoAction {
+        void run() throws Exception;
+    }
+
+    /**
+     * A group of tasks that share a lifetime. If one task fails, {@link #join()} cancels its siblings,
+     * and closing the scope cancels every task that has not finished yet.
+     *
+     * @param <T> The type of the results of the tasks in the scope.
+     */
+    public static final class Scope<T> implements AutoCloseable {
+        private final List<CompletableFuture<T>> children = new ArrayList<>();
+
+        private Scope() {
+        }
+
+        /**
+         * Starts a task within this scope.
+         *
+         * @param name The name of the task.
+         * @param task The blocking task to run.
+         * @return A future completed with the task's result.
+         */
+        public synchronized CompletableFuture<T> fork(String name, Callable<T> task) {
+            CompletableFuture<T> child = supply(name, task);
+            children.add(child);
+            return child;
+        }
+
+        /**
+         * Waits, without blocking, for all tasks of this scope.
+         *
+         * @return A future completed with all results in fork order, or failed with the first failure.
+         */
+        public synchronized CompletableFuture<List<T>> join() {
+            List<CompletableFuture<T>> snapshot = List.copyOf(children);
+            snapshot.forEach(child -> child.whenComplete((value, error) -> {
+                if (error != null) {
+                    close();
+                }
+            }));
+            return CompletableFuture.allOf(snapshot.toArray(new CompletableFuture[0]))
+                    .thenApply(ignored -> snapshot.stream().map(CompletableFuture::join).toList());
+        }
+
+        /**
+         * Cancels every task of this scope that has not finished yet.
+         */
+        @Override
+        public synchronized void close() {
+            children.forEach(child -> child.cancel(true));
+        }
+    }
+
+    /**
+     * A task that acquires an I/O permit before running and can be interrupted through {@link #cancel(boolean)}.
+     *
+     * @param <T> The type of the task's result.
+     */
+    private static final class IoTask<T> extends CompletableFuture<T> implements Runnable {
+        private final String name;
+        private final Callable<T> body;
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+        private volatile Thread runner;
+
+        private IoTask(String name, Callable<T> body) {
+            this.name = name;
+            this.body = body;
+        }
+
+        @Override
+        public void run() {
+            Semaphore semaphore = permits;
+            runner = Thread.currentThread();
+            try {
+                if (isDone()) return;
+                semaphore.acquire();
+                try {
+                    if (!isDone() && claimed.compareAndSet(false, true)) {
+                        complete(body.call());
+                    }
+                } finally {
+                    semaphore.release();
+                }
+            } catch (InterruptedException e) {
+                cancel(false);
+            } catch (Throwable t) {
+                FormMetrics.increment("io.failures");
+                ServerForms.LOGGER.error("I/O task '{}' failed.", name, t);
+                completeExceptionally(t);
+            } finally {
+                runner = null;
+                inFlight.remove(this);
+                Thread.interrupted();
+            }
+        }
+
+        /**
+         * Cancels the task if its body has not started yet. A task that is already running is left to finish.
+         */
+        private void cancelIfWaiting() {
+            if (claimed.compareAndSet(false, true)) {
+                cancel(true);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Thread thread = runner;
+            if (cancelled && mayInterruptIfRunning && thread != null) {
+                thread.interrupt();
+            }
+            inFlight.remove(this);
+            return cancelled;
+        }
+    }
+}
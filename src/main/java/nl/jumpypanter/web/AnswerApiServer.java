@@ -0,0 +1,478 @@
+package nl.jumpypanter.web;
+
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import nl.jumpypanter.ServerForms;
+import nl.jumpypanter.config.ConfigLoader;
+import nl.jumpypanter.storage.AnswerStore;
+import nl.jumpypanter.storage.AnswerView;
+import nl.jumpypanter.storage.PlayerIndex;
+import nl.jumpypanter.storage.RespondentIndex;
+import nl.jumpypanter.utils.FormMetrics;
+import nl.jumpypanter.utils.IoExecutor;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An optional, read-only HTTP API for reviewing answers without joining the game, served by the JDK's
+ * {@link HttpServer}. Every request is handled on its own virtual thread and only reads the thread-safe indexes and
+ * the {@link AnswerStore}, so the server thread is never involved.
+ * <ul>
+ *     <li>{@code GET /api/players/{name or UUID}?page=&pageSize=}: the forms a player completed, with their answers.</li>
+ *     <li>{@code GET /api/forms}: the forms that have respondents, with their number of respondents.</li>
+ *     <li>{@code GET /api/forms/{form}/respondents?page=&pageSize=&since=}: the players who completed a form.</li>
+ *     <li>{@code GET /api/metrics}: the mod's metrics.</li>
+ * </ul>
+ * Responses carry an ETag, and a request whose {@code If-None-Match} matches is answered with 304. A player's ETag is
+ * derived from the size and modification time of their answers file, so an unchanged file is not even read.
+ * Answers are written to the response as they are serialized rather than built in memory first.
+ * <p>
+ * The server binds to {@code 127.0.0.1} unless {@code api.bindAddress} says otherwise. When {@code api.token} is set,
+ * requests must present it as a bearer token or as the {@code token} query parameter.
+ */
+public class AnswerApiServer {
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int STOP_DELAY_SECONDS = 1;
+
+    private static HttpServer server;
+    private static ExecutorService executor;
+
+    /**
+     * Starts the server once the Minecraft server has started, if the API is enabled.
+     */
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STARTED.register(minecraftServer -> {
+            try {
+                start();
+            } catch (IOException e) {
+                ServerForms.LOGGER.error("Failed to start the answer API.", e);
+            }
+        });
+    }
+
+    /**
+     * Starts the server if the {@code api.enabled} setting is on. Settings are read once, so changing them takes a
+     * restart.
+     *
+     * @throws IOException if the server cannot bind to the configured address.
+     */
+    public static synchronized void start() throws IOException {
+        if (server != null || !ConfigLoader.getBooleanSetting("api.enabled", false)) {
+            return;
+        }
+
+        String bindAddress = ConfigLoader.getStringSetting("api.bindAddress", "127.0.0.1");
+        int port = (int) ConfigLoader.getLongSetting("api.port", 8765);
+        HttpServer created = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ServerForms-API-", 0).factory());
+        created.setExecutor(executor);
+        created.createContext("/api/", AnswerApiServer::handle);
+        created.start();
+        server = created;
+        ServerForms.LOGGER.info("Answer API listening on http://{}:{}/api/", bindAddress, created.getAddress().getPort());
+        if (!created.getAddress().getAddress().isLoopbackAddress() && getToken().isEmpty()) {
+            ServerForms.LOGGER.warn("The answer API is reachable from other machines without a token. Set api.token to protect it.");
+        }
+    }
+
+    /**
+     * Stops the server, giving requests in progress a moment to finish.
+     */
+    public static synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(STOP_DELAY_SECONDS);
+        executor.shutdownNow();
+        server = null;
+        executor = null;
+    }
+
+    /**
+     * Routes a request and turns failures into JSON errors.
+     *
+     * @param exchange The request and its response.
+     */
+    private static void handle(HttpExchange exchange) {
+        FormMetrics.increment("api.requests");
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                sendError(exchange, 405, "Only GET requests are supported.");
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            if (!isAuthorized(exchange, query)) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+                sendError(exchange, 401, "A valid token is required.");
+                return;
+            }
+
+            List<String> path = splitPath(exchange.getRequestURI().getRawPath());
+            if (path.size() == 2 && path.get(1).equals("metrics")) {
+                sendMetrics(exchange);
+            } else if (path.size() == 2 && path.get(1).equals("forms")) {
+                sendForms(exchange);
+            } else if (path.size() == 4 && path.get(1).equals("forms") && path.get(3).equals("respondents")) {
+                sendRespondents(exchange, path.get(2), query);
+            } else if (path.size() == 3 && path.get(1).equals("players")) {
+                sendPlayer(exchange, path.get(2), query);
+            } else {
+                sendError(exchange, 404, "Unknown endpoint.");
+            }
+        } catch (IllegalArgumentException e) {
+            sendErrorQuietly(exchange, 400, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            FormMetrics.increment("api.errors");
+            // Only the path: the query may hold the API token
+            ServerForms.LOGGER.error("Answer API request {} failed.", exchange.getRequestURI().getRawPath(), e);
+            sendErrorQuietly(exchange, 500, "Internal error.");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Sends the mod's metrics.
+     *
+     * @param exchange The request and its response.
+     * @throws IOException if the response cannot be written.
+     */
+    private static void sendMetrics(HttpExchange exchange) throws IOException {
+        sendBuffered(exchange, json -> {
+            json.beginObject();
+            for (Map.Entry<String, Long> metric : FormMetrics.snapshot().entrySet()) {
+                json.name(metric.getKey()).value(metric.getValue());
+            }
+            json.endObject();
+        });
+    }
+
+    /**
+     * Sends the forms that have respondents.
+     *
+     * @param exchange The request and its response.
+     * @throws IOException if the response cannot be written.
+     */
+    private static void sendForms(HttpExchange exchange) throws IOException {
+        List<String> formNames = new ArrayList<>(RespondentIndex.getFormNames());
+        formNames.sort(null);
+        sendBuffered(exchange, json -> {
+            json.beginArray();
+            for (String formName : formNames) {
+                json.beginObject();
+                json.name("form").value(formName);
+                json.name("respondents").value(RespondentIndex.getRespondents(formName, 0, 0, 0).total());
+                json.endObject();
+            }
+            json.endArray();
+        });
+    }
+
+    /**
+     * Sends one page of the players who completed a form, oldest completion first.
+     *
+     * @param exchange The request and its response.
+     * @param formName The name of the form.
+     * @param query    The query parameters.
+     * @throws IOException if the response cannot be written.
+     */
+    private static void sendRespondents(HttpExchange exchange, String formName, Map<String, String> query) throws IOException {
+        int page = getPage(query);
+        int pageSize = getPageSize(query);
+        long since = getSince(query);
+        RespondentIndex.Page result = RespondentIndex.getRespondents(formName, since, RespondentIndex.pageOffset(page, pageSize), pageSize);
+        sendBuffered(exchange, json -> {
+            json.beginObject();
+            json.name("form").value(formName);
+            writePaging(json, page, pageSize, result.total());
+            json.name("respondents").beginArray();
+            for (RespondentIndex.Respondent respondent : result.respondents()) {
+                json.beginObject();
+                json.name("playerUUID").value(respondent.playerUUID().toString());
+                json.name("playerName").value(PlayerIndex.getCurrentName(respondent.playerUUID()));
+                json.name("completedAt").value(Instant.ofEpochMilli(respondent.completedAt()).toString());
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        });
+    }
+
+    /**
+     * Sends one page of the forms a player completed, with their answers. The ETag is checked before the answers
+     * file is read, and the answers are streamed to the client.
+     *
+     * @param exchange The request and its response.
+     * @param player   The name or UUID of the player.
+     * @param query    The query parameters.
+     * @throws Exception if the answers cannot be read or the response cannot be written.
+     */
+    private static void sendPlayer(HttpExchange exchange, String player, Map<String, String> query) throws Exception {
+        UUID playerUUID = resolvePlayer(player);
+        if (playerUUID == null) {
+            sendError(exchange, 404, "Unknown player.");
+            return;
+        }
+        int page = getPage(query);
+        int pageSize = getPageSize(query);
+        String currentName = PlayerIndex.getCurrentName(playerUUID);
+
+        File answersFile = AnswerStore.getAnswersFile(playerUUID);
+        long[] stat = IoExecutor.supply("stat answers " + playerUUID,
+                () -> new long[]{answersFile.length(), answersFile.lastModified()}).get();
+        String etag = etag((stat[0] + ":" + stat[1] + ":" + currentName + ":" + page + ":" + pageSize).getBytes(StandardCharsets.UTF_8));
+        if (isNotModified(exchange, etag)) {
+            return;
+        }
+
+        AnswerView view;
+        try {
+            view = AnswerStore.readAnswers(playerUUID).get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+        if (view == null) {
+            sendError(exchange, 404, "The player has not completed any forms.");
+            return;
+        }
+
+        List<String> formNames = new ArrayList<>(view.getFormNames());
+        int from = Math.min(formNames.size(), RespondentIndex.pageOffset(page, pageSize));
+        int to = Math.min(formNames.size(), from + pageSize);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.sendResponseHeaders(200, 0);
+        try (JsonWriter json = newWriter(exchange.getResponseBody())) {
+            json.beginObject();
+            json.name("playerUUID").value(playerUUID.toString());
+            json.name("playerName").value(currentName != null ? currentName : view.getPlayerName());
+            writePaging(json, page, pageSize, formNames.size());
+            json.name("forms").beginArray();
+            for (String formName : formNames.subList(from, to)) {
+                json.beginObject();
+                json.name("form").value(formName);
+                json.name("answers").beginObject();
+                for (Map.Entry<String, String> answer : view.getAnswers(formName).entrySet()) {
+                    json.name(answer.getKey()).value(answer.getValue());
+                }
+                json.endObject();
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        }
+    }
+
+    /**
+     * Resolves a player by UUID, or by their current or a former name.
+     *
+     * @param player The name or UUID of the player.
+     * @return The UUID of the player, or null if they are not known.
+     */
+    private static UUID resolvePlayer(String player) {
+        try {
+            return UUID.fromString(player);
+        } catch (IllegalArgumentException e) {
+            return PlayerIndex.findUUID(player);
+        }
+    }
+
+    /**
+     * Sends a small response that is built in memory first, so its ETag can be computed from its content.
+     *
+     * @param exchange The request and its response.
+     * @param body     Writes the response body.
+     * @throws IOException if the response cannot be written.
+     */
+    private static void sendBuffered(HttpExchange exchange, JsonBody body) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (JsonWriter json = newWriter(buffer)) {
+            body.write(json);
+        }
+        byte[] bytes = buffer.toByteArray();
+        String etag = etag(bytes);
+        if (isNotModified(exchange, etag)) {
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    /**
+     * Answers with 304 if the client already has the current version of a response.
+     *
+     * @param exchange The request and its response.
+     * @param etag     The ETag of the current version.
+     * @return true if a 304 was sent.
+     * @throws IOException if the response cannot be written.
+     */
+    private static boolean isNotModified(HttpExchange exchange, String etag) throws IOException {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag)) {
+                FormMetrics.increment("api.notModified");
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.sendResponseHeaders(304, -1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (JsonWriter json = newWriter(buffer)) {
+            json.beginObject().name("error").value(message).endObject();
+        }
+        byte[] bytes = buffer.toByteArray();
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sendErrorQuietly(HttpExchange exchange, int status, String message) {
+        try {
+            sendError(exchange, status, message);
+        } catch (IOException ignored) {
+            // The headers were already sent or the client went away
+        }
+    }
+
+    private static void writePaging(JsonWriter json, int page, int pageSize, int total) throws IOException {
+        json.name("page").value(page);
+        json.name("pageSize").value(pageSize);
+        json.name("total").value(total);
+        json.name("pages").value((total + pageSize - 1) / pageSize);
+    }
+
+    private static JsonWriter newWriter(OutputStream out) {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        return new JsonWriter(writer);
+    }
+
+    private static String etag(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isAuthorized(HttpExchange exchange, Map<String, String> query) {
+        String token = getToken();
+        if (token.isEmpty()) {
+            return true;
+        }
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        String presented = header != null && header.startsWith("Bearer ") ? header.substring(7) : query.get("token");
+        return presented != null && MessageDigest.isEqual(presented.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String getToken() {
+        return ConfigLoader.getStringSetting("api.token", "");
+    }
+
+    private static int getPage(Map<String, String> query) {
+        return parsePositive(query, "page", 1);
+    }
+
+    private static int getPageSize(Map<String, String> query) {
+        int defaultSize = (int) Math.max(1, ConfigLoader.getLongSetting("responses.pageSize", 10));
+        return Math.min(MAX_PAGE_SIZE, parsePositive(query, "pageSize", defaultSize));
+    }
+
+    private static long getSince(Map<String, String> query) {
+        String since = query.get("since");
+        if (since == null) {
+            return 0;
+        }
+        try {
+            return since.chars().allMatch(Character::isDigit) ? Long.parseLong(since) : Instant.parse(since).toEpochMilli();
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("The 'since' parameter must be an ISO-8601 instant or milliseconds since the epoch.");
+        }
+    }
+
+    private static int parsePositive(Map<String, String> query, String name, int defaultValue) {
+        String value = query.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= 1) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("The '" + name + "' parameter must be a positive whole number.");
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String key = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            query.putIfAbsent(key, value);
+        }
+        return query;
+    }
+
+    private static List<String> splitPath(String rawPath) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : rawPath.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(URLDecoder.decode(segment.replace("+", "%2B"), StandardCharsets.UTF_8));
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Writes the body of a buffered response.
+     */
+    @FunctionalInterface
+    private interface JsonBody {
+        void write(JsonWriter json) throws IOException;
+    }
+}
@@ -0,0 +1,93 @@
+package nl.jumpypanter.commands;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the prefix matching, ordering and limits of {@link FormTrie}.
+ */
+class FormTrieTest {
+
+    private static List<String> find(FormTrie trie, String prefix, int limit) {
+        List<String> found = new ArrayList<>();
+        trie.forEachWithPrefix(prefix, limit, formId -> true, found::add);
+        return found;
+    }
+
+    private static FormTrie trieOf(String... formIds) {
+        FormTrie trie = new FormTrie();
+        for (String formId : formIds) {
+            trie.insert(formId);
+        }
+        return trie;
+    }
+
+    @Test
+    void visitsMatchesInAlphabeticalOrder() {
+        FormTrie trie = trieOf("survey", "application", "suggestions", "sub", "staff");
+
+        assertEquals(List.of("staff", "sub", "suggestions", "survey"), find(trie, "s", 10));
+        assertEquals(List.of("sub", "suggestions", "survey"), find(trie, "su", 10));
+    }
+
+    @Test
+    void emptyPrefixVisitsEveryForm() {
+        FormTrie trie = trieOf("b", "a", "c");
+
+        assertEquals(List.of("a", "b", "c"), find(trie, "", 10));
+    }
+
+    @Test
+    void matchesIgnoreCaseAndKeepTheOriginalId() {
+        FormTrie trie = trieOf("StaffApplication");
+
+        assertEquals(List.of("StaffApplication"), find(trie, "staffa", 10));
+        assertEquals(List.of("StaffApplication"), find(trie, "STAFF", 10));
+    }
+
+    @Test
+    void unknownPrefixVisitsNothing() {
+        FormTrie trie = trieOf("survey");
+
+        assertTrue(find(trie, "x", 10).isEmpty());
+        assertTrue(find(trie, "surveys", 10).isEmpty());
+    }
+
+    @Test
+    void stopsAtTheLimit() {
+        FormTrie trie = trieOf("a1", "a2", "a3", "a4");
+
+        assertEquals(List.of("a1", "a2"), find(trie, "a", 2));
+    }
+
+    @Test
+    void filteredIdsDoNotCountTowardsTheLimit() {
+        FormTrie trie = trieOf("a1", "a2", "a3", "a4");
+        List<String> found = new ArrayList<>();
+
+        trie.forEachWithPrefix("a", 2, formId -> !formId.equals("a1"), found::add);
+
+        assertEquals(List.of("a2", "a3"), found);
+    }
+
+    @Test
+    void countsEachIdOnce() {
+        FormTrie trie = trieOf("survey", "Survey", "sub");
+
+        assertEquals(2, trie.size());
+        assertEquals(List.of("sub", "Survey"), find(trie, "", 10));
+    }
+
+    @Test
+    void handlesLongIdsWithoutRecursion() {
+        String longId = "f".repeat(100_000);
+        FormTrie trie = trieOf(longId, "f");
+
+        assertEquals(List.of("f", longId), find(trie, "f", 10));
+    }
+}
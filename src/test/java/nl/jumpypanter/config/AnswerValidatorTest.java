@@ -0,0 +1,132 @@
+package nl.jumpypanter.config;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests compiling question constraints into an {@link AnswerValidator} and checking answers against them.
+ */
+class AnswerValidatorTest {
+
+    private static JsonObject question(String json) {
+        return JsonParser.parseString(json).getAsJsonObject();
+    }
+
+    private static AnswerValidator compile(String json) {
+        return AnswerValidator.compile(question(json));
+    }
+
+    @Test
+    void questionWithoutConstraintsHasNoValidator() {
+        assertNull(compile("{\"id\": \"q\", \"question\": \"Anything?\"}"));
+        assertNull(compile("{\"id\": \"q\", \"pattern\": null}"));
+    }
+
+    @Test
+    void maxLengthCountsCharacters() {
+        AnswerValidator validator = compile("{\"maxLength\": 3}");
+
+        assertNull(validator.validate("abc"));
+        assertEquals("Your answer can be at most 3 characters.", validator.validate("abcd"));
+    }
+
+    @Test
+    void rangeAcceptsWholeNumbersWithinBounds() {
+        AnswerValidator validator = compile("{\"min\": -5, \"max\": 10}");
+
+        assertNull(validator.validate("-5"));
+        assertNull(validator.validate("10"));
+        assertNull(validator.validate(" +7 "));
+        assertEquals("Please answer with a whole number from -5 to 10.", validator.validate("11"));
+        assertNotNull(validator.validate("-6"));
+    }
+
+    @Test
+    void rangeRejectsAnythingButAWholeNumber() {
+        AnswerValidator validator = compile("{\"min\": 0}");
+
+        assertNotNull(validator.validate(""));
+        assertNotNull(validator.validate("-"));
+        assertNotNull(validator.validate("1.5"));
+        assertNotNull(validator.validate("12a"));
+        assertNotNull(validator.validate("1 2"));
+    }
+
+    @Test
+    void rangeHandlesTheLimitsOfLong() {
+        AnswerValidator atLeast = compile("{\"min\": 0}");
+        AnswerValidator atMost = compile("{\"max\": 0}");
+
+        assertNull(atLeast.validate(String.valueOf(Long.MAX_VALUE)));
+        assertNotNull(atLeast.validate("9223372036854775808"));
+        assertNull(atMost.validate(String.valueOf(Long.MIN_VALUE)));
+        assertNotNull(atMost.validate("-9223372036854775809"));
+        assertNotNull(atLeast.validate("99999999999999999999999"));
+    }
+
+    @Test
+    void openEndedRangesDescribeTheirBound() {
+        assertEquals("Please answer with a whole number of at least 18.", compile("{\"min\": 18}").validate("17"));
+        assertEquals("Please answer with a whole number of at most 3.", compile("{\"max\": 3}").validate("4"));
+    }
+
+    @Test
+    void choicesMustMatchExactly() {
+        AnswerValidator validator = compile("{\"choices\": [\"yes\", \"no\"]}");
+
+        assertNull(validator.validate("yes"));
+        assertEquals("Please answer with one of: yes, no.", validator.validate("Yes"));
+    }
+
+    @Test
+    void patternMustMatchTheWholeAnswer() {
+        AnswerValidator validator = compile("{\"pattern\": \"[a-z]+\"}");
+
+        assertNull(validator.validate("abc"));
+        assertNotNull(validator.validate("abc1"));
+        // The matcher is reused, so a failed answer must not affect the next one
+        assertNull(validator.validate("xyz"));
+    }
+
+    @Test
+    void combinedConstraintsReportTheFirstFailure() {
+        AnswerValidator validator = compile("{\"maxLength\": 2, \"min\": 1, \"max\": 50}");
+
+        assertNull(validator.validate("42"));
+        assertEquals("Your answer can be at most 2 characters.", validator.validate("100"));
+        assertEquals("Please answer with a whole number from 1 to 50.", validator.validate("99"));
+    }
+
+    @Test
+    void invalidMessageReplacesEveryDefaultMessage() {
+        AnswerValidator validator = compile("{\"maxLength\": 2, \"pattern\": \"\\\\d+\", \"invalidMessage\": \"Two digits, please.\"}");
+
+        assertEquals("Two digits, please.", validator.validate("123"));
+        assertEquals("Two digits, please.", validator.validate("ab"));
+    }
+
+    @Test
+    void malformedConstraintsAreRejectedWithAReason() {
+        assertTrue(assertThrows(IllegalArgumentException.class, () -> compile("{\"maxLength\": 0}"))
+                .getMessage().contains("maxLength"));
+        assertTrue(assertThrows(IllegalArgumentException.class, () -> compile("{\"min\": 5, \"max\": 1}"))
+                .getMessage().contains("min"));
+        assertTrue(assertThrows(IllegalArgumentException.class, () -> compile("{\"min\": 1.5}"))
+                .getMessage().contains("whole number"));
+        assertTrue(assertThrows(IllegalArgumentException.class, () -> compile("{\"choices\": []}"))
+                .getMessage().contains("choices"));
+        assertTrue(assertThrows(IllegalArgumentException.class, () -> compile("{\"choices\": [1]}"))
+                .getMessage().contains("choices"));
+        assertTrue(assertThrows(IllegalArgumentException.class, () -> compile("{\"pattern\": \"(\"}"))
+                .getMessage().contains("regular expression"));
+        assertTrue(assertThrows(IllegalArgumentException.class, () -> compile("{\"pattern\": 5}"))
+                .getMessage().contains("string"));
+    }
+}
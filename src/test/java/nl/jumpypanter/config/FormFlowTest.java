@@ -0,0 +1,149 @@
+package nl.jumpypanter.config;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests compiling question rules into a {@link FormFlow}, following it, and rejecting cycles, unreachable questions
+ * and malformed rules.
+ */
+class FormFlowTest {
+
+    private static JsonArray questions(String json) {
+        return JsonParser.parseString(json).getAsJsonArray();
+    }
+
+    private static List<String> messages(String json) {
+        return FormFlow.check(questions(json)).stream().map(FormFlow.Problem::message).toList();
+    }
+
+    @Test
+    void questionsWithoutRulesAreAskedInOrder() {
+        FormFlow flow = FormFlow.compile(questions("[{\"id\": \"a\"}, {\"id\": \"b\"}, {\"id\": \"c\"}]"));
+
+        assertEquals(1, flow.next(0, "anything"));
+        assertEquals(2, flow.next(1, "anything"));
+        assertTrue(flow.isEnd(flow.next(2, "anything")));
+        assertEquals(3, flow.getLongestRemaining(0));
+    }
+
+    @Test
+    void linearFlowMatchesACompiledFlowWithoutRules() {
+        FormFlow flow = FormFlow.linear(2);
+
+        assertEquals(1, flow.next(0, "x"));
+        assertTrue(flow.isEnd(flow.next(1, "x")));
+        assertEquals(2, flow.getLongestRemaining(0));
+        assertEquals(0, flow.getLongestRemaining(2));
+    }
+
+    @Test
+    void answersFollowTheirOwnRuleAndOthersTheDefault() {
+        FormFlow flow = FormFlow.compile(questions("""
+                [{"id": "q1", "next": {"no": "q4", "maybe": "end", "*": "q3"}},
+                 {"id": "q2", "next": "end"},
+                 {"id": "q3", "next": "q2"},
+                 {"id": "q4"}]
+                """));
+
+        assertEquals(3, flow.next(0, "no"));
+        assertTrue(flow.isEnd(flow.next(0, "maybe")));
+        assertEquals(2, flow.next(0, "yes"));
+        assertEquals(1, flow.next(2, "anything"));
+        assertEquals(Map.of("no", 3, "maybe", 4), flow.getBranches(0));
+        assertEquals(2, flow.getDefaultNext(0));
+    }
+
+    @Test
+    void withoutADefaultOtherAnswersContinueWithTheNextQuestion() {
+        FormFlow flow = FormFlow.compile(questions("[{\"id\": \"a\", \"next\": {\"skip\": \"c\"}}, {\"id\": \"b\"}, {\"id\": \"c\"}]"));
+
+        assertEquals(2, flow.next(0, "skip"));
+        assertEquals(1, flow.next(0, "other"));
+    }
+
+    @Test
+    void longestRemainingFollowsTheLongestBranch() {
+        FormFlow flow = FormFlow.compile(questions("""
+                [{"id": "a", "next": {"short": "d"}},
+                 {"id": "b"},
+                 {"id": "c"},
+                 {"id": "d"}]
+                """));
+
+        assertEquals(4, flow.getLongestRemaining(0));
+        assertEquals(1, flow.getLongestRemaining(3));
+    }
+
+    @Test
+    void positionsOutsideTheFormEndIt() {
+        FormFlow flow = FormFlow.linear(2);
+
+        assertTrue(flow.isEnd(flow.next(-1, "x")));
+        assertTrue(flow.isEnd(flow.next(5, "x")));
+    }
+
+    @Test
+    void ruleLeadingBackToAnEarlierQuestionIsACycle() {
+        List<String> problems = messages("[{\"id\": \"a\"}, {\"id\": \"b\", \"next\": {\"again\": \"a\"}}]");
+
+        assertEquals(List.of("Question 'b' leads back to question 'a', so the form could never end."), problems);
+    }
+
+    @Test
+    void questionLeadingToItselfIsACycle() {
+        assertFalse(messages("[{\"id\": \"a\", \"next\": \"a\"}]").isEmpty());
+    }
+
+    @Test
+    void skippedQuestionsAreUnreachable() {
+        List<String> problems = messages("[{\"id\": \"a\", \"next\": \"c\"}, {\"id\": \"b\"}, {\"id\": \"c\"}]");
+
+        assertEquals(List.of("Question 'b' can never be reached."), problems);
+    }
+
+    @Test
+    void questionsAfterAnUnconditionalEndAreUnreachable() {
+        List<String> problems = messages("[{\"id\": \"a\", \"next\": \"end\"}, {\"id\": \"b\"}]");
+
+        assertEquals(List.of("Question 'b' can never be reached."), problems);
+    }
+
+    @Test
+    void unknownTargetsAndMalformedRulesAreReported() {
+        assertEquals(List.of("Question 'x' does not exist."), messages("[{\"id\": \"a\", \"next\": \"x\"}]"));
+        assertEquals(List.of("The target of answer 'yes' must be a question ID or \"end\"."),
+                messages("[{\"id\": \"a\", \"next\": {\"yes\": 2}}, {\"id\": \"b\"}]"));
+        assertEquals(List.of("The 'next' field must be a question ID, \"end\", or an object mapping answers to them."),
+                messages("[{\"id\": \"a\", \"next\": 1}]"));
+    }
+
+    @Test
+    void everyProblemIsReportedButCompileThrowsTheFirst() {
+        String json = "[{\"id\": \"a\", \"next\": \"x\"}, {\"id\": \"b\", \"next\": \"a\"}]";
+
+        assertEquals(2, messages(json).size());
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> FormFlow.compile(questions(json)));
+        assertEquals("Question 'x' does not exist.", error.getMessage());
+    }
+
+    @Test
+    void longChainsCompileWithoutOverflowingTheStack() {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\": \"q").append(i).append("\"}");
+        }
+        FormFlow flow = FormFlow.compile(questions(json.append("]").toString()));
+
+        assertEquals(2000, flow.getLongestRemaining(0));
+    }
+}
@@ -0,0 +1,132 @@
+package nl.jumpypanter.storage;
+
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests the memory bound, eviction order and generation checks of {@link AnswerCache}, with the default budget of
+ * 8 MiB. Each large view weighs about 2 MB, so four of them fit.
+ */
+class AnswerCacheTest {
+    private static final int LARGE_ANSWER_LENGTH = 1_000_000;
+
+    @BeforeEach
+    void clearCache() {
+        AnswerCache.invalidateAll();
+    }
+
+    private static AnswerView viewWithAnswerOf(int length) {
+        JsonObject answers = new JsonObject();
+        answers.addProperty("q1", "x".repeat(length));
+        JsonObject allForms = new JsonObject();
+        allForms.addProperty("playerName", "Player");
+        allForms.add("survey", answers);
+        return AnswerView.of(allForms);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedViewsOverTheBudget() {
+        UUID[] players = new UUID[5];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = UUID.randomUUID();
+        }
+        for (int i = 0; i < 4; i++) {
+            AnswerCache.write(players[i], viewWithAnswerOf(LARGE_ANSWER_LENGTH));
+        }
+        // Reading the oldest entry makes the second one the least recently used
+        assertNotNull(AnswerCache.get(players[0]));
+
+        AnswerCache.write(players[4], viewWithAnswerOf(LARGE_ANSWER_LENGTH));
+
+        assertNull(AnswerCache.get(players[1]));
+        assertNotNull(AnswerCache.get(players[0]));
+        assertNotNull(AnswerCache.get(players[2]));
+        assertNotNull(AnswerCache.get(players[3]));
+        assertNotNull(AnswerCache.get(players[4]));
+    }
+
+    @Test
+    void doesNotCacheAViewLargerThanTheBudget() {
+        UUID player = UUID.randomUUID();
+
+        AnswerCache.write(player, viewWithAnswerOf(5 * LARGE_ANSWER_LENGTH));
+
+        assertNull(AnswerCache.get(player));
+    }
+
+    @Test
+    void replacingAViewReleasesItsWeight() {
+        UUID player = UUID.randomUUID();
+        for (int i = 0; i < 10; i++) {
+            AnswerCache.write(player, viewWithAnswerOf(LARGE_ANSWER_LENGTH));
+        }
+        UUID[] others = {UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()};
+        for (UUID other : others) {
+            AnswerCache.write(other, viewWithAnswerOf(LARGE_ANSWER_LENGTH));
+        }
+
+        assertNotNull(AnswerCache.get(player));
+        for (UUID other : others) {
+            assertNotNull(AnswerCache.get(other));
+        }
+    }
+
+    @Test
+    void invalidatingEverythingReleasesTheWholeBudget() {
+        for (int i = 0; i < 4; i++) {
+            AnswerCache.write(UUID.randomUUID(), viewWithAnswerOf(LARGE_ANSWER_LENGTH));
+        }
+        AnswerCache.invalidateAll();
+
+        UUID[] players = {UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()};
+        for (UUID player : players) {
+            AnswerCache.write(player, viewWithAnswerOf(LARGE_ANSWER_LENGTH));
+        }
+
+        for (UUID player : players) {
+            assertNotNull(AnswerCache.get(player));
+        }
+    }
+
+    @Test
+    void storesAReadWhenNothingChangedDuringIt() {
+        UUID player = UUID.randomUUID();
+        AnswerView read = viewWithAnswerOf(10);
+
+        long generation = AnswerCache.getGeneration();
+        AnswerCache.putIfCurrent(player, read, generation);
+
+        assertSame(read, AnswerCache.get(player));
+    }
+
+    @Test
+    void aReadThatStartedBeforeAWriteDoesNotReplaceIt() {
+        UUID player = UUID.randomUUID();
+        AnswerView stale = viewWithAnswerOf(10);
+        AnswerView written = viewWithAnswerOf(20);
+
+        long generation = AnswerCache.getGeneration();
+        AnswerCache.write(player, written);
+        AnswerCache.putIfCurrent(player, stale, generation);
+
+        assertSame(written, AnswerCache.get(player));
+    }
+
+    @Test
+    void aReadThatStartedBeforeAnInvalidationIsNotCached() {
+        UUID player = UUID.randomUUID();
+
+        long generation = AnswerCache.getGeneration();
+        AnswerCache.invalidate(player);
+        AnswerCache.putIfCurrent(player, viewWithAnswerOf(10), generation);
+
+        assertNull(AnswerCache.get(player));
+    }
+}
@@ -0,0 +1,236 @@
+package nl.jumpypanter.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Measures what encrypting answers files costs compared to storing them in plain text, for answers files of a few
+ * typical sizes. For each size it times serializing and parsing the answers like {@link AnswerStore} does, both in
+ * memory, which isolates the cipher, and through a temporary file, which is what a save or load costs on the server.
+ * <p>
+ * Usage: {@code ./gradlew benchmarkEncryption [-Prounds=<rounds>]}. Every measurement is the median of the rounds, after the same
+ * number of warm-up rounds. Uses a throwaway key, so no keystore is needed.
+ */
+public class AnswerCryptoBenchmark {
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final String KEY_ID = "benchmark";
+    private static final int[] FORM_COUNTS = {1, 20, 400};
+    private static final int QUESTIONS_PER_FORM = 10;
+
+    /**
+     * Runs the benchmark and prints a table of the results.
+     *
+     * @param args The number of rounds, optionally.
+     * @throws Exception if a temporary file cannot be written or the cipher is not available.
+     */
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 15;
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(256);
+        SecretKey master = generator.generateKey();
+        AnswerCrypto.KeyLookup keys = keyId -> master;
+
+        System.out.println("Cipher provider: " + Cipher.getInstance("AES/GCM/NoPadding").getProvider());
+        // The intrinsics are diagnostic options, only readable with -XX:+UnlockDiagnosticVMOptions
+        System.out.println("UseAES: " + vmOption("UseAES") + ", UseAESIntrinsics: " + vmOption("UseAESIntrinsics")
+                + ", UseGHASHIntrinsics: " + vmOption("UseGHASHIntrinsics"));
+        System.out.printf("%-10s %-12s %12s %12s %9s%n", "size", "operation", "plain (us)", "encrypted", "overhead");
+
+        Path directory = Files.createTempDirectory("serverforms-benchmark");
+        try {
+            for (int forms : FORM_COUNTS) {
+                JsonObject allForms = sampleAnswers(forms);
+                byte[] plain = GSON.toJson(allForms).getBytes(StandardCharsets.UTF_8);
+                byte[] encrypted = encode(allForms, out -> AnswerCrypto.encrypt(out, KEY_ID, master));
+                String size = plain.length / 1024 + " KiB";
+
+                report(size, "encode", rounds,
+                        () -> encode(allForms, out -> out),
+                        () -> encode(allForms, out -> AnswerCrypto.encrypt(out, KEY_ID, master)));
+                report(size, "decode", rounds,
+                        () -> decode(new ByteArrayInputStream(plain)),
+                        () -> decode(AnswerCrypto.decrypt(new ByteArrayInputStream(encrypted), keys)));
+
+                Path plainFile = directory.resolve("plain.json");
+                Path encryptedFile = directory.resolve("encrypted.json");
+                report(size, "save", rounds,
+                        () -> save(plainFile, allForms, out -> out),
+                        () -> save(encryptedFile, allForms, out -> AnswerCrypto.encrypt(out, KEY_ID, master)));
+                report(size, "load", rounds,
+                        () -> decode(Files.newInputStream(plainFile)),
+                        () -> decode(AnswerCrypto.decrypt(Files.newInputStream(encryptedFile), keys)));
+                System.out.printf("%-10s %-12s %12d %12d %8.1f%%%n", size, "bytes", plain.length, encrypted.length,
+                        100.0 * (encrypted.length - plain.length) / plain.length);
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Times an operation in plain text and encrypted, and prints the medians side by side.
+     *
+     * @param size      The label of the answers file size.
+     * @param operation The name of the operation.
+     * @param rounds    The number of warm-up and measured rounds.
+     * @param plain     The operation on a plain file.
+     * @param encrypted The operation on an encrypted file.
+     * @throws Exception if the operation fails.
+     */
+    private static void report(String size, String operation, int rounds, Task plain, Task encrypted) throws Exception {
+        long plainNanos = median(plain, rounds);
+        long encryptedNanos = median(encrypted, rounds);
+        System.out.printf("%-10s %-12s %12.1f %12.1f %8.1f%%%n", size, operation, plainNanos / 1000.0, encryptedNanos / 1000.0,
+                100.0 * (encryptedNanos - plainNanos) / plainNanos);
+    }
+
+    /**
+     * Runs an operation for the warm-up rounds and then times it for the measured rounds.
+     *
+     * @param task   The operation.
+     * @param rounds The number of warm-up and measured rounds.
+     * @return The median duration in nanoseconds.
+     * @throws Exception if the operation fails.
+     */
+    private static long median(Task task, int rounds) throws Exception {
+        for (int i = 0; i < rounds; i++) {
+            task.run();
+        }
+        long[] times = new long[rounds];
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            task.run();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[rounds / 2];
+    }
+
+    /**
+     * Serializes answers to memory.
+     *
+     * @param allForms The answers.
+     * @param format   Wraps the output in the format to measure.
+     * @return The serialized file.
+     * @throws IOException if serializing fails.
+     */
+    private static byte[] encode(JsonObject allForms, Format format) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(format.wrap(bytes), StandardCharsets.UTF_8)) {
+            GSON.toJson(allForms, writer);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Serializes answers to a file, like a save.
+     *
+     * @param file     The file to write.
+     * @param allForms The answers.
+     * @param format   Wraps the output in the format to measure.
+     * @throws IOException if the file cannot be written.
+     */
+    private static void save(Path file, JsonObject allForms, Format format) throws IOException {
+        try (Writer writer = new OutputStreamWriter(format.wrap(Files.newOutputStream(file)), StandardCharsets.UTF_8)) {
+            GSON.toJson(allForms, writer);
+        }
+    }
+
+    /**
+     * Parses answers from a stream, like a load.
+     *
+     * @param in The stream, which is closed afterwards.
+     * @return The parsed answers.
+     * @throws IOException if the stream cannot be read.
+     */
+    private static JsonObject decode(InputStream in) throws IOException {
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return GSON.fromJson(reader, JsonObject.class);
+        }
+    }
+
+    /**
+     * Builds an answers file with the given number of forms, shaped like the files the mod writes.
+     *
+     * @param forms The number of forms.
+     * @return The answers.
+     */
+    private static JsonObject sampleAnswers(int forms) {
+        JsonObject allForms = new JsonObject();
+        allForms.addProperty("playerName", "BenchmarkPlayer");
+        for (int form = 0; form < forms; form++) {
+            JsonObject answers = new JsonObject();
+            for (int question = 0; question < QUESTIONS_PER_FORM; question++) {
+                answers.addProperty("question" + question, "An answer of moderate length to question " + question + " of form " + form + ".");
+            }
+            allForms.add("form" + form, answers);
+        }
+        return allForms;
+    }
+
+    /**
+     * Reads a HotSpot option, to show whether the CPU's AES instructions are in use.
+     *
+     * @param name The name of the option.
+     * @return The value of the option, or "unknown" if it cannot be read.
+     */
+    private static String vmOption(String name) {
+        try {
+            return ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class).getVMOption(name).getValue();
+        } catch (RuntimeException e) {
+            return "unknown";
+        }
+    }
+
+    /**
+     * An operation to time.
+     */
+    @FunctionalInterface
+    private interface Task {
+        /**
+         * Runs the operation once.
+         *
+         * @throws Exception if the operation fails.
+         */
+        void run() throws Exception;
+    }
+
+    /**
+     * Wraps a stream in the format to measure.
+     */
+    @FunctionalInterface
+    private interface Format {
+        /**
+         * Wraps a stream.
+         *
+         * @param out The stream to write the file to.
+         * @return The stream to write the JSON to.
+         * @throws IOException if the header cannot be written.
+         */
+        OutputStream wrap(OutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,167 @@
+package nl.jumpypanter.storage;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests encrypting answers files in segments and rejecting files that are truncated, tampered with or encrypted with
+ * another key. Uses throwaway keys, so no keystore is needed.
+ */
+class AnswerCryptoTest {
+    private static final String KEY_ID = "test";
+    private static final int SEGMENT = AnswerCrypto.SEGMENT_BYTES;
+
+    private static SecretKey master;
+
+    @BeforeAll
+    static void generateKey() throws GeneralSecurityException {
+        master = newKey();
+    }
+
+    private static SecretKey newKey() throws GeneralSecurityException {
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(256);
+        return generator.generateKey();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] encrypt(byte[] plain) throws IOException {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        try (OutputStream out = AnswerCrypto.encrypt(file, KEY_ID, master)) {
+            out.write(plain);
+        }
+        return file.toByteArray();
+    }
+
+    private static byte[] decrypt(byte[] file, SecretKey key) throws IOException {
+        try (InputStream in = AnswerCrypto.decrypt(new ByteArrayInputStream(file), keyId -> key)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static void assertRoundTrip(int size) throws IOException {
+        byte[] plain = randomBytes(size);
+        assertArrayEquals(plain, decrypt(encrypt(plain), master), "size " + size);
+    }
+
+    @Test
+    void roundTripsAcrossSegmentBoundaries() throws IOException {
+        for (int size : new int[]{0, 1, SEGMENT - 1, SEGMENT, SEGMENT + 1, 2 * SEGMENT, 3 * SEGMENT + 17}) {
+            assertRoundTrip(size);
+        }
+    }
+
+    @Test
+    void roundTripsSingleByteWritesAndReads() throws IOException {
+        byte[] plain = randomBytes(SEGMENT + 5);
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        try (OutputStream out = AnswerCrypto.encrypt(file, KEY_ID, master)) {
+            for (byte b : plain) {
+                out.write(b);
+            }
+        }
+
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        try (InputStream in = AnswerCrypto.decrypt(new ByteArrayInputStream(file.toByteArray()), keyId -> master)) {
+            for (int b = in.read(); b >= 0; b = in.read()) {
+                read.write(b);
+            }
+        }
+        assertArrayEquals(plain, read.toByteArray());
+    }
+
+    @Test
+    void sameContentsEncryptDifferently() throws IOException {
+        byte[] plain = randomBytes(100);
+
+        assertFalse(Arrays.equals(encrypt(plain), encrypt(plain)));
+    }
+
+    @Test
+    void encryptedFilesAreRecognized() throws IOException {
+        assertTrue(AnswerCrypto.isEncrypted(ByteBuffer.wrap(encrypt(new byte[0]))));
+        assertFalse(AnswerCrypto.isEncrypted(ByteBuffer.wrap("{\"forms\": {}}".getBytes())));
+        assertFalse(AnswerCrypto.isEncrypted(ByteBuffer.wrap(new byte[]{'S', 'F'})));
+    }
+
+    @Test
+    void truncatedFilesAreRejected() throws IOException {
+        byte[] file = encrypt(randomBytes(2 * SEGMENT + 10));
+
+        for (int cut : new int[]{1, 10, 17, file.length / 2}) {
+            byte[] truncated = Arrays.copyOf(file, file.length - cut);
+            assertThrows(IOException.class, () -> decrypt(truncated, master), "cut " + cut);
+        }
+    }
+
+    @Test
+    void droppingWholeSegmentsIsDetected() throws IOException {
+        byte[] file = encrypt(randomBytes(2 * SEGMENT));
+        int sealedSegment = SEGMENT + 16;
+
+        // Cutting after the first segment leaves a file that looks complete, but that segment was not sealed as last
+        byte[] truncated = Arrays.copyOf(file, file.length - sealedSegment);
+        assertThrows(IOException.class, () -> decrypt(truncated, master));
+    }
+
+    @Test
+    void truncatedHeadersAreRejected() throws IOException {
+        byte[] file = encrypt(new byte[0]);
+
+        assertThrows(IOException.class, () -> decrypt(Arrays.copyOf(file, 20), master));
+        assertThrows(IOException.class, () -> decrypt(Arrays.copyOf(file, 3), master));
+    }
+
+    @Test
+    void tamperedBytesAreRejected() throws IOException {
+        byte[] file = encrypt(randomBytes(SEGMENT + 10));
+
+        for (int index : new int[]{10, 40, file.length - SEGMENT, file.length - 1}) {
+            byte[] tampered = file.clone();
+            tampered[index] ^= 1;
+            assertThrows(IOException.class, () -> decrypt(tampered, master), "index " + index);
+        }
+    }
+
+    @Test
+    void anotherKeyCannotDecrypt() throws Exception {
+        byte[] file = encrypt(randomBytes(10));
+        SecretKey other = newKey();
+
+        assertThrows(IOException.class, () -> decrypt(file, other));
+    }
+
+    @Test
+    void missingKeysAreReportedByID() throws IOException {
+        byte[] file = encrypt(randomBytes(10));
+
+        AnswerCrypto.MissingKeyException error = assertThrows(AnswerCrypto.MissingKeyException.class, () ->
+                AnswerCrypto.decrypt(new ByteArrayInputStream(file), keyId -> {
+                    throw new AnswerCrypto.MissingKeyException(keyId);
+                }));
+        assertEquals(KEY_ID, error.getKeyId());
+    }
+}
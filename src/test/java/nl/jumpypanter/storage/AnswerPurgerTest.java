@@ -0,0 +1,84 @@
+package nl.jumpypanter.storage;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Tests parsing the retention rules of the configuration.
+ */
+class AnswerPurgerTest {
+
+    private static Long parse(String text) {
+        return AnswerPurger.parseRetention(new JsonPrimitive(text));
+    }
+
+    private static Long parse(Number number) {
+        return AnswerPurger.parseRetention(new JsonPrimitive(number));
+    }
+
+    @Test
+    void numbersAreDays() {
+        assertEquals(Duration.ofDays(30).toMillis(), parse(30));
+        assertEquals(0L, parse(0));
+        assertEquals(Duration.ofDays(2).toMillis(), parse(new BigDecimal("2.0")));
+    }
+
+    @Test
+    void durationsUseTheirUnit() {
+        assertEquals(Duration.ofHours(12).toMillis(), parse("12h"));
+        assertEquals(Duration.ofDays(30).toMillis(), parse("30d"));
+        assertEquals(Duration.ofDays(56).toMillis(), parse("8w"));
+    }
+
+    @Test
+    void foreverIsMinusOne() {
+        assertEquals(-1L, parse("forever"));
+        assertEquals(-1L, parse("Forever"));
+    }
+
+    @Test
+    void textIsTrimmedAndCaseInsensitive() {
+        assertEquals(Duration.ofDays(7).toMillis(), parse(" 7D "));
+        assertEquals(-1L, parse("  FOREVER\t"));
+    }
+
+    @Test
+    void negativeAndFractionalDaysAreRejected() {
+        assertNull(parse(-1));
+        assertNull(parse(1.5));
+    }
+
+    @Test
+    void valuesTooLongToRepresentAreRejected() {
+        assertNull(parse(Long.MAX_VALUE));
+        assertNull(parse(new BigDecimal("1e30")));
+        assertNull(parse("9999999d"));
+    }
+
+    @Test
+    void malformedTextIsRejected() {
+        assertNull(parse(""));
+        assertNull(parse("30"));
+        assertNull(parse("30 days"));
+        assertNull(parse("-3d"));
+        assertNull(parse("1.5d"));
+        assertNull(parse("d"));
+        assertNull(parse("3m"));
+    }
+
+    @Test
+    void nonPrimitiveValuesAreRejected() {
+        assertNull(AnswerPurger.parseRetention(JsonNull.INSTANCE));
+        assertNull(AnswerPurger.parseRetention(new JsonObject()));
+        assertNull(AnswerPurger.parseRetention(new JsonArray()));
+    }
+}